@@ -0,0 +1,34 @@
+package commands;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The abstract class representing a command that reads one image and stores the result of
+ * changing it under a destination name.
+ */
+public abstract class AbstractTransformCommand extends AbstractCommand {
+  //Protected so subclasses can access this field
+  protected String destination;
+
+  /**
+   * Constructs the abstract transform command.
+   *
+   * @param name        name of the image to run the command on.
+   * @param destination the name the result is stored under.
+   */
+  public AbstractTransformCommand(String name, String destination) {
+    super(name);
+    this.destination = destination;
+  }
+
+  @Override
+  public Set<String> getInputs() {
+    return Collections.singleton(name);
+  }
+
+  @Override
+  public Set<String> getOutputs() {
+    return Collections.singleton(destination);
+  }
+}
@@ -1,15 +1,13 @@
 package commands;
 
-import model.Pixel;
 import model.ProcessorModelState;
 
 /**
  * Represents a brighten command, brightening or darkening an image.
  */
-public class BrightenCommand extends AbstractCommand implements ImageProcessorCommands {
+public class BrightenCommand extends AbstractTransformCommand implements ImageProcessorCommands {
 
   private int increment;
-  private String destination;
 
   /**
    * Constructs a brighten command.
@@ -19,8 +17,7 @@ public class BrightenCommand extends AbstractCommand implements ImageProcessorCo
    * @param destination the destination name of the image.
    */
   public BrightenCommand(int increment, String name, String destination) {
-    super(name);
-    this.destination = destination;
+    super(name, destination);
     this.increment = increment;
   }
 
@@ -31,8 +28,7 @@ public class BrightenCommand extends AbstractCommand implements ImageProcessorCo
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    Pixel[][] newImage = model.getCopy(name);
-    model.load(destination, newImage);
+    model.copy(name, destination);
     model.brighten(increment, destination);
   }
 }
@@ -1,16 +1,15 @@
 package commands;
 
 import model.ColorTransformationType;
-import model.Pixel;
 import model.ProcessorModelState;
 
 /**
  * Represents a color transformation command to be applied to an image.
  */
-public class ColorTransformationCommand extends AbstractCommand implements ImageProcessorCommands {
+public class ColorTransformationCommand extends AbstractTransformCommand
+        implements ImageProcessorCommands {
 
   ColorTransformationType type;
-  String destination;
 
   /**
    * Constructs the abstract command.
@@ -18,9 +17,8 @@ public class ColorTransformationCommand extends AbstractCommand implements Image
    * @param name name of the image to run the command on.
    */
   public ColorTransformationCommand(String name, String destination, ColorTransformationType type) {
-    super(name);
+    super(name, destination);
     this.type = type;
-    this.destination = destination;
   }
 
   /**
@@ -30,8 +28,7 @@ public class ColorTransformationCommand extends AbstractCommand implements Image
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    Pixel[][] newImage = model.getCopy(name);
-    model.load(destination, newImage);
+    model.copy(name, destination);
     if (this.type == ColorTransformationType.Gray) {
       model.transformationGrayscale(destination);
     } else if (this.type == ColorTransformationType.Sepia) {
@@ -0,0 +1,39 @@
+package commands;
+
+import model.BorderMode;
+import model.Kernel;
+import model.ProcessorModelState;
+
+/**
+ * Represents a command convolving an image with a user supplied kernel.
+ */
+public class ConvolveCommand extends AbstractTransformCommand implements ImageProcessorCommands {
+
+  private Kernel kernel;
+  private BorderMode border;
+
+  /**
+   * Constructs a convolve command.
+   *
+   * @param name        the name of the image to be convolved.
+   * @param destination the destination name of the image.
+   * @param kernel      the kernel to convolve the image with.
+   * @param border      how pixels outside the image are read.
+   */
+  public ConvolveCommand(String name, String destination, Kernel kernel, BorderMode border) {
+    super(name, destination);
+    this.kernel = kernel;
+    this.border = border;
+  }
+
+  /**
+   * Makes the convolve command go.
+   *
+   * @param model the model for the command to act upon.
+   */
+  @Override
+  public void commandGo(ProcessorModelState model) {
+    model.copy(name, destination);
+    model.convolve(kernel, border, destination);
+  }
+}
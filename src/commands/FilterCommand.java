@@ -1,15 +1,13 @@
 package commands;
 
 import model.FilterType;
-import model.Pixel;
 import model.ProcessorModelState;
 
 /**
  * Represents a filter command to be applied to an image.
  */
-public class FilterCommand extends AbstractCommand implements ImageProcessorCommands {
+public class FilterCommand extends AbstractTransformCommand implements ImageProcessorCommands {
 
-  String destination;
   FilterType filterType;
 
   /**
@@ -18,8 +16,7 @@ public class FilterCommand extends AbstractCommand implements ImageProcessorComm
    * @param name name of the image to run the command on.
    */
   public FilterCommand(String name, String destination, FilterType filterType) {
-    super(name);
-    this.destination = destination;
+    super(name, destination);
     this.filterType = filterType;
   }
 
@@ -30,8 +27,7 @@ public class FilterCommand extends AbstractCommand implements ImageProcessorComm
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    Pixel[][] newImage = model.getCopy(name);
-    model.load(destination, newImage);
+    model.copy(name, destination);
     if (filterType == FilterType.Blur) {
       model.blur(destination);
     } else if (filterType == FilterType.Sharpen) {
@@ -1,15 +1,13 @@
 package commands;
 
-import model.Pixel;
 import model.ProcessorModelState;
 
 /**
  * Represents a flip command.
  */
-public class FlipCommand extends AbstractCommand implements ImageProcessorCommands {
+public class FlipCommand extends AbstractTransformCommand implements ImageProcessorCommands {
 
   private boolean vertical;
-  private String destination;
 
   /**
    * Constructs a flip command.
@@ -19,9 +17,8 @@ public class FlipCommand extends AbstractCommand implements ImageProcessorComman
    * @param vertical    whether it is being flipped vertical or not.
    */
   public FlipCommand(String name, String destination, boolean vertical) {
-    super(name);
+    super(name, destination);
     this.vertical = vertical;
-    this.destination = destination;
   }
 
   /**
@@ -31,8 +28,7 @@ public class FlipCommand extends AbstractCommand implements ImageProcessorComman
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    Pixel[][] newImage = model.getCopy(name);
-    model.load(destination, newImage);
+    model.copy(name, destination);
     model.flip(destination, vertical);
   }
 }
@@ -1,15 +1,13 @@
 package commands;
 
 import model.GrayScale;
-import model.Pixel;
 import model.ProcessorModelState;
 
 /**
  * Represents a greyscale command.
  */
-public class GrayscaleCommand extends AbstractCommand implements ImageProcessorCommands {
+public class GrayscaleCommand extends AbstractTransformCommand implements ImageProcessorCommands {
   private GrayScale method;
-  private String destination;
 
   /**
    * Constructs a greyscale command.
@@ -19,9 +17,8 @@ public class GrayscaleCommand extends AbstractCommand implements ImageProcessorC
    * @param destination the destination name of the image.
    */
   public GrayscaleCommand(GrayScale method, String name, String destination) {
-    super(name);
+    super(name, destination);
     this.method = method;
-    this.destination = destination;
   }
 
   /**
@@ -31,8 +28,7 @@ public class GrayscaleCommand extends AbstractCommand implements ImageProcessorC
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    Pixel[][] newImage = model.getCopy(name);
-    model.load(destination, newImage);
+    model.copy(name, destination);
     model.toGrayScale(method, destination);
   }
 }
@@ -1,9 +1,16 @@
 package commands;
 
+import java.util.Collections;
+import java.util.Set;
+
 import model.ProcessorModelState;
 
 /**
  * Represents a command for an ImageProcessor.
+ *
+ * <p>A command says which images and files it reads and writes, so a script can run commands
+ * that do not depend on each other at the same time. A command that does not say runs on its
+ * own, after every command before it and before every command after it.
  */
 public interface ImageProcessorCommands {
 
@@ -13,4 +20,40 @@ public interface ImageProcessorCommands {
    * @param model model for the command to act upon.
    */
   void commandGo(ProcessorModelState model);
+
+  /**
+   * Retrieves the names of the images the command reads.
+   *
+   * @return the names, or null if the command may depend on anything.
+   */
+  default Set<String> getInputs() {
+    return null;
+  }
+
+  /**
+   * Retrieves the names of the images the command writes.
+   *
+   * @return the names.
+   */
+  default Set<String> getOutputs() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Retrieves the paths of the files the command reads.
+   *
+   * @return the paths.
+   */
+  default Set<String> getFilesRead() {
+    return Collections.emptySet();
+  }
+
+  /**
+   * Retrieves the paths of the files the command writes.
+   *
+   * @return the paths.
+   */
+  default Set<String> getFilesWritten() {
+    return Collections.emptySet();
+  }
 }
@@ -1,13 +1,18 @@
 package commands;
 
+import java.util.Collections;
+import java.util.Set;
+
 import model.ImageUtil;
 import model.ProcessorModelState;
+import model.ReadOptions;
 
 /**
  * Represents a load command for an image processor.
  */
 public class LoadCommand extends AbstractCommand implements ImageProcessorCommands {
   private String imagePath;
+  private ReadOptions options;
 
   /**
    * Constructs a load command.
@@ -16,8 +21,20 @@ public class LoadCommand extends AbstractCommand implements ImageProcessorComman
    * @param imagePath the destination path.
    */
   public LoadCommand(String name, String imagePath) {
+    this(name, imagePath, ReadOptions.FULL);
+  }
+
+  /**
+   * Constructs a load command that reads only a region of the file, subsampled.
+   *
+   * @param name      the name of the image to be loaded.
+   * @param imagePath the destination path.
+   * @param options   the region and subsampling to read.
+   */
+  public LoadCommand(String name, String imagePath, ReadOptions options) {
     super(name);
     this.imagePath = imagePath;
+    this.options = options;
   }
 
   /**
@@ -27,6 +44,21 @@ public class LoadCommand extends AbstractCommand implements ImageProcessorComman
    */
   @Override
   public void commandGo(ProcessorModelState model) {
-    model.load(name, ImageUtil.readFile(imagePath));
+    model.load(name, ImageUtil.readImage(imagePath, options));
+  }
+
+  @Override
+  public Set<String> getInputs() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<String> getOutputs() {
+    return Collections.singleton(name);
+  }
+
+  @Override
+  public Set<String> getFilesRead() {
+    return Collections.singleton(imagePath);
   }
 }
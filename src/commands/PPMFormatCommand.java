@@ -0,0 +1,30 @@
+package commands;
+
+import model.PPMFormat;
+import model.ProcessorModelState;
+
+/**
+ * Represents a command choosing how PPM files are saved from now on.
+ */
+public class PPMFormatCommand implements ImageProcessorCommands {
+  private PPMFormat format;
+
+  /**
+   * Constructs a PPM format command.
+   *
+   * @param format the format to save PPM files in.
+   */
+  public PPMFormatCommand(PPMFormat format) {
+    this.format = format;
+  }
+
+  /**
+   * Makes the PPM format command go.
+   *
+   * @param model model for the command to act upon.
+   */
+  @Override
+  public void commandGo(ProcessorModelState model) {
+    model.setPPMFormat(format);
+  }
+}
@@ -1,5 +1,8 @@
 package commands;
 
+import java.util.Collections;
+import java.util.Set;
+
 import model.ProcessorModelState;
 
 /**
@@ -28,4 +31,14 @@ public class SaveCommand extends AbstractCommand implements ImageProcessorComman
   public void commandGo(ProcessorModelState model) {
     model.save(imagePath, name);
   }
+
+  @Override
+  public Set<String> getInputs() {
+    return Collections.singleton(name);
+  }
+
+  @Override
+  public Set<String> getFilesWritten() {
+    return Collections.singleton(imagePath);
+  }
 }
@@ -0,0 +1,55 @@
+package commands;
+
+import java.util.Collections;
+import java.util.Set;
+
+import model.ProcessorModelState;
+import model.StreamPipeline;
+
+/**
+ * Represents a command running operations over an image file straight into another file, a band
+ * of rows at a time, without loading the image.
+ */
+public class StreamCommand implements ImageProcessorCommands {
+  private String inputPath;
+  private String outputPath;
+  private StreamPipeline pipeline;
+
+  /**
+   * Constructs a stream command.
+   *
+   * @param inputPath  the path of the file to read.
+   * @param outputPath the path of the file to write.
+   * @param pipeline   the operations to run.
+   */
+  public StreamCommand(String inputPath, String outputPath, StreamPipeline pipeline) {
+    this.inputPath = inputPath;
+    this.outputPath = outputPath;
+    this.pipeline = pipeline;
+  }
+
+  /**
+   * Makes the stream command go.
+   *
+   * @param model model for the command to act upon.
+   */
+  @Override
+  public void commandGo(ProcessorModelState model) {
+    model.stream(inputPath, outputPath, pipeline);
+  }
+
+  @Override
+  public Set<String> getInputs() {
+    return Collections.emptySet();
+  }
+
+  @Override
+  public Set<String> getFilesRead() {
+    return Collections.singleton(inputPath);
+  }
+
+  @Override
+  public Set<String> getFilesWritten() {
+    return Collections.singleton(outputPath);
+  }
+}
@@ -0,0 +1,476 @@
+package controller;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import commands.ImageProcessorCommands;
+import commands.LoadCommand;
+import commands.SaveCommand;
+import model.ImageProcessorModel;
+import model.ImageUtil;
+import model.ParallelExecutor;
+
+/**
+ * Runs one script over many image files in the same program, several files at a time. The script
+ * is a template in which {input} stands for the path of the file and {output} for the path of the
+ * output directory joined with the name of the file without its extension, so a template like
+ * 'load {input} img sepia img s save {output}-sepia.png s' writes a sepia copy of every file.
+ * Paths are split on whitespace like any other script, so they must not contain spaces.
+ *
+ * <p>Every file gets a model of its own, so the names in the template never clash, and the models
+ * share one executor for their pixel work. At most the given number of files run at once, and
+ * fewer when their images would not fit in memory together: before a file runs, the memory its
+ * images need is estimated from the size in its header and the number of image names the script
+ * writes, and taken from a budget of a share of the heap. A file larger than the whole budget
+ * runs on its own.
+ *
+ * <p>A file that fails does not stop the others. The failures are collected and returned, by
+ * file.
+ *
+ * <p>Given stages, the runner pipelines the files instead: the loads at the start of the script
+ * run on a pool of decode threads, the saves at the end on a pool of encode threads, and the
+ * commands between them on a pool of transform threads, so files are read and written while
+ * others are processed. The stages hand files on through bounded queues, so a stage that falls
+ * behind holds up the ones before it rather than letting decoded images pile up, and each stage
+ * counts its work in StageMetrics.
+ */
+public class BatchRunner {
+  /**
+   * The placeholder for the path of the input file.
+   */
+  public static final String INPUT = "{input}";
+
+  /**
+   * The placeholder for the output path of the file, without an extension.
+   */
+  public static final String OUTPUT = "{output}";
+
+  // the bytes of one packed pixel
+  private static final long PIXEL_BYTES = 4;
+  // the memory budget is counted in units of this many bytes, so it fits a semaphore
+  private static final long UNIT = 1 << 10;
+
+  private final String template;
+  private final int jobs;
+  private final ParallelExecutor executor;
+  // the images one file may hold at once, the ones the script writes plus one being built
+  private final int imagesPerFile;
+  private long memoryBudget;
+  // 0 to run each file whole on one of the jobs
+  private int decoders;
+  private int transformers;
+  private int encoders;
+  private int queueCapacity;
+  private volatile List<StageMetrics> metrics;
+
+  /**
+   * Constructs a batch runner of the given script template.
+   *
+   * @param template the script, with {input} and {output} in place of the paths of each file.
+   * @param jobs     the most files to run at once.
+   * @param executor the executor the models split their pixel work over.
+   * @throws IllegalArgumentException if the template is not a valid script, or the number of jobs
+   *                                  is less than 1.
+   */
+  public BatchRunner(String template, int jobs, ParallelExecutor executor)
+          throws IllegalArgumentException {
+    if (template == null || executor == null) {
+      throw new IllegalArgumentException("Null template or executor");
+    }
+    if (jobs < 1) {
+      throw new IllegalArgumentException("Invalid number of jobs: " + jobs);
+    }
+    this.template = template;
+    this.jobs = jobs;
+    this.executor = executor;
+    // a mistake in the template is found once, not once per file
+    Set<String> names = new HashSet<>();
+    for (ImageProcessorCommands cmd : this.compile("input.ppm", "output")) {
+      names.addAll(cmd.getOutputs());
+    }
+    this.imagesPerFile = names.size() + 1;
+    this.memoryBudget = Runtime.getRuntime().maxMemory() / 4 * 3;
+    this.metrics = Collections.emptyList();
+  }
+
+  /**
+   * Pipelines the files through separate pools of decode, transform and encode threads, in place
+   * of the jobs.
+   *
+   * @param decoders      the number of threads running the loads at the start of the script.
+   * @param transformers  the number of threads running the commands between them.
+   * @param encoders      the number of threads running the saves at the end of the script.
+   * @param queueCapacity the most files waiting between two stages.
+   * @throws IllegalArgumentException if any number is less than 1.
+   */
+  public void setStages(int decoders, int transformers, int encoders, int queueCapacity)
+          throws IllegalArgumentException {
+    if (decoders < 1 || transformers < 1 || encoders < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("Invalid stages: " + decoders + "," + transformers + ","
+              + encoders + " with queues of " + queueCapacity);
+    }
+    this.decoders = decoders;
+    this.transformers = transformers;
+    this.encoders = encoders;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Retrieves the metrics of the decode, transform and encode stages of the batch running now or
+   * last run, which keep changing while it runs.
+   *
+   * @return the metrics of each stage, empty if the batch is not pipelined.
+   */
+  public List<StageMetrics> getMetrics() {
+    return this.metrics;
+  }
+
+  /**
+   * Sets the memory the files running at once may take together.
+   *
+   * @param bytes the budget in bytes.
+   * @throws IllegalArgumentException if the budget is not positive.
+   */
+  public void setMemoryBudget(long bytes) throws IllegalArgumentException {
+    if (bytes <= 0) {
+      throw new IllegalArgumentException("Invalid memory budget: " + bytes);
+    }
+    this.memoryBudget = bytes;
+  }
+
+  /**
+   * Parses the script for the given paths.
+   */
+  private List<ImageProcessorCommands> compile(String input, String output) {
+    String script = this.template.replace(INPUT, input).replace(OUTPUT, output);
+    return new CommandParser(new StringReader(script)).parseAll();
+  }
+
+  /**
+   * Finds the files matching a glob such as photos/*.jpg or scans/**.ppm, in order of their
+   * paths. The directories before the first part with a wildcard are where the search starts.
+   *
+   * @param glob the pattern.
+   * @return the paths of the matching files.
+   * @throws IllegalStateException if the directory cannot be searched.
+   */
+  public static List<String> findFiles(String glob) {
+    Path pattern = Paths.get(glob);
+    Path prefix = pattern.isAbsolute() ? pattern.getRoot() : Paths.get("");
+    int first = 0;
+    for (; first < pattern.getNameCount() - 1; first++) {
+      String part = pattern.getName(first).toString();
+      if (part.contains("*") || part.contains("?") || part.contains("[") || part.contains("{")) {
+        break;
+      }
+      prefix = prefix.resolve(part);
+    }
+    // a relative glob without directories searches the working directory, named as it is given
+    boolean here = prefix.toString().isEmpty();
+    Path start = here ? Paths.get(".") : prefix;
+    PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:"
+            + pattern.subpath(first, pattern.getNameCount()));
+    try (Stream<Path> files = Files.walk(start)) {
+      return files.filter(Files::isRegularFile)
+              .filter(file -> matcher.matches(start.relativize(file)))
+              .map(file -> here ? start.relativize(file) : file)
+              .map(Path::toString)
+              .sorted()
+              .collect(Collectors.toList());
+    } catch (IOException e) {
+      throw new IllegalStateException("Error searching for files: " + glob);
+    }
+  }
+
+  /**
+   * Runs the script over every input file, writing into the output directory, which is created
+   * if it does not exist.
+   *
+   * @param inputs    the paths of the files.
+   * @param outputDir the directory {output} is in.
+   * @return the message of every file that failed by its path, in the order of the inputs, empty
+   *         if every file succeeded.
+   * @throws IllegalStateException if the output directory cannot be created.
+   */
+  public Map<String, String> run(List<String> inputs, String outputDir) {
+    try {
+      Files.createDirectories(Paths.get(outputDir));
+    } catch (IOException e) {
+      throw new IllegalStateException("Error creating directory: " + outputDir);
+    }
+    int units = (int) Math.max(1, Math.min(Integer.MAX_VALUE, this.memoryBudget / UNIT));
+    Semaphore memory = new Semaphore(units, true);
+    Map<String, String> failures = new ConcurrentHashMap<>();
+    if (this.decoders > 0) {
+      this.runPipelined(inputs, outputDir, memory, units, failures);
+    } else {
+      this.runJobs(inputs, outputDir, memory, units, failures);
+    }
+
+    Map<String, String> ordered = new LinkedHashMap<>();
+    for (String input : inputs) {
+      if (failures.containsKey(input)) {
+        ordered.put(input, failures.get(input));
+      }
+    }
+    return Collections.unmodifiableMap(ordered);
+  }
+
+  private static ExecutorService pool(int threads, String name) {
+    return Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  private static String message(Throwable failure) {
+    return failure.getMessage() == null ? failure.toString() : failure.getMessage();
+  }
+
+  /**
+   * Waits for every task, throwing if one of them failed outside the files it worked on.
+   */
+  private static void await(List<Future<?>> tasks) {
+    try {
+      for (Future<?> task : tasks) {
+        task.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted running the batch");
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Error running the batch: " + message(e.getCause()));
+    }
+  }
+
+  /**
+   * Runs each file whole on one of the jobs.
+   */
+  private void runJobs(List<String> inputs, String outputDir, Semaphore memory, int units,
+                       Map<String, String> failures) {
+    ExecutorService pool = pool(this.jobs, "batch-worker");
+    List<Future<?>> tasks = new ArrayList<>();
+    try {
+      for (String input : inputs) {
+        tasks.add(pool.submit(() -> {
+          try {
+            Job job = this.prepare(input, outputDir, units);
+            memory.acquire(job.permits);
+            try {
+              job.run(0, job.commands.size());
+            } finally {
+              memory.release(job.permits);
+            }
+          } catch (RuntimeException e) {
+            failures.put(input, message(e));
+          }
+          return null;
+        }));
+      }
+      await(tasks);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Runs the files through the decode, transform and encode stages. Each decoder takes the next
+   * file, waits for its memory and runs its loads, and the memory is given back once its saves
+   * are done or it fails. When the last thread of a stage is done, it tells every thread of the
+   * next stage that no more files are coming.
+   */
+  private void runPipelined(List<String> inputs, String outputDir, Semaphore memory, int units,
+                            Map<String, String> failures) {
+    Queue<String> pending = new ConcurrentLinkedQueue<>(inputs);
+    BlockingQueue<Job> decoded = new ArrayBlockingQueue<>(this.queueCapacity);
+    BlockingQueue<Job> transformed = new ArrayBlockingQueue<>(this.queueCapacity);
+    StageMetrics decode = new StageMetrics("decode", this.decoders, pending::size);
+    StageMetrics transform = new StageMetrics("transform", this.transformers, decoded::size);
+    StageMetrics encode = new StageMetrics("encode", this.encoders, transformed::size);
+    this.metrics = Collections.unmodifiableList(Arrays.asList(decode, transform, encode));
+    decode.queued();
+    AtomicInteger decoding = new AtomicInteger(this.decoders);
+    AtomicInteger transforming = new AtomicInteger(this.transformers);
+
+    ExecutorService pool = pool(this.decoders + this.transformers + this.encoders,
+            "batch-stage");
+    List<Future<?>> tasks = new ArrayList<>();
+    try {
+      for (int i = 0; i < this.decoders; i++) {
+        tasks.add(pool.submit(() -> {
+          try {
+            for (String input = pending.poll(); input != null; input = pending.poll()) {
+              Job job;
+              try {
+                job = this.prepare(input, outputDir, units);
+              } catch (RuntimeException e) {
+                failures.put(input, message(e));
+                decode.record(0, false);
+                continue;
+              }
+              memory.acquire(job.permits);
+              if (job.stage(0, job.loads, decode, memory, failures)) {
+                decoded.put(job);
+                transform.queued();
+              }
+            }
+          } finally {
+            finishStage(decoding, decode, decoded, this.transformers);
+          }
+          return null;
+        }));
+      }
+      for (int i = 0; i < this.transformers; i++) {
+        tasks.add(pool.submit(() -> {
+          try {
+            for (Job job = decoded.take(); job != Job.END; job = decoded.take()) {
+              if (job.stage(job.loads, job.saves, transform, memory, failures)) {
+                transformed.put(job);
+                encode.queued();
+              }
+            }
+          } finally {
+            finishStage(transforming, transform, transformed, this.encoders);
+          }
+          return null;
+        }));
+      }
+      for (int i = 0; i < this.encoders; i++) {
+        tasks.add(pool.submit(() -> {
+          for (Job job = transformed.take(); job != Job.END; job = transformed.take()) {
+            if (job.stage(job.saves, job.commands.size(), encode, memory, failures)) {
+              memory.release(job.permits);
+            }
+          }
+          return null;
+        }));
+      }
+      await(tasks);
+    } finally {
+      pool.shutdownNow();
+      encode.finish();
+    }
+  }
+
+  /**
+   * Counts a thread of a stage out, and when it is the last one, stops the clock of the stage and
+   * tells every thread of the next stage that no more files are coming.
+   */
+  private static void finishStage(AtomicInteger running, StageMetrics metrics,
+                                  BlockingQueue<Job> next, int nextThreads)
+          throws InterruptedException {
+    if (running.decrementAndGet() == 0) {
+      metrics.finish();
+      for (int i = 0; i < nextThreads; i++) {
+        next.put(Job.END);
+      }
+    }
+  }
+
+  /**
+   * Reads the size of the file and parses the script for it.
+   */
+  private Job prepare(String input, String outputDir, int units) {
+    Dimension size = ImageUtil.readSize(input);
+    long bytes = (long) size.width * size.height * PIXEL_BYTES * this.imagesPerFile;
+    int permits = (int) Math.max(1, Math.min(units, bytes / UNIT));
+    String name = Paths.get(input).getFileName().toString();
+    int dot = name.lastIndexOf('.');
+    String output = Paths.get(outputDir, dot > 0 ? name.substring(0, dot) : name).toString();
+    return new Job(input, this.compile(input, output), permits,
+            new ImageProcessorModel(this.executor));
+  }
+
+  /**
+   * One file and the script for it, split into the loads at the start, the saves at the end and
+   * the commands between them.
+   */
+  private static final class Job {
+    // handed to a stage after the last file
+    private static final Job END = new Job(null, Collections.emptyList(), 0, null);
+
+    private final String input;
+    private final List<ImageProcessorCommands> commands;
+    private final int permits;
+    private final ImageProcessorModel model;
+    // the loads are [0, loads), the saves [saves, size)
+    private final int loads;
+    private final int saves;
+
+    Job(String input, List<ImageProcessorCommands> commands, int permits,
+        ImageProcessorModel model) {
+      this.input = input;
+      this.commands = commands;
+      this.permits = permits;
+      this.model = model;
+      int loads = 0;
+      while (loads < commands.size() && commands.get(loads) instanceof LoadCommand) {
+        loads++;
+      }
+      int saves = commands.size();
+      while (saves > loads && commands.get(saves - 1) instanceof SaveCommand) {
+        saves--;
+      }
+      this.loads = loads;
+      this.saves = saves;
+    }
+
+    /**
+     * Runs the commands in [from, to).
+     */
+    void run(int from, int to) {
+      for (int i = from; i < to; i++) {
+        this.commands.get(i).commandGo(this.model);
+      }
+    }
+
+    /**
+     * Runs the commands in [from, to) as a stage, counting them in its metrics. A failure is
+     * recorded and gives back the memory of the file.
+     *
+     * @return true if the commands succeeded.
+     */
+    boolean stage(int from, int to, StageMetrics metrics, Semaphore memory,
+                  Map<String, String> failures) {
+      long start = System.nanoTime();
+      try {
+        this.run(from, to);
+      } catch (RuntimeException e) {
+        metrics.record(System.nanoTime() - start, false);
+        failures.put(this.input, message(e));
+        memory.release(this.permits);
+        return false;
+      }
+      metrics.record(System.nanoTime() - start, true);
+      return true;
+    }
+  }
+}
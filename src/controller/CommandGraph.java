@@ -0,0 +1,223 @@
+package controller;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import commands.ImageProcessorCommands;
+import model.ProcessorModelState;
+
+/**
+ * Runs the commands of a script in parallel where they do not depend on each other. Each command
+ * waits for the earlier commands that write an image or file it reads or writes, and for the
+ * earlier commands that read an image or file it writes. Commands that write files also run in
+ * the order of the script, so files are saved in the same order as running the script one command
+ * at a time, and a command that does not say what it reads runs on its own.
+ *
+ * <p>A script like one that loads an image and then takes five different components of it runs
+ * the five components at once, and finishes in the time of its longest branch.
+ *
+ * <p>When a command fails, no more commands are started, the ones running are finished, and the
+ * first failure is thrown. Commands later in the script that did not depend on the failed one may
+ * have run already.
+ */
+public class CommandGraph {
+  private final List<ImageProcessorCommands> commands;
+  // the commands waiting on each command
+  private final List<List<Integer>> dependents;
+  // the commands each command waits on
+  private final List<List<Integer>> dependencies;
+
+  /**
+   * Works out the dependencies between the given commands.
+   *
+   * @param commands the commands in the order of the script.
+   */
+  public CommandGraph(List<ImageProcessorCommands> commands) {
+    if (commands == null) {
+      throw new IllegalArgumentException("Null commands");
+    }
+    this.commands = new ArrayList<>(commands);
+    this.dependents = new ArrayList<>();
+    this.dependencies = new ArrayList<>();
+
+    Access images = new Access();
+    Access files = new Access();
+    // every command since the last command that runs on its own
+    List<Integer> sinceBarrier = new ArrayList<>();
+    int barrier = -1;
+    int lastWrite = -1;
+    for (int i = 0; i < this.commands.size(); i++) {
+      ImageProcessorCommands command = this.commands.get(i);
+      this.dependents.add(new ArrayList<>());
+      Set<Integer> waits = new TreeSet<>();
+      Set<String> inputs = command.getInputs();
+      if (barrier >= 0) {
+        waits.add(barrier);
+      }
+      if (inputs == null) {
+        waits.addAll(sinceBarrier);
+        barrier = i;
+        sinceBarrier.clear();
+      } else {
+        images.add(i, inputs, command.getOutputs(), waits);
+        files.add(i, paths(command.getFilesRead()), paths(command.getFilesWritten()), waits);
+        if (!command.getFilesWritten().isEmpty()) {
+          if (lastWrite >= 0) {
+            waits.add(lastWrite);
+          }
+          lastWrite = i;
+        }
+        sinceBarrier.add(i);
+      }
+      for (int wait : waits) {
+        this.dependents.get(wait).add(i);
+      }
+      this.dependencies.add(new ArrayList<>(waits));
+    }
+  }
+
+  /**
+   * Normalizes paths so two spellings of the same file are the same key.
+   */
+  private static Set<String> paths(Set<String> paths) {
+    Set<String> normalized = new TreeSet<>();
+    for (String path : paths) {
+      normalized.add(Paths.get(path).toAbsolutePath().normalize().toString());
+    }
+    return normalized;
+  }
+
+  /**
+   * The last command to write each key and the commands that read it since.
+   */
+  private static final class Access {
+    private final Map<String, Integer> writers = new HashMap<>();
+    private final Map<String, List<Integer>> readers = new HashMap<>();
+
+    /**
+     * Adds the commands the given command waits on for the keys it reads and writes, and records
+     * its reads and writes.
+     */
+    void add(int command, Set<String> reads, Set<String> writes, Set<Integer> waits) {
+      for (String key : reads) {
+        Integer writer = this.writers.get(key);
+        if (writer != null) {
+          waits.add(writer);
+        }
+      }
+      for (String key : writes) {
+        Integer writer = this.writers.get(key);
+        if (writer != null) {
+          waits.add(writer);
+        }
+        waits.addAll(this.readers.getOrDefault(key, new ArrayList<>()));
+      }
+      for (String key : reads) {
+        this.readers.computeIfAbsent(key, k -> new ArrayList<>()).add(command);
+      }
+      for (String key : writes) {
+        this.writers.put(key, command);
+        this.readers.remove(key);
+      }
+      waits.remove(command);
+    }
+  }
+
+  /**
+   * Retrieves the commands the command at the given position waits on.
+   *
+   * @param command the position of the command in the script.
+   * @return the positions of the commands it waits on.
+   */
+  public List<Integer> getDependencies(int command) {
+    return new ArrayList<>(this.dependencies.get(command));
+  }
+
+  /**
+   * Runs every command on a pool of the given number of threads, each as soon as the commands it
+   * waits on are done, and returns once they are all done.
+   *
+   * @param model   the model for the commands to act upon, which must be safe to use from several
+   *                threads.
+   * @param threads the number of commands to run at once.
+   * @throws IllegalArgumentException if the number of threads is less than 1.
+   */
+  public void run(ProcessorModelState model, int threads) throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Invalid number of threads: " + threads);
+    }
+    ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "script-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    CompletionService<Integer> done = new ExecutorCompletionService<>(pool);
+    int[] waiting = new int[this.commands.size()];
+    for (int i = 0; i < waiting.length; i++) {
+      waiting[i] = this.dependencies.get(i).size();
+    }
+    int running = 0;
+    RuntimeException failure = null;
+    try {
+      for (int i = 0; i < waiting.length; i++) {
+        if (waiting[i] == 0) {
+          this.submit(done, i, model);
+          running++;
+        }
+      }
+      while (running > 0) {
+        Future<Integer> finished = done.take();
+        running--;
+        int command;
+        try {
+          command = finished.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+          }
+          if (failure == null) {
+            failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+          }
+          continue;
+        }
+        if (failure != null) {
+          continue;
+        }
+        for (int next : this.dependents.get(command)) {
+          if (--waiting[next] == 0) {
+            this.submit(done, next, model);
+            running++;
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted running the script");
+    } finally {
+      pool.shutdownNow();
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void submit(CompletionService<Integer> done, int command, ProcessorModelState model) {
+    ImageProcessorCommands cmd = this.commands.get(command);
+    done.submit(() -> {
+      cmd.commandGo(model);
+      return command;
+    });
+  }
+}
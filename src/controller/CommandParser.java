@@ -0,0 +1,355 @@
+package controller;
+
+import java.awt.Rectangle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+import commands.BrightenCommand;
+import commands.ColorTransformationCommand;
+import commands.ConvolveCommand;
+import commands.FilterCommand;
+import commands.FlipCommand;
+import commands.GrayscaleCommand;
+import commands.ImageProcessorCommands;
+import commands.LoadCommand;
+import commands.PPMFormatCommand;
+import commands.SaveCommand;
+import commands.StreamCommand;
+import model.BorderMode;
+import model.ColorTransformationType;
+import model.FilterType;
+import model.GrayScale;
+import model.ImageUtil;
+import model.Kernel;
+import model.PPMFormat;
+import model.ReadOptions;
+import model.StreamPipeline;
+
+/**
+ * Parses the commands of the ImageProcessor from text, one command at a time or a whole script
+ * at once. Commands are separated by whitespace and their arguments follow their names.
+ */
+public class CommandParser {
+  private final Scanner scan;
+  // null to take paths as they are written
+  private final Path directory;
+
+  /**
+   * Constructs a parser of the given text.
+   *
+   * @param input the text to parse.
+   */
+  public CommandParser(Readable input) {
+    this.scan = new Scanner(input);
+    this.directory = null;
+  }
+
+  /**
+   * Constructs a parser of the given text whose file paths are relative to the given directory
+   * and may not leave it, for scripts that must only touch the files of their own directory.
+   *
+   * @param input     the text to parse.
+   * @param directory the directory the paths are in.
+   */
+  public CommandParser(Readable input, Path directory) {
+    if (directory == null) {
+      throw new IllegalArgumentException("Null directory");
+    }
+    this.scan = new Scanner(input);
+    this.directory = directory.toAbsolutePath().normalize();
+  }
+
+  /**
+   * Resolves a path of the script against the directory of the parser, if it has one.
+   *
+   * @param path the path as it is written.
+   * @return the path of the file.
+   * @throws IllegalArgumentException if the path leaves the directory.
+   */
+  private String path(String path) throws IllegalArgumentException {
+    if (this.directory == null) {
+      return path;
+    }
+    Path resolved = this.directory.resolve(path).normalize();
+    if (!resolved.startsWith(this.directory)) {
+      throw new IllegalArgumentException("Path outside the directory: " + path);
+    }
+    return resolved.toString();
+  }
+
+  /**
+   * Reads a kernel. With a directory, a kernel that is not a file in it must be written inline,
+   * so its name never reaches a file outside the directory.
+   */
+  private Kernel kernel(String kernel) {
+    if (this.directory == null) {
+      return ImageUtil.readKernel(kernel);
+    }
+    if (!kernel.contains(",")) {
+      String path = this.path(kernel);
+      if (Files.isRegularFile(Paths.get(path))) {
+        return ImageUtil.readKernel(path);
+      }
+    }
+    return ImageUtil.parseKernel(kernel);
+  }
+
+  /**
+   * Parses the next command.
+   *
+   * @return the command, or null if there are no more.
+   * @throws IllegalArgumentException if the next command is not valid.
+   */
+  public ImageProcessorCommands next() throws IllegalArgumentException {
+    if (!this.scan.hasNext()) {
+      return null;
+    }
+    String next = this.scan.next();
+    String name;
+    String dest;
+    ImageProcessorCommands cmd;
+
+    switch (next) {
+      case "load":
+        String path = this.path(this.scan.next());
+        name = this.scan.next();
+        Rectangle region = null;
+        int subsample = 1;
+        while (this.scan.hasNext("--region") || this.scan.hasNext("--subsample")) {
+          if (this.scan.next().equals("--region")) {
+            region = this.region(this.scan.next());
+          } else {
+            subsample = this.scan.nextInt();
+          }
+        }
+        cmd = new LoadCommand(name, path, new ReadOptions(region, subsample));
+        break;
+      case "save":
+        path = this.path(this.scan.next());
+        name = this.scan.next();
+        System.out.println(path + "234" + name);
+        cmd = new SaveCommand(name, path);
+        break;
+      case "red-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Red, name, dest);
+        break;
+      case "green-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Green, name, dest);
+        break;
+      case "blue-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Blue, name, dest);
+        break;
+      case "value-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Value, name, dest);
+        break;
+      case "luma-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Luma, name, dest);
+        break;
+      case "intensity-component":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new GrayscaleCommand(GrayScale.Intensity, name, dest);
+        break;
+      case "horizontal-flip":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new FlipCommand(name, dest, false);
+        break;
+      case "vertical-flip":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new FlipCommand(name, dest, true);
+        break;
+      case "brighten":
+        int value = this.scan.nextInt();
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new BrightenCommand(value, name, dest);
+        break;
+      case "blur":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new FilterCommand(name, dest, FilterType.Blur);
+        break;
+      case "sharpen":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new FilterCommand(name, dest, FilterType.Sharpen);
+        break;
+      case "convolve":
+        Kernel kernel = this.kernel(this.scan.next());
+        name = this.scan.next();
+        dest = this.scan.next();
+        BorderMode border = BorderMode.Zero;
+        if (this.scan.hasNext("--border")) {
+          this.scan.next();
+          border = this.borderMode(this.scan.next());
+        }
+        cmd = new ConvolveCommand(name, dest, kernel, border);
+        break;
+      case "grayscale":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new ColorTransformationCommand(name, dest, ColorTransformationType.Gray);
+        break;
+      case "sepia":
+        name = this.scan.next();
+        dest = this.scan.next();
+        cmd = new ColorTransformationCommand(name, dest, ColorTransformationType.Sepia);
+        break;
+      case "ppm-format":
+        String format = this.scan.next();
+        if (format.equals("raw")) {
+          cmd = new PPMFormatCommand(PPMFormat.Raw);
+        } else if (format.equals("plain")) {
+          cmd = new PPMFormatCommand(PPMFormat.Plain);
+        } else {
+          throw new IllegalArgumentException("Not a valid PPM format: " + format);
+        }
+        break;
+      case "stream":
+        path = this.path(this.scan.next());
+        dest = this.path(this.scan.next());
+        cmd = new StreamCommand(path, dest, this.pipeline());
+        break;
+      default:
+        throw new IllegalArgumentException("Not a valid command!");
+    }
+    return cmd;
+  }
+
+  /**
+   * Parses every remaining command.
+   *
+   * @return the commands in order.
+   * @throws IllegalArgumentException if any command is not valid.
+   */
+  public List<ImageProcessorCommands> parseAll() throws IllegalArgumentException {
+    List<ImageProcessorCommands> commands = new ArrayList<>();
+    for (ImageProcessorCommands cmd = this.next(); cmd != null; cmd = this.next()) {
+      commands.add(cmd);
+    }
+    return commands;
+  }
+
+  /**
+   * Parses the operations of a stream command up to the word end, after an optional --band
+   * option giving the number of rows in a band.
+   *
+   * @return the pipeline of the operations.
+   * @throws IllegalArgumentException if an operation is not one that can be streamed, or there is
+   *                                  no end.
+   */
+  private StreamPipeline pipeline() throws IllegalArgumentException {
+    StreamPipeline pipeline = new StreamPipeline();
+    if (this.scan.hasNext("--band")) {
+      this.scan.next();
+      pipeline.setBandRows(this.scan.nextInt());
+    }
+    while (this.scan.hasNext()) {
+      String operation = this.scan.next();
+      switch (operation) {
+        case "end":
+          return pipeline;
+        case "brighten":
+          pipeline.brighten(this.scan.nextInt());
+          break;
+        case "red-component":
+          pipeline.toGrayScale(GrayScale.Red);
+          break;
+        case "green-component":
+          pipeline.toGrayScale(GrayScale.Green);
+          break;
+        case "blue-component":
+          pipeline.toGrayScale(GrayScale.Blue);
+          break;
+        case "value-component":
+          pipeline.toGrayScale(GrayScale.Value);
+          break;
+        case "luma-component":
+          pipeline.toGrayScale(GrayScale.Luma);
+          break;
+        case "intensity-component":
+          pipeline.toGrayScale(GrayScale.Intensity);
+          break;
+        case "grayscale":
+          pipeline.transformationGrayscale();
+          break;
+        case "sepia":
+          pipeline.sepia();
+          break;
+        case "horizontal-flip":
+          pipeline.horizontalFlip();
+          break;
+        case "blur":
+          pipeline.blur();
+          break;
+        case "sharpen":
+          pipeline.sharpen();
+          break;
+        case "convolve":
+          Kernel kernel = this.kernel(this.scan.next());
+          BorderMode border = BorderMode.Zero;
+          if (this.scan.hasNext("--border")) {
+            this.scan.next();
+            border = this.borderMode(this.scan.next());
+          }
+          pipeline.convolve(kernel, border);
+          break;
+        default:
+          throw new IllegalArgumentException("Not a valid stream operation: " + operation);
+      }
+    }
+    throw new IllegalArgumentException("Stream operations must finish with end");
+  }
+
+  /**
+   * Parses a region written as x,y,width,height.
+   *
+   * @param region the region.
+   * @return the region.
+   * @throws IllegalArgumentException if it is not four whole numbers separated by commas.
+   */
+  private Rectangle region(String region) throws IllegalArgumentException {
+    String[] parts = region.split(",");
+    if (parts.length != 4) {
+      throw new IllegalArgumentException("Not a valid region: " + region);
+    }
+    try {
+      return new Rectangle(Integer.parseInt(parts[0].trim()), Integer.parseInt(parts[1].trim()),
+              Integer.parseInt(parts[2].trim()), Integer.parseInt(parts[3].trim()));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Not a valid region: " + region);
+    }
+  }
+
+  /**
+   * Finds the border mode with the given name, ignoring case.
+   *
+   * @param mode the name of the border mode.
+   * @return the border mode.
+   * @throws IllegalArgumentException if there is no border mode with that name.
+   */
+  private BorderMode borderMode(String mode) throws IllegalArgumentException {
+    for (BorderMode border : BorderMode.values()) {
+      if (border.name().equalsIgnoreCase(mode)) {
+        return border;
+      }
+    }
+    throw new IllegalArgumentException("Not a valid border mode: " + mode);
+  }
+}
@@ -1,19 +1,8 @@
 package controller;
 
 import java.io.InputStreamReader;
-import java.util.Scanner;
 
-import commands.BrightenCommand;
-import commands.ColorTransformationCommand;
-import commands.FilterCommand;
-import commands.FlipCommand;
-import commands.GrayscaleCommand;
 import commands.ImageProcessorCommands;
-import commands.LoadCommand;
-import commands.SaveCommand;
-import model.ColorTransformationType;
-import model.FilterType;
-import model.GrayScale;
 import model.ProcessorModelState;
 
 /**
@@ -53,110 +42,24 @@ public class ImageProcessorController implements IIPC {
   }
 
   /**
-   * Runs the program.
+   * Runs the program. A script read from a file is parsed whole first, and its commands run in
+   * parallel where they do not depend on each other, after which commands are read from the
+   * console one at a time.
    */
   public void startProgram() {
-    Scanner scan = new Scanner(input);
+    CommandParser parser = new CommandParser(this.input);
 
-    while (scan.hasNext()) {
-      String next = scan.next();
-      String name;
-      String dest;
-      ImageProcessorCommands cmd = null;
-
-      switch (next) {
-        case "load":
-          String path = scan.next();
-          name = scan.next();
-          cmd = new LoadCommand(name, path);
-          break;
-        case "save":
-          path = scan.next();
-          name = scan.next();
-          System.out.println(path + "234" + name);
-          cmd = new SaveCommand(name, path);
-          break;
-        case "red-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Red, name, dest);
-          break;
-        case "green-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Green, name, dest);
-          break;
-        case "blue-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Blue, name, dest);
-          break;
-        case "value-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Value, name, dest);
-          break;
-        case "luma-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Luma, name, dest);
-          break;
-        case "intensity-component":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new GrayscaleCommand(GrayScale.Intensity, name, dest);
-          break;
-        case "horizontal-flip":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new FlipCommand(name, dest, false);
-          break;
-        case "vertical-flip":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new FlipCommand(name, dest, true);
-          break;
-        case "brighten":
-          int value = scan.nextInt();
-          name = scan.next();
-          dest = scan.next();
-          cmd = new BrightenCommand(value, name, dest);
-          break;
-        case "blur":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new FilterCommand(name, dest, FilterType.Blur);
-          break;
-        case "sharpen":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new FilterCommand(name, dest, FilterType.Sharpen);
-          break;
-        case "grayscale":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new ColorTransformationCommand(name, dest, ColorTransformationType.Gray);
-          break;
-        case "sepia":
-          name = scan.next();
-          dest = scan.next();
-          cmd = new ColorTransformationCommand(name, dest, ColorTransformationType.Sepia);
-          break;
-        default:
-          throw new IllegalArgumentException("Not a valid command!");
-      }
-      if (cmd != null) {
-        cmd.commandGo(model);
-        cmd = null;
-      } else {
-        throw new IllegalArgumentException("Not a valid command!");
-      }
-    }
     if (this.fileRead) {
+      new CommandGraph(parser.parseAll()).run(this.model,
+              Runtime.getRuntime().availableProcessors());
       System.out.println("fileread");
       this.input = new InputStreamReader(System.in);
       this.fileRead = false;
       this.startProgram();
+      return;
+    }
+    for (ImageProcessorCommands cmd = parser.next(); cmd != null; cmd = parser.next()) {
+      cmd.commandGo(model);
     }
   }
 }
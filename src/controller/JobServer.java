@@ -0,0 +1,305 @@
+package controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.InputMismatchException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import commands.ImageProcessorCommands;
+import model.ImageProcessorModel;
+import model.ParallelExecutor;
+
+/**
+ * Runs scripts sent to it over HTTP on the loopback interface, so a program can use the image
+ * processor without starting a new one for every job. A job is a POST to /jobs whose body is a
+ * zip file holding the script as script.txt together with the files it loads. The paths in the
+ * script are relative to the zip, and the reply is a zip file of every file the script saved.
+ * A job that is not valid, such as one with a script that does not parse or images that cannot
+ * be read, gets a 400 reply and a job that fails in any other way, such as writing its files, a
+ * 500 reply, both with the message as text.
+ *
+ * <p>Every job runs in a directory of its own that is deleted afterwards, against a model of its
+ * own, so jobs never see each other's images or files. Requests are handled on virtual threads
+ * when the runtime has them and on a cached pool of threads otherwise, since handling them is
+ * mostly waiting for the network. The scripts themselves run on a fixed pool of threads, so
+ * however many requests arrive, only that many jobs use the processors at once.
+ */
+public class JobServer {
+  /**
+   * The name of the script in the zip file of a job.
+   */
+  public static final String SCRIPT = "script.txt";
+
+  /**
+   * The most bytes the files of a job may take once unzipped, unless given otherwise.
+   */
+  public static final long DEFAULT_MAX_JOB_BYTES = 1L << 30;
+
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final HttpServer server;
+  private final ExecutorService connections;
+  private final ExecutorService jobs;
+  private final ParallelExecutor executor;
+  private final long maxJobBytes;
+
+  /**
+   * Constructs a server listening on the given port of the loopback interface. It does not take
+   * requests until it is started.
+   *
+   * @param port        the port, 0 for any free port.
+   * @param threads     the most jobs to run at once.
+   * @param maxJobBytes the most bytes the files of a job may take once unzipped.
+   * @param executor    the executor the models split their pixel work over.
+   * @throws IOException              if the port cannot be listened on.
+   * @throws IllegalArgumentException if the number of threads or bytes is not positive.
+   */
+  public JobServer(int port, int threads, long maxJobBytes, ParallelExecutor executor)
+          throws IOException {
+    if (threads < 1 || maxJobBytes < 1 || executor == null) {
+      throw new IllegalArgumentException("Invalid job server settings");
+    }
+    this.executor = executor;
+    this.maxJobBytes = maxJobBytes;
+    this.connections = connectionExecutor();
+    this.jobs = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread thread = new Thread(runnable, "job-worker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+            0);
+    this.server.setExecutor(this.connections);
+    this.server.createContext("/jobs", this::handle);
+  }
+
+  /**
+   * Creates an executor starting a virtual thread per task, found by reflection so the server
+   * still runs on a runtime without them, where a cached pool is used instead.
+   */
+  private static ExecutorService connectionExecutor() {
+    try {
+      Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) virtual.invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "job-connection");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Starts taking requests.
+   */
+  public void start() {
+    this.server.start();
+  }
+
+  /**
+   * Retrieves the port the server listens on.
+   *
+   * @return the port.
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Stops taking requests, lets the jobs running finish for up to the given time, and stops.
+   *
+   * @param seconds the most seconds to wait for the jobs running.
+   */
+  public void stop(int seconds) {
+    this.server.stop(seconds);
+    this.connections.shutdownNow();
+    this.jobs.shutdownNow();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        exchange.getResponseHeaders().set("Allow", "POST");
+        reply(exchange, 405, "Jobs are sent with POST");
+        return;
+      }
+      Path directory = Files.createTempDirectory("job");
+      try {
+        this.unzip(exchange.getRequestBody(), directory);
+        List<ImageProcessorCommands> commands = this.parse(directory);
+        Set<Path> saved = this.runJob(commands);
+        exchange.getResponseHeaders().set("Content-Type", "application/zip");
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream body = exchange.getResponseBody()) {
+          zip(saved, directory, body);
+        }
+      } finally {
+        delete(directory);
+      }
+    } catch (IllegalArgumentException e) {
+      reply(exchange, 400, e.getMessage());
+    } catch (RuntimeException e) {
+      // IllegalStateException, or any other failure of a command while running
+      reply(exchange, 500, e.getMessage() == null ? e.toString() : e.getMessage());
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void reply(HttpExchange exchange, int status, String message)
+          throws IOException {
+    byte[] text = String.valueOf(message).getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    exchange.sendResponseHeaders(status, text.length);
+    try (OutputStream body = exchange.getResponseBody()) {
+      body.write(text);
+    }
+  }
+
+  /**
+   * Writes the files of the zip into the directory.
+   *
+   * @throws IllegalArgumentException if the body is not a zip file, an entry would land outside
+   *                                  the directory, or the files take too many bytes.
+   * @throws IOException              if the files cannot be written.
+   */
+  private void unzip(InputStream body, Path directory) throws IOException {
+    long total = 0;
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (ZipInputStream zip = new ZipInputStream(body)) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        Path file = directory.resolve(entry.getName()).normalize();
+        if (!file.startsWith(directory) || file.equals(directory)) {
+          throw new IllegalArgumentException("Entry outside the job: " + entry.getName());
+        }
+        if (entry.isDirectory()) {
+          Files.createDirectories(file);
+          continue;
+        }
+        Files.createDirectories(file.getParent());
+        try (OutputStream out = Files.newOutputStream(file)) {
+          for (int read = zip.read(buffer); read > 0; read = zip.read(buffer)) {
+            total += read;
+            if (total > this.maxJobBytes) {
+              throw new IllegalArgumentException("Job larger than " + this.maxJobBytes + " bytes");
+            }
+            out.write(buffer, 0, read);
+          }
+        }
+      }
+    } catch (ZipException e) {
+      throw new IllegalArgumentException("Job is not a zip file: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Parses the script of the job with its paths inside the directory.
+   *
+   * @throws IllegalArgumentException if there is no script or it does not parse, such as when a
+   *                                  number is not one or the script ends inside a command.
+   */
+  private List<ImageProcessorCommands> parse(Path directory) throws IOException {
+    Path script = directory.resolve(SCRIPT);
+    if (!Files.isRegularFile(script)) {
+      throw new IllegalArgumentException("No " + SCRIPT + " in the job");
+    }
+    try (InputStreamReader reader = new InputStreamReader(Files.newInputStream(script),
+            StandardCharsets.UTF_8)) {
+      return new CommandParser(reader, directory).parseAll();
+    } catch (InputMismatchException e) {
+      throw new IllegalArgumentException("Invalid " + SCRIPT + ": expected a number");
+    } catch (NoSuchElementException e) {
+      throw new IllegalArgumentException("Invalid " + SCRIPT + ": it ends inside a command");
+    }
+  }
+
+  /**
+   * Runs the commands on a model of their own on the pool of job threads.
+   *
+   * @return the files the commands saved.
+   */
+  private Set<Path> runJob(List<ImageProcessorCommands> commands) {
+    Future<?> job = this.jobs.submit(() -> {
+      // the script can only name directories to save in, so they are made for it
+      for (ImageProcessorCommands cmd : commands) {
+        for (String file : cmd.getFilesWritten()) {
+          try {
+            Files.createDirectories(Paths.get(file).getParent());
+          } catch (IOException e) {
+            throw new IllegalStateException("Error writing file: " + file);
+          }
+        }
+      }
+      ImageProcessorModel model = new ImageProcessorModel(this.executor);
+      for (ImageProcessorCommands cmd : commands) {
+        cmd.commandGo(model);
+      }
+    });
+    try {
+      job.get();
+    } catch (InterruptedException e) {
+      job.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted running the job");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException("Error running the job: " + e.getCause());
+    }
+    Set<Path> saved = new TreeSet<>();
+    for (ImageProcessorCommands cmd : commands) {
+      for (String file : cmd.getFilesWritten()) {
+        saved.add(Paths.get(file));
+      }
+    }
+    return saved;
+  }
+
+  /**
+   * Writes the files into a zip, named by their paths in the directory.
+   */
+  private static void zip(Set<Path> files, Path directory, OutputStream body) throws IOException {
+    ZipOutputStream zip = new ZipOutputStream(body);
+    for (Path file : files) {
+      zip.putNextEntry(new ZipEntry(directory.relativize(file).toString().replace('\\', '/')));
+      Files.copy(file, zip);
+      zip.closeEntry();
+    }
+    zip.finish();
+  }
+
+  private static void delete(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package controller;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Counts the work of one stage of a pipelined batch: the files it finished and failed, the time
+ * its threads spent working on them, and the depth of the queue of files waiting for it. The
+ * counts are updated while the batch runs, so they may be read from another thread to watch it.
+ */
+public class StageMetrics {
+  private final String name;
+  private final int threads;
+  private final IntSupplier queue;
+  private final AtomicLong completed;
+  private final AtomicLong failed;
+  private final AtomicLong busyNanos;
+  private final AtomicInteger maxQueueDepth;
+  private final long startNanos;
+  private volatile long endNanos;
+
+  /**
+   * Constructs the metrics of a stage, starting its clock.
+   *
+   * @param name    the name of the stage.
+   * @param threads the number of threads of the stage.
+   * @param queue   the number of files waiting for the stage.
+   */
+  StageMetrics(String name, int threads, IntSupplier queue) {
+    this.name = name;
+    this.threads = threads;
+    this.queue = queue;
+    this.completed = new AtomicLong();
+    this.failed = new AtomicLong();
+    this.busyNanos = new AtomicLong();
+    this.maxQueueDepth = new AtomicInteger();
+    this.startNanos = System.nanoTime();
+  }
+
+  /**
+   * Records a file the stage worked on.
+   *
+   * @param nanos     the time spent on it.
+   * @param succeeded whether it succeeded.
+   */
+  void record(long nanos, boolean succeeded) {
+    this.busyNanos.addAndGet(nanos);
+    (succeeded ? this.completed : this.failed).incrementAndGet();
+  }
+
+  /**
+   * Records the depth of the queue after a file was added to it.
+   */
+  void queued() {
+    int depth = this.queue.getAsInt();
+    this.maxQueueDepth.accumulateAndGet(depth, Math::max);
+  }
+
+  /**
+   * Stops the clock of the stage.
+   */
+  void finish() {
+    this.endNanos = System.nanoTime();
+  }
+
+  /**
+   * Retrieves the name of the stage.
+   *
+   * @return the name.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Retrieves the number of threads of the stage.
+   *
+   * @return the number of threads.
+   */
+  public int getThreads() {
+    return this.threads;
+  }
+
+  /**
+   * Retrieves the number of files the stage finished.
+   *
+   * @return the number of files.
+   */
+  public long getCompleted() {
+    return this.completed.get();
+  }
+
+  /**
+   * Retrieves the number of files that failed in the stage.
+   *
+   * @return the number of files.
+   */
+  public long getFailed() {
+    return this.failed.get();
+  }
+
+  /**
+   * Retrieves the time the threads of the stage spent working on files, added up.
+   *
+   * @return the time in nanoseconds.
+   */
+  public long getBusyNanos() {
+    return this.busyNanos.get();
+  }
+
+  /**
+   * Retrieves the number of files waiting for the stage now.
+   *
+   * @return the depth of its queue.
+   */
+  public int getQueueDepth() {
+    return this.queue.getAsInt();
+  }
+
+  /**
+   * Retrieves the most files that waited for the stage at once.
+   *
+   * @return the largest depth of its queue.
+   */
+  public int getMaxQueueDepth() {
+    return this.maxQueueDepth.get();
+  }
+
+  /**
+   * Retrieves the time since the batch started, or the time it took once it is done.
+   *
+   * @return the time in nanoseconds.
+   */
+  public long getElapsedNanos() {
+    long end = this.endNanos;
+    return (end == 0 ? System.nanoTime() : end) - this.startNanos;
+  }
+
+  /**
+   * Retrieves the files the stage finished per second of the batch.
+   *
+   * @return the throughput.
+   */
+  public double getThroughput() {
+    return this.getCompleted() * 1e9 / Math.max(1, this.getElapsedNanos());
+  }
+
+  /**
+   * Retrieves the share of the time of its threads the stage spent working, the rest of which it
+   * spent waiting for files or for room in the next queue.
+   *
+   * @return the share in [0, 1].
+   */
+  public double getUtilization() {
+    return Math.min(1, this.getBusyNanos()
+            / ((double) Math.max(1, this.getElapsedNanos()) * this.threads));
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s: %d threads, %d done, %d failed, %.2f files/s, %.0f%% busy, "
+                    + "queue at most %d", this.name, this.threads, this.getCompleted(),
+            this.getFailed(), this.getThroughput(), this.getUtilization() * 100,
+            this.getMaxQueueDepth());
+  }
+}
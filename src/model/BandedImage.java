@@ -0,0 +1,206 @@
+package model;
+
+import java.awt.Image;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Vector;
+
+/**
+ * An image whose rows are read from a RowSource a band at a time as an ImageIO writer asks for
+ * them, so the writer never needs the whole image. The PNG writer and the top down BMP writer ask
+ * for the rows in order through getData with a rectangle, and only one band is held at a time.
+ * Writers that ask for the whole image at once, such as the JPEG writer, are refused.
+ *
+ * <p>A failure to read rows is thrown as an UncheckedIOException, since the writer calls through
+ * methods that cannot throw IOException.
+ */
+final class BandedImage implements RenderedImage {
+  private static final DirectColorModel COLORS = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+
+  private final RowSource source;
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+  private final int capacity;
+  // the rows [start, end) are in the band
+  private int start;
+  private int end;
+  private Raster band;
+
+  /**
+   * Constructs the image over the rows of the source.
+   *
+   * @param source   the rows of the image.
+   * @param bandRows the number of rows held at a time.
+   */
+  BandedImage(RowSource source, int bandRows) {
+    this.source = source;
+    this.width = source.getWidth();
+    this.height = source.getHeight();
+    this.capacity = Math.max(1, Math.min(bandRows, this.height));
+    this.pixels = new int[this.capacity * this.width];
+  }
+
+  /**
+   * Makes sure the band holds the given rows, reading further rows in place of the ones before
+   * them.
+   *
+   * @param y    the first row needed.
+   * @param rows the number of rows needed.
+   * @throws IllegalStateException if rows before the band are asked for again, rows are skipped,
+   *                               or more rows are asked for than a band holds.
+   */
+  private void load(int y, int rows) {
+    if (y < this.start || y > this.end || rows > this.capacity) {
+      throw new IllegalStateException("Rows can only be streamed in order, a band at a time");
+    }
+    if (y + rows <= this.end) {
+      return;
+    }
+    int keep = this.end - y;
+    System.arraycopy(this.pixels, (y - this.start) * this.width, this.pixels, 0,
+            keep * this.width);
+    this.start = y;
+    try {
+      while (this.end - this.start < this.capacity && this.end < this.height) {
+        int read = this.source.read(this.pixels, (this.end - this.start) * this.width,
+                this.capacity - (this.end - this.start));
+        if (read == 0) {
+          break;
+        }
+        this.end += read;
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (y + rows > this.end) {
+      throw new IllegalStateException("The image ended early");
+    }
+    DataBufferInt buffer = new DataBufferInt(this.pixels, this.pixels.length);
+    this.band = Raster.createPackedRaster(buffer, this.width, this.end - this.start, this.width,
+            COLORS.getMasks(), new Point(0, this.start));
+  }
+
+  @Override
+  public Raster getData(Rectangle rect) {
+    Rectangle bounds = rect.intersection(new Rectangle(0, 0, this.width, this.height));
+    if (bounds.isEmpty()) {
+      throw new IllegalArgumentException("Rectangle outside the image");
+    }
+    this.load(bounds.y, bounds.height);
+    return this.band.createChild(bounds.x, bounds.y, bounds.width, bounds.height, bounds.x,
+            bounds.y, null);
+  }
+
+  @Override
+  public Raster getData() {
+    throw new IllegalStateException("A streamed image cannot be read whole");
+  }
+
+  @Override
+  public Raster getTile(int tileX, int tileY) {
+    throw new IllegalStateException("A streamed image cannot be read whole");
+  }
+
+  @Override
+  public WritableRaster copyData(WritableRaster raster) {
+    throw new IllegalStateException("A streamed image cannot be read whole");
+  }
+
+  @Override
+  public Vector<RenderedImage> getSources() {
+    return null;
+  }
+
+  @Override
+  public Object getProperty(String name) {
+    return Image.UndefinedProperty;
+  }
+
+  @Override
+  public String[] getPropertyNames() {
+    return null;
+  }
+
+  @Override
+  public ColorModel getColorModel() {
+    return COLORS;
+  }
+
+  @Override
+  public SampleModel getSampleModel() {
+    return new SinglePixelPackedSampleModel(DataBuffer.TYPE_INT, this.width, this.height,
+            COLORS.getMasks());
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getMinX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinY() {
+    return 0;
+  }
+
+  @Override
+  public int getNumXTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getNumYTiles() {
+    return 1;
+  }
+
+  @Override
+  public int getMinTileX() {
+    return 0;
+  }
+
+  @Override
+  public int getMinTileY() {
+    return 0;
+  }
+
+  @Override
+  public int getTileWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getTileHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int getTileGridXOffset() {
+    return 0;
+  }
+
+  @Override
+  public int getTileGridYOffset() {
+    return 0;
+  }
+}
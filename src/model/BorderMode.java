@@ -0,0 +1,8 @@
+package model;
+
+/**
+ * The possible ways of reading pixels outside an image when convolving it.
+ */
+public enum BorderMode {
+  Zero, Clamp, Mirror, Wrap
+}
@@ -0,0 +1,115 @@
+package model;
+
+/**
+ * A 3x3 color transformation matrix, checked and compiled once when it is built rather than for
+ * every pixel. Each output channel is the weighted sum of the input channels given by one row of
+ * the matrix, truncated and clamped to [0, 255].
+ *
+ * <p>Each entry is compiled into a table of its products with the 256 levels, and a channel is
+ * the sum of three table reads in the order Pixel adds the products, so the doubles round the
+ * same way and every pixel comes out exactly as Pixel.applyTransformation gives it.
+ *
+ * <p>When Vectorization is on, the products are multiplied out instead of read from the tables,
+ * so the loop stays lane-wise, and it runs on the Vector API when Vectorization has its kernels.
+ * The multiplies are the ones the tables were built with, so the results are the same.
+ */
+final class ColorMatrix implements PointOperation {
+  /**
+   * Turns every pixel to its luma, the greyscale color transformation.
+   */
+  static final ColorMatrix GRAY =
+          new ColorMatrix(new double[]{.2126, .7152, .0722, .2126, .7152, .0722, .2126, .7152,
+                                       .0722});
+
+  /**
+   * Turns every pixel to sepia coloring.
+   */
+  static final ColorMatrix SEPIA =
+          new ColorMatrix(new double[]{.393, .769, .189, .349, .686, .168, .272, .534, .131});
+
+  private final double[] matrix;
+
+  // the products of each entry with every level, row major
+  private final double[][] products;
+
+  /**
+   * Constructs the matrix from its nine entries in row major order.
+   *
+   * @param matrix the entries of the matrix, which are copied.
+   * @throws IllegalArgumentException if there are not nine finite entries.
+   */
+  ColorMatrix(double[] matrix) throws IllegalArgumentException {
+    if (matrix == null || matrix.length != 9) {
+      throw new IllegalArgumentException("Invalid transformation matrix");
+    }
+    for (double entry : matrix) {
+      if (Double.isNaN(entry) || Double.isInfinite(entry)) {
+        throw new IllegalArgumentException("Invalid transformation matrix");
+      }
+    }
+    this.matrix = matrix.clone();
+    this.products = new double[9][256];
+    for (int entry = 0; entry < 9; entry++) {
+      for (int level = 0; level < 256; level++) {
+        this.products[entry][level] = this.matrix[entry] * level;
+      }
+    }
+  }
+
+  @Override
+  public int apply(int rgb) {
+    int red = (rgb >> 16) & 0xff;
+    int green = (rgb >> 8) & 0xff;
+    int blue = rgb & 0xff;
+    double[][] p = this.products;
+    return PackedImage.pack((int) (p[0][red] + p[1][green] + p[2][blue]),
+            (int) (p[3][red] + p[4][green] + p[5][blue]),
+            (int) (p[6][red] + p[7][green] + p[8][blue]));
+  }
+
+  @Override
+  public void apply(int[] src, int[] dst, int from, int to) {
+    LaneKernels vectors = Vectorization.kernels();
+    if (vectors != null) {
+      vectors.colorMatrix(src, dst, from, to, this.matrix);
+    } else if (Vectorization.isEnabled()) {
+      double m0 = this.matrix[0];
+      double m1 = this.matrix[1];
+      double m2 = this.matrix[2];
+      double m3 = this.matrix[3];
+      double m4 = this.matrix[4];
+      double m5 = this.matrix[5];
+      double m6 = this.matrix[6];
+      double m7 = this.matrix[7];
+      double m8 = this.matrix[8];
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        int red = (rgb >> 16) & 0xff;
+        int green = (rgb >> 8) & 0xff;
+        int blue = rgb & 0xff;
+        dst[i] = (Vectorization.saturate((int) (m0 * red + m1 * green + m2 * blue)) << 16)
+                | (Vectorization.saturate((int) (m3 * red + m4 * green + m5 * blue)) << 8)
+                | Vectorization.saturate((int) (m6 * red + m7 * green + m8 * blue));
+      }
+    } else {
+      double[] p0 = this.products[0];
+      double[] p1 = this.products[1];
+      double[] p2 = this.products[2];
+      double[] p3 = this.products[3];
+      double[] p4 = this.products[4];
+      double[] p5 = this.products[5];
+      double[] p6 = this.products[6];
+      double[] p7 = this.products[7];
+      double[] p8 = this.products[8];
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        int red = (rgb >> 16) & 0xff;
+        int green = (rgb >> 8) & 0xff;
+        int blue = rgb & 0xff;
+        dst[i] = PackedImage.pack((int) (p0[red] + p1[green] + p2[blue]),
+                (int) (p3[red] + p4[green] + p5[blue]),
+                (int) (p6[red] + p7[green] + p8[blue]));
+      }
+    }
+  }
+}
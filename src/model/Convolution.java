@@ -0,0 +1,746 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * Applies a Kernel to a PackedImage. The cheapest evaluation the kernel allows is picked:
+ * separable kernels run as a row pass followed by a column pass, large kernels that are not
+ * separable run through FFTConvolution, and dyadic kernels run in integer arithmetic with a shift
+ * at the end. The exact sum of each output is truncated once and clamped to [0, 255], except for
+ * kernels that truncate after every tap, which run tap by tap in integer arithmetic, or as a row
+ * pass and a column pass of shifted levels when their weights allow it.
+ *
+ * <p>Pixels outside the image are read through row and column index maps built once per call
+ * from the BorderMode, so only the border region pays for them. Interior pixels, whose kernel
+ * lies completely inside the image, are read with plain offsets.
+ */
+final class Convolution {
+  /**
+   * The number of rows a separable pass keeps in its intermediate buffers at once.
+   */
+  private static final int BAND_ROWS = 64;
+
+  /**
+   * The smallest kernel size that is not separable and runs through the FFT. Below it the k * k
+   * taps per pixel of the direct path are cheaper than transforming tiles.
+   */
+  static final int FFT_MIN_SIZE = 11;
+
+  private Convolution() {
+  }
+
+  /**
+   * Convolves the image with the kernel into a new image.
+   *
+   * @param image    the image to be convolved, it is not changed.
+   * @param kernel   the kernel to apply.
+   * @param border   how pixels outside the image are read.
+   * @param executor the executor to split the work over.
+   * @return the convolved image.
+   */
+  static PackedImage apply(PackedImage image, Kernel kernel, BorderMode border,
+                           ParallelExecutor executor) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] dst = new int[width * height];
+    if (dst.length == 0) {
+      return new PackedImage(width, height, dst);
+    }
+    Plan plan = new Plan(image, kernel, border, dst);
+
+    if (kernel.isShiftSeparable()) {
+      executor.forRows(width, height, plan::separableTruncating);
+    } else if (kernel.isTruncating()) {
+      executor.forRows(width, height, plan::directTruncating);
+    } else if (kernel.isSeparable() && kernel.getSeparableShift() >= 0) {
+      executor.forRows(width, height, plan::separableInt);
+    } else if (kernel.isSeparable()) {
+      executor.forRows(width, height, plan::separableDouble);
+    } else if (kernel.getSize() >= FFT_MIN_SIZE) {
+      FFTConvolution.apply(image, kernel, plan.rowMap, plan.colMap, dst, executor);
+    } else if (kernel.isDyadic()) {
+      executor.forRows(width, height, plan::directInt);
+    } else {
+      executor.forRows(width, height, plan::directDouble);
+    }
+    return new PackedImage(width, height, dst);
+  }
+
+  /**
+   * Maps every coordinate in [-radius, length + radius) to a coordinate inside [0, length), or to
+   * -1 when the border reads as black.
+   *
+   * @param length the number of rows or columns of the image.
+   * @param radius half the kernel size.
+   * @param border how coordinates outside the image are read.
+   * @return the map, indexed by coordinate + radius.
+   */
+  static int[] indexMap(int length, int radius, BorderMode border) {
+    int[] map = new int[length + 2 * radius];
+    for (int i = 0; i < map.length; i++) {
+      int coordinate = i - radius;
+      if (coordinate >= 0 && coordinate < length) {
+        map[i] = coordinate;
+        continue;
+      }
+      switch (border) {
+        case Zero:
+          map[i] = -1;
+          break;
+        case Clamp:
+          map[i] = Math.min(Math.max(coordinate, 0), length - 1);
+          break;
+        case Wrap:
+          map[i] = Math.floorMod(coordinate, length);
+          break;
+        case Mirror:
+          if (length == 1) {
+            map[i] = 0;
+          } else {
+            int period = 2 * (length - 1);
+            int reflected = Math.floorMod(coordinate, period);
+            map[i] = reflected < length ? reflected : period - reflected;
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid border mode");
+      }
+    }
+    return map;
+  }
+
+  /**
+   * Everything one convolution needs, worked out once before the bands run.
+   */
+  private static final class Plan {
+    private final int[] src;
+    private final int[] dst;
+    private final int width;
+    private final int height;
+    private final Kernel kernel;
+    private final int size;
+    private final int radius;
+    private final int[] rowMap;
+    private final int[] colMap;
+    // the interior columns [firstCol, lastCol) never need the column map
+    private final int firstCol;
+    private final int lastCol;
+
+    Plan(PackedImage image, Kernel kernel, BorderMode border, int[] dst) {
+      this.src = image.getPixels();
+      this.dst = dst;
+      this.width = image.getWidth();
+      this.height = image.getHeight();
+      this.kernel = kernel;
+      this.size = kernel.getSize();
+      this.radius = this.size / 2;
+      this.rowMap = indexMap(this.height, this.radius, border);
+      this.colMap = indexMap(this.width, this.radius, border);
+      this.firstCol = Math.min(this.radius, this.width);
+      this.lastCol = Math.max(this.firstCol, this.width - this.radius);
+    }
+
+    private boolean interiorRow(int row) {
+      return row >= this.radius && row < this.height - this.radius;
+    }
+
+    /**
+     * Evaluates every tap of a dyadic kernel with integer multiplies.
+     */
+    void directInt(int startRow, int endRow) {
+      int[][] weights = this.kernel.getIntWeights();
+      int shift = this.kernel.getShift();
+      int[] sums = new int[3];
+
+      for (int row = startRow; row < endRow; row++) {
+        int dstBase = row * this.width;
+        boolean interior = this.interiorRow(row);
+        for (int col = 0; col < this.width; col++) {
+          int red = 0;
+          int green = 0;
+          int blue = 0;
+          if (interior && col >= this.firstCol && col < this.lastCol) {
+            for (int ky = 0; ky < this.size; ky++) {
+              int[] weightRow = weights[ky];
+              int base = (row + ky - this.radius) * this.width + col - this.radius;
+              for (int kx = 0; kx < this.size; kx++) {
+                int rgb = this.src[base + kx];
+                int weight = weightRow[kx];
+                red += ((rgb >> 16) & 0xff) * weight;
+                green += ((rgb >> 8) & 0xff) * weight;
+                blue += (rgb & 0xff) * weight;
+              }
+            }
+          } else {
+            this.borderInt(row, col, weights, sums);
+            red = sums[0];
+            green = sums[1];
+            blue = sums[2];
+          }
+          this.dst[dstBase + col] = PackedImage.pack(red >> shift, green >> shift,
+                  blue >> shift);
+        }
+      }
+    }
+
+    /**
+     * Evaluates every tap of a dyadic kernel in row order, truncating the sum toward zero after
+     * each one as a double sum stored back into an int would be. With the scaled weights the
+     * truncation is a shift, rounded up for negative sums, so it is exact.
+     */
+    void directTruncating(int startRow, int endRow) {
+      if (Vectorization.isEnabled()) {
+        this.truncatingRows(startRow, endRow);
+        return;
+      }
+      int[][] weights = this.kernel.getIntWeights();
+      int shift = this.kernel.getShift();
+      int mask = (1 << shift) - 1;
+      int[] sums = new int[3];
+
+      for (int row = startRow; row < endRow; row++) {
+        int dstBase = row * this.width;
+        boolean interior = this.interiorRow(row);
+        for (int col = 0; col < this.width; col++) {
+          int red = 0;
+          int green = 0;
+          int blue = 0;
+          if (interior && col >= this.firstCol && col < this.lastCol) {
+            for (int ky = 0; ky < this.size; ky++) {
+              int[] weightRow = weights[ky];
+              int base = (row + ky - this.radius) * this.width + col - this.radius;
+              for (int kx = 0; kx < this.size; kx++) {
+                int rgb = this.src[base + kx];
+                int weight = weightRow[kx];
+                red = truncate((red << shift) + ((rgb >> 16) & 0xff) * weight, shift, mask);
+                green = truncate((green << shift) + ((rgb >> 8) & 0xff) * weight, shift, mask);
+                blue = truncate((blue << shift) + (rgb & 0xff) * weight, shift, mask);
+              }
+            }
+          } else {
+            this.borderTruncating(row, col, weights, shift, sums);
+            red = sums[0];
+            green = sums[1];
+            blue = sums[2];
+          }
+          this.dst[dstBase + col] = PackedImage.pack(red, green, blue);
+        }
+      }
+    }
+
+    private void borderTruncating(int row, int col, int[][] weights, int shift, int[] sums) {
+      int mask = (1 << shift) - 1;
+      int red = 0;
+      int green = 0;
+      int blue = 0;
+      for (int ky = 0; ky < this.size; ky++) {
+        int srcRow = this.rowMap[row + ky];
+        if (srcRow < 0) {
+          continue;
+        }
+        for (int kx = 0; kx < this.size; kx++) {
+          int srcCol = this.colMap[col + kx];
+          if (srcCol < 0) {
+            continue;
+          }
+          int rgb = this.src[srcRow * this.width + srcCol];
+          int weight = weights[ky][kx];
+          red = truncate((red << shift) + ((rgb >> 16) & 0xff) * weight, shift, mask);
+          green = truncate((green << shift) + ((rgb >> 8) & 0xff) * weight, shift, mask);
+          blue = truncate((blue << shift) + (rgb & 0xff) * weight, shift, mask);
+        }
+      }
+      sums[0] = red;
+      sums[1] = green;
+      sums[2] = blue;
+    }
+
+    /**
+     * Evaluates a truncating kernel one tap at a time over whole padded rows, so every step is
+     * the same for every column. The taps still run in row order for each pixel, and taps outside
+     * the image add zero, which leaves a truncated sum as it is.
+     */
+    private void truncatingRows(int startRow, int endRow) {
+      int[][] weights = this.kernel.getIntWeights();
+      int shift = this.kernel.getShift();
+      int mask = (1 << shift) - 1;
+      LaneKernels vectors = Vectorization.kernels();
+
+      int[] red = new int[this.width];
+      int[] green = new int[this.width];
+      int[] blue = new int[this.width];
+      int[] paddedRed = new int[this.width + 2 * this.radius];
+      int[] paddedGreen = new int[paddedRed.length];
+      int[] paddedBlue = new int[paddedRed.length];
+
+      for (int row = startRow; row < endRow; row++) {
+        Arrays.fill(red, 0);
+        Arrays.fill(green, 0);
+        Arrays.fill(blue, 0);
+        for (int ky = 0; ky < this.size; ky++) {
+          int srcRow = this.rowMap[row + ky];
+          if (srcRow < 0) {
+            continue;
+          }
+          this.padRow(srcRow * this.width, paddedRed, paddedGreen, paddedBlue);
+          for (int kx = 0; kx < this.size; kx++) {
+            int weight = weights[ky][kx];
+            if (vectors != null) {
+              vectors.multiplyAddTruncating(red, 0, paddedRed, kx, weight, shift, this.width);
+              vectors.multiplyAddTruncating(green, 0, paddedGreen, kx, weight, shift,
+                      this.width);
+              vectors.multiplyAddTruncating(blue, 0, paddedBlue, kx, weight, shift, this.width);
+              continue;
+            }
+            for (int col = 0; col < this.width; col++) {
+              red[col] = truncate((red[col] << shift) + paddedRed[col + kx] * weight, shift,
+                      mask);
+              green[col] = truncate((green[col] << shift) + paddedGreen[col + kx] * weight,
+                      shift, mask);
+              blue[col] = truncate((blue[col] << shift) + paddedBlue[col + kx] * weight, shift,
+                      mask);
+            }
+          }
+        }
+        int dstBase = row * this.width;
+        if (vectors != null) {
+          vectors.packShifted(red, green, blue, 0, this.dst, dstBase, this.width);
+          continue;
+        }
+        for (int col = 0; col < this.width; col++) {
+          this.dst[dstBase + col] = (Vectorization.saturate(red[col]) << 16)
+                  | (Vectorization.saturate(green[col]) << 8) | Vectorization.saturate(blue[col]);
+        }
+      }
+    }
+
+    private static int truncate(int scaled, int shift, int mask) {
+      return (scaled + ((scaled >> 31) & mask)) >> shift;
+    }
+
+    private void borderInt(int row, int col, int[][] weights, int[] sums) {
+      int red = 0;
+      int green = 0;
+      int blue = 0;
+      for (int ky = 0; ky < this.size; ky++) {
+        int srcRow = this.rowMap[row + ky];
+        if (srcRow < 0) {
+          continue;
+        }
+        for (int kx = 0; kx < this.size; kx++) {
+          int srcCol = this.colMap[col + kx];
+          if (srcCol < 0) {
+            continue;
+          }
+          int rgb = this.src[srcRow * this.width + srcCol];
+          int weight = weights[ky][kx];
+          red += ((rgb >> 16) & 0xff) * weight;
+          green += ((rgb >> 8) & 0xff) * weight;
+          blue += (rgb & 0xff) * weight;
+        }
+      }
+      sums[0] = red;
+      sums[1] = green;
+      sums[2] = blue;
+    }
+
+    /**
+     * Evaluates every tap of a kernel in double arithmetic.
+     */
+    void directDouble(int startRow, int endRow) {
+      double[][] weights = this.kernel.getWeights();
+      double[] sums = new double[3];
+
+      for (int row = startRow; row < endRow; row++) {
+        int dstBase = row * this.width;
+        boolean interior = this.interiorRow(row);
+        for (int col = 0; col < this.width; col++) {
+          double red = 0;
+          double green = 0;
+          double blue = 0;
+          if (interior && col >= this.firstCol && col < this.lastCol) {
+            for (int ky = 0; ky < this.size; ky++) {
+              double[] weightRow = weights[ky];
+              int base = (row + ky - this.radius) * this.width + col - this.radius;
+              for (int kx = 0; kx < this.size; kx++) {
+                int rgb = this.src[base + kx];
+                double weight = weightRow[kx];
+                red += ((rgb >> 16) & 0xff) * weight;
+                green += ((rgb >> 8) & 0xff) * weight;
+                blue += (rgb & 0xff) * weight;
+              }
+            }
+          } else {
+            this.borderDouble(row, col, weights, sums);
+            red = sums[0];
+            green = sums[1];
+            blue = sums[2];
+          }
+          this.dst[dstBase + col] = PackedImage.pack((int) red, (int) green, (int) blue);
+        }
+      }
+    }
+
+    private void borderDouble(int row, int col, double[][] weights, double[] sums) {
+      double red = 0;
+      double green = 0;
+      double blue = 0;
+      for (int ky = 0; ky < this.size; ky++) {
+        int srcRow = this.rowMap[row + ky];
+        if (srcRow < 0) {
+          continue;
+        }
+        for (int kx = 0; kx < this.size; kx++) {
+          int srcCol = this.colMap[col + kx];
+          if (srcCol < 0) {
+            continue;
+          }
+          int rgb = this.src[srcRow * this.width + srcCol];
+          double weight = weights[ky][kx];
+          red += ((rgb >> 16) & 0xff) * weight;
+          green += ((rgb >> 8) & 0xff) * weight;
+          blue += (rgb & 0xff) * weight;
+        }
+      }
+      sums[0] = red;
+      sums[1] = green;
+      sums[2] = blue;
+    }
+
+    /**
+     * Evaluates a dyadic separable kernel as an integer row pass into a band buffer followed by
+     * an integer column pass, shifting once at the end so the result is exact.
+     */
+    void separableInt(int startRow, int endRow) {
+      int[] rowWeights = this.kernel.getIntRow();
+      int[] colWeights = this.kernel.getIntColumn();
+      int shift = this.kernel.getSeparableShift();
+
+      int[] red = new int[(BAND_ROWS + 2 * this.radius) * this.width];
+      int[] green = new int[red.length];
+      int[] blue = new int[red.length];
+      int[] sumRed = new int[this.width];
+      int[] sumGreen = new int[this.width];
+      int[] sumBlue = new int[this.width];
+      boolean lanes = Vectorization.isEnabled();
+      LaneKernels vectors = Vectorization.kernels();
+      // one source row split into planes and padded with its border columns, for the lane-wise
+      // row pass
+      int[] paddedRed = lanes ? new int[this.width + 2 * this.radius] : null;
+      int[] paddedGreen = lanes ? new int[paddedRed.length] : null;
+      int[] paddedBlue = lanes ? new int[paddedRed.length] : null;
+
+      for (int bandStart = startRow; bandStart < endRow; bandStart += BAND_ROWS) {
+        int bandEnd = Math.min(endRow, bandStart + BAND_ROWS);
+
+        // row pass over the band and its halo, the halo rows are read through the row map
+        for (int row = bandStart - this.radius; row < bandEnd + this.radius; row++) {
+          int tmpBase = (row - bandStart + this.radius) * this.width;
+          int srcRow = this.rowMap[row + this.radius];
+          if (srcRow < 0) {
+            Arrays.fill(red, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(green, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(blue, tmpBase, tmpBase + this.width, 0);
+            continue;
+          }
+          int srcBase = srcRow * this.width;
+          if (lanes) {
+            this.padRow(srcBase, paddedRed, paddedGreen, paddedBlue);
+            Arrays.fill(red, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(green, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(blue, tmpBase, tmpBase + this.width, 0);
+            // one tap at a time over the whole row, so every step is the same for every column
+            for (int kx = 0; kx < this.size; kx++) {
+              int weight = rowWeights[kx];
+              if (vectors != null) {
+                vectors.multiplyAdd(red, tmpBase, paddedRed, kx, weight, this.width);
+                vectors.multiplyAdd(green, tmpBase, paddedGreen, kx, weight, this.width);
+                vectors.multiplyAdd(blue, tmpBase, paddedBlue, kx, weight, this.width);
+                continue;
+              }
+              for (int col = 0; col < this.width; col++) {
+                red[tmpBase + col] += paddedRed[col + kx] * weight;
+                green[tmpBase + col] += paddedGreen[col + kx] * weight;
+                blue[tmpBase + col] += paddedBlue[col + kx] * weight;
+              }
+            }
+            continue;
+          }
+          for (int col = 0; col < this.width; col++) {
+            int r = 0;
+            int g = 0;
+            int b = 0;
+            boolean interior = col >= this.firstCol && col < this.lastCol;
+            for (int kx = 0; kx < this.size; kx++) {
+              int srcCol = interior ? col + kx - this.radius : this.colMap[col + kx];
+              if (srcCol < 0) {
+                continue;
+              }
+              int rgb = this.src[srcBase + srcCol];
+              int weight = rowWeights[kx];
+              r += ((rgb >> 16) & 0xff) * weight;
+              g += ((rgb >> 8) & 0xff) * weight;
+              b += (rgb & 0xff) * weight;
+            }
+            red[tmpBase + col] = r;
+            green[tmpBase + col] = g;
+            blue[tmpBase + col] = b;
+          }
+        }
+
+        // column pass, accumulating whole rows at a time
+        for (int row = bandStart; row < bandEnd; row++) {
+          Arrays.fill(sumRed, 0);
+          Arrays.fill(sumGreen, 0);
+          Arrays.fill(sumBlue, 0);
+          for (int ky = 0; ky < this.size; ky++) {
+            int weight = colWeights[ky];
+            int tmpBase = (row - bandStart + ky) * this.width;
+            if (vectors != null) {
+              vectors.multiplyAdd(sumRed, 0, red, tmpBase, weight, this.width);
+              vectors.multiplyAdd(sumGreen, 0, green, tmpBase, weight, this.width);
+              vectors.multiplyAdd(sumBlue, 0, blue, tmpBase, weight, this.width);
+              continue;
+            }
+            for (int col = 0; col < this.width; col++) {
+              sumRed[col] += red[tmpBase + col] * weight;
+              sumGreen[col] += green[tmpBase + col] * weight;
+              sumBlue[col] += blue[tmpBase + col] * weight;
+            }
+          }
+          int dstBase = row * this.width;
+          if (vectors != null) {
+            vectors.packShifted(sumRed, sumGreen, sumBlue, shift, this.dst, dstBase, this.width);
+            continue;
+          }
+          if (lanes) {
+            for (int col = 0; col < this.width; col++) {
+              this.dst[dstBase + col] = (Vectorization.saturate(sumRed[col] >> shift) << 16)
+                      | (Vectorization.saturate(sumGreen[col] >> shift) << 8)
+                      | Vectorization.saturate(sumBlue[col] >> shift);
+            }
+            continue;
+          }
+          for (int col = 0; col < this.width; col++) {
+            this.dst[dstBase + col] = PackedImage.pack(sumRed[col] >> shift,
+                    sumGreen[col] >> shift, sumBlue[col] >> shift);
+          }
+        }
+      }
+    }
+
+    /**
+     * Evaluates a truncating kernel whose weights are powers of two, with the shift of each
+     * weight the sum of a row shift and a column shift, as a row pass into band buffers followed
+     * by a column pass. Every tap adds a non negative level shifted right, which is its truncated
+     * product, so the taps sum to the same result in any order. The row pass sums each source row
+     * once for every distinct row shift of the kernel, into a plane of its own, and the column
+     * pass adds up the planes of the kernel rows.
+     */
+    void separableTruncating(int startRow, int endRow) {
+      int[] rowShifts = this.kernel.getShiftColumn();
+      int[] colShifts = this.kernel.getShiftRow();
+      // the distinct row shifts, and the plane of every kernel row
+      int[] planeShifts = new int[this.size];
+      int[] planeOf = new int[this.size];
+      int planes = 0;
+      for (int ky = 0; ky < this.size; ky++) {
+        int plane = 0;
+        while (plane < planes && planeShifts[plane] != rowShifts[ky]) {
+          plane++;
+        }
+        if (plane == planes) {
+          planeShifts[planes++] = rowShifts[ky];
+        }
+        planeOf[ky] = plane;
+      }
+
+      int bandLength = (BAND_ROWS + 2 * this.radius) * this.width;
+      int[][] red = new int[planes][bandLength];
+      int[][] green = new int[planes][bandLength];
+      int[][] blue = new int[planes][bandLength];
+      int[] sumRed = new int[this.width];
+      int[] sumGreen = new int[this.width];
+      int[] sumBlue = new int[this.width];
+      int[] paddedRed = new int[this.width + 2 * this.radius];
+      int[] paddedGreen = new int[paddedRed.length];
+      int[] paddedBlue = new int[paddedRed.length];
+      boolean lanes = Vectorization.isEnabled();
+      LaneKernels vectors = Vectorization.kernels();
+
+      for (int bandStart = startRow; bandStart < endRow; bandStart += BAND_ROWS) {
+        int bandEnd = Math.min(endRow, bandStart + BAND_ROWS);
+
+        // row pass over the band and its halo, the halo rows are read through the row map
+        for (int row = bandStart - this.radius; row < bandEnd + this.radius; row++) {
+          int tmpBase = (row - bandStart + this.radius) * this.width;
+          int srcRow = this.rowMap[row + this.radius];
+          for (int plane = 0; plane < planes; plane++) {
+            Arrays.fill(red[plane], tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(green[plane], tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(blue[plane], tmpBase, tmpBase + this.width, 0);
+          }
+          if (srcRow < 0) {
+            continue;
+          }
+          this.padRow(srcRow * this.width, paddedRed, paddedGreen, paddedBlue);
+          for (int plane = 0; plane < planes; plane++) {
+            int[] planeRed = red[plane];
+            int[] planeGreen = green[plane];
+            int[] planeBlue = blue[plane];
+            // one tap at a time over the whole row, so every step is the same for every column
+            for (int kx = 0; kx < this.size; kx++) {
+              int shift = planeShifts[plane] + colShifts[kx];
+              if (vectors != null) {
+                vectors.shiftAdd(planeRed, tmpBase, paddedRed, kx, shift, this.width);
+                vectors.shiftAdd(planeGreen, tmpBase, paddedGreen, kx, shift, this.width);
+                vectors.shiftAdd(planeBlue, tmpBase, paddedBlue, kx, shift, this.width);
+                continue;
+              }
+              for (int col = 0; col < this.width; col++) {
+                planeRed[tmpBase + col] += paddedRed[col + kx] >> shift;
+                planeGreen[tmpBase + col] += paddedGreen[col + kx] >> shift;
+                planeBlue[tmpBase + col] += paddedBlue[col + kx] >> shift;
+              }
+            }
+          }
+        }
+
+        // column pass, adding whole rows of the planes at a time
+        for (int row = bandStart; row < bandEnd; row++) {
+          Arrays.fill(sumRed, 0);
+          Arrays.fill(sumGreen, 0);
+          Arrays.fill(sumBlue, 0);
+          for (int ky = 0; ky < this.size; ky++) {
+            int[] planeRed = red[planeOf[ky]];
+            int[] planeGreen = green[planeOf[ky]];
+            int[] planeBlue = blue[planeOf[ky]];
+            int tmpBase = (row - bandStart + ky) * this.width;
+            if (vectors != null) {
+              vectors.shiftAdd(sumRed, 0, planeRed, tmpBase, 0, this.width);
+              vectors.shiftAdd(sumGreen, 0, planeGreen, tmpBase, 0, this.width);
+              vectors.shiftAdd(sumBlue, 0, planeBlue, tmpBase, 0, this.width);
+              continue;
+            }
+            for (int col = 0; col < this.width; col++) {
+              sumRed[col] += planeRed[tmpBase + col];
+              sumGreen[col] += planeGreen[tmpBase + col];
+              sumBlue[col] += planeBlue[tmpBase + col];
+            }
+          }
+          int dstBase = row * this.width;
+          if (vectors != null) {
+            vectors.packShifted(sumRed, sumGreen, sumBlue, 0, this.dst, dstBase, this.width);
+            continue;
+          }
+          if (lanes) {
+            for (int col = 0; col < this.width; col++) {
+              this.dst[dstBase + col] = (Vectorization.saturate(sumRed[col]) << 16)
+                      | (Vectorization.saturate(sumGreen[col]) << 8)
+                      | Vectorization.saturate(sumBlue[col]);
+            }
+            continue;
+          }
+          for (int col = 0; col < this.width; col++) {
+            this.dst[dstBase + col] = PackedImage.pack(sumRed[col], sumGreen[col],
+                    sumBlue[col]);
+          }
+        }
+      }
+    }
+
+    /**
+     * Splits the source row starting at srcBase into planes, with the radius columns on each
+     * side read through the column map. Columns outside the image that read as zero are zero.
+     */
+    private void padRow(int srcBase, int[] paddedRed, int[] paddedGreen, int[] paddedBlue) {
+      for (int col = this.radius; col < this.radius + this.width; col++) {
+        int rgb = this.src[srcBase + col - this.radius];
+        paddedRed[col] = (rgb >> 16) & 0xff;
+        paddedGreen[col] = (rgb >> 8) & 0xff;
+        paddedBlue[col] = rgb & 0xff;
+      }
+      for (int i = 0; i < 2 * this.radius; i++) {
+        // the left edge columns then the right edge columns
+        int col = i < this.radius ? i : this.width + i;
+        int srcCol = this.colMap[col];
+        int rgb = srcCol < 0 ? 0 : this.src[srcBase + srcCol];
+        paddedRed[col] = (rgb >> 16) & 0xff;
+        paddedGreen[col] = (rgb >> 8) & 0xff;
+        paddedBlue[col] = rgb & 0xff;
+      }
+    }
+
+    /**
+     * Evaluates a separable kernel as a double row pass into a band buffer followed by a double
+     * column pass.
+     */
+    void separableDouble(int startRow, int endRow) {
+      double[] rowWeights = this.kernel.getRow();
+      double[] colWeights = this.kernel.getColumn();
+
+      double[] red = new double[(BAND_ROWS + 2 * this.radius) * this.width];
+      double[] green = new double[red.length];
+      double[] blue = new double[red.length];
+      double[] sumRed = new double[this.width];
+      double[] sumGreen = new double[this.width];
+      double[] sumBlue = new double[this.width];
+
+      for (int bandStart = startRow; bandStart < endRow; bandStart += BAND_ROWS) {
+        int bandEnd = Math.min(endRow, bandStart + BAND_ROWS);
+
+        for (int row = bandStart - this.radius; row < bandEnd + this.radius; row++) {
+          int tmpBase = (row - bandStart + this.radius) * this.width;
+          int srcRow = this.rowMap[row + this.radius];
+          if (srcRow < 0) {
+            Arrays.fill(red, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(green, tmpBase, tmpBase + this.width, 0);
+            Arrays.fill(blue, tmpBase, tmpBase + this.width, 0);
+            continue;
+          }
+          int srcBase = srcRow * this.width;
+          for (int col = 0; col < this.width; col++) {
+            double r = 0;
+            double g = 0;
+            double b = 0;
+            boolean interior = col >= this.firstCol && col < this.lastCol;
+            for (int kx = 0; kx < this.size; kx++) {
+              int srcCol = interior ? col + kx - this.radius : this.colMap[col + kx];
+              if (srcCol < 0) {
+                continue;
+              }
+              int rgb = this.src[srcBase + srcCol];
+              double weight = rowWeights[kx];
+              r += ((rgb >> 16) & 0xff) * weight;
+              g += ((rgb >> 8) & 0xff) * weight;
+              b += (rgb & 0xff) * weight;
+            }
+            red[tmpBase + col] = r;
+            green[tmpBase + col] = g;
+            blue[tmpBase + col] = b;
+          }
+        }
+
+        for (int row = bandStart; row < bandEnd; row++) {
+          Arrays.fill(sumRed, 0);
+          Arrays.fill(sumGreen, 0);
+          Arrays.fill(sumBlue, 0);
+          for (int ky = 0; ky < this.size; ky++) {
+            double weight = colWeights[ky];
+            int tmpBase = (row - bandStart + ky) * this.width;
+            for (int col = 0; col < this.width; col++) {
+              sumRed[col] += red[tmpBase + col] * weight;
+              sumGreen[col] += green[tmpBase + col] * weight;
+              sumBlue[col] += blue[tmpBase + col] * weight;
+            }
+          }
+          int dstBase = row * this.width;
+          for (int col = 0; col < this.width; col++) {
+            this.dst[dstBase + col] = PackedImage.pack((int) sumRed[col], (int) sumGreen[col],
+                    (int) sumBlue[col]);
+          }
+        }
+      }
+    }
+  }
+}
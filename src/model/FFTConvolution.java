@@ -0,0 +1,239 @@
+package model;
+
+/**
+ * Applies a large Kernel to a PackedImage through the fast Fourier transform. The output is cut
+ * into square tiles, and each tile is computed from the input tile plus a halo of half the kernel
+ * size on every side (overlap-save), so memory stays bounded by a few tiles however large the
+ * image is, and the halo is read through the same border index maps as the direct convolution.
+ *
+ * <p>Every tile needs two forward and two inverse transforms: red and green are carried together
+ * as the real and imaginary parts of one complex signal, which works because the kernel is real,
+ * and blue gets the other one. The kernel spectrum is computed once per call.
+ */
+final class FFTConvolution {
+  /**
+   * The smallest transform size used, smaller ones spend most of their time on the halo.
+   */
+  private static final int MIN_FFT_SIZE = 64;
+
+  /**
+   * The largest transform size used.
+   */
+  private static final int MAX_FFT_SIZE = 1024;
+
+  /**
+   * Added before truncating, so that sums that are exact integers but come back from the
+   * transforms a hair below them truncate to the integer.
+   */
+  private static final double EPSILON = 1e-6;
+
+  private FFTConvolution() {
+  }
+
+  /**
+   * Convolves the image with the kernel into the destination pixels.
+   *
+   * @param image    the image to be convolved, it is not changed.
+   * @param kernel   the kernel to apply.
+   * @param rowMap   the row index map of the border mode, see Convolution.indexMap.
+   * @param colMap   the column index map of the border mode.
+   * @param dst      the packed output pixels.
+   * @param executor the executor to split the rows of tiles over.
+   */
+  static void apply(PackedImage image, Kernel kernel, int[] rowMap, int[] colMap, int[] dst,
+                    ParallelExecutor executor) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int size = kernel.getSize();
+    int n = fftSize(size);
+    int tile = n - (size - 1);
+
+    double[][] spectrum = kernelSpectrum(kernel, n);
+    int tilesDown = (height + tile - 1) / tile;
+    int[] src = image.getPixels();
+
+    // one "row" of work is one row of tiles, which covers width * tile pixels
+    executor.forRows(width * tile, tilesDown, (startTile, endTile) -> {
+      double[] redGreenRe = new double[n * n];
+      double[] redGreenIm = new double[n * n];
+      double[] blueRe = new double[n * n];
+      double[] blueIm = new double[n * n];
+      double[] scratchRe = new double[n];
+      double[] scratchIm = new double[n];
+
+      for (int tileRow = startTile; tileRow < endTile; tileRow++) {
+        int top = tileRow * tile;
+        for (int left = 0; left < width; left += tile) {
+          gather(src, width, rowMap, colMap, top, left, tile + size - 1, n,
+                  redGreenRe, redGreenIm, blueRe, blueIm);
+
+          transform(redGreenRe, redGreenIm, n, false, scratchRe, scratchIm);
+          transform(blueRe, blueIm, n, false, scratchRe, scratchIm);
+          multiplyConjugate(redGreenRe, redGreenIm, spectrum);
+          multiplyConjugate(blueRe, blueIm, spectrum);
+          transform(redGreenRe, redGreenIm, n, true, scratchRe, scratchIm);
+          transform(blueRe, blueIm, n, true, scratchRe, scratchIm);
+
+          int rows = Math.min(tile, height - top);
+          int cols = Math.min(tile, width - left);
+          for (int y = 0; y < rows; y++) {
+            int dstBase = (top + y) * width + left;
+            for (int x = 0; x < cols; x++) {
+              int i = y * n + x;
+              dst[dstBase + x] = PackedImage.pack((int) (redGreenRe[i] + EPSILON),
+                      (int) (redGreenIm[i] + EPSILON), (int) (blueRe[i] + EPSILON));
+            }
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Picks a power of two transform size that leaves tiles several kernels wide.
+   *
+   * @param size the kernel size.
+   * @return the transform size.
+   */
+  static int fftSize(int size) {
+    int n = MIN_FFT_SIZE;
+    while (n < 4 * (size - 1) && n < MAX_FFT_SIZE) {
+      n *= 2;
+    }
+    while (n < 2 * size) {
+      n *= 2;
+    }
+    return n;
+  }
+
+  /**
+   * Copies the input tile with its halo into the transform buffers, zero padding the rest.
+   */
+  private static void gather(int[] src, int width, int[] rowMap, int[] colMap, int top, int left,
+                             int span, int n, double[] redGreenRe, double[] redGreenIm,
+                             double[] blueRe, double[] blueIm) {
+    for (int y = 0; y < n; y++) {
+      int srcRow = y < span && top + y < rowMap.length ? rowMap[top + y] : -1;
+      for (int x = 0; x < n; x++) {
+        int i = y * n + x;
+        int srcCol = srcRow >= 0 && x < span && left + x < colMap.length ? colMap[left + x] : -1;
+        if (srcCol < 0) {
+          redGreenRe[i] = 0;
+          redGreenIm[i] = 0;
+          blueRe[i] = 0;
+        } else {
+          int rgb = src[srcRow * width + srcCol];
+          redGreenRe[i] = (rgb >> 16) & 0xff;
+          redGreenIm[i] = (rgb >> 8) & 0xff;
+          blueRe[i] = rgb & 0xff;
+        }
+        blueIm[i] = 0;
+      }
+    }
+  }
+
+  /**
+   * Computes the spectrum of the kernel zero padded to n by n.
+   *
+   * @return the real and imaginary parts of the spectrum.
+   */
+  private static double[][] kernelSpectrum(Kernel kernel, int n) {
+    double[] re = new double[n * n];
+    double[] im = new double[n * n];
+    int size = kernel.getSize();
+    for (int ky = 0; ky < size; ky++) {
+      for (int kx = 0; kx < size; kx++) {
+        re[ky * n + kx] = kernel.getWeight(ky, kx);
+      }
+    }
+    transform(re, im, n, false, new double[n], new double[n]);
+    return new double[][]{re, im};
+  }
+
+  /**
+   * Multiplies the signal by the conjugate of the kernel spectrum, which turns the circular
+   * convolution into the correlation the direct path computes.
+   */
+  private static void multiplyConjugate(double[] re, double[] im, double[][] spectrum) {
+    double[] kernelRe = spectrum[0];
+    double[] kernelIm = spectrum[1];
+    for (int i = 0; i < re.length; i++) {
+      double a = re[i];
+      double b = im[i];
+      re[i] = a * kernelRe[i] + b * kernelIm[i];
+      im[i] = b * kernelRe[i] - a * kernelIm[i];
+    }
+  }
+
+  /**
+   * Runs an in place two dimensional transform of an n by n signal, rows first then columns.
+   * The inverse transform is scaled by 1 / (n * n).
+   */
+  static void transform(double[] re, double[] im, int n, boolean inverse, double[] scratchRe,
+                        double[] scratchIm) {
+    for (int row = 0; row < n; row++) {
+      System.arraycopy(re, row * n, scratchRe, 0, n);
+      System.arraycopy(im, row * n, scratchIm, 0, n);
+      fft(scratchRe, scratchIm, inverse);
+      System.arraycopy(scratchRe, 0, re, row * n, n);
+      System.arraycopy(scratchIm, 0, im, row * n, n);
+    }
+    double scale = inverse ? 1.0 / ((double) n * n) : 1.0;
+    for (int col = 0; col < n; col++) {
+      for (int row = 0; row < n; row++) {
+        scratchRe[row] = re[row * n + col];
+        scratchIm[row] = im[row * n + col];
+      }
+      fft(scratchRe, scratchIm, inverse);
+      for (int row = 0; row < n; row++) {
+        re[row * n + col] = scratchRe[row] * scale;
+        im[row * n + col] = scratchIm[row] * scale;
+      }
+    }
+  }
+
+  /**
+   * Runs an in place iterative radix 2 transform. The length must be a power of two.
+   */
+  static void fft(double[] re, double[] im, boolean inverse) {
+    int n = re.length;
+    for (int i = 1, j = 0; i < n; i++) {
+      int bit = n >> 1;
+      for (; (j & bit) != 0; bit >>= 1) {
+        j ^= bit;
+      }
+      j ^= bit;
+      if (i < j) {
+        double t = re[i];
+        re[i] = re[j];
+        re[j] = t;
+        t = im[i];
+        im[i] = im[j];
+        im[j] = t;
+      }
+    }
+    for (int length = 2; length <= n; length <<= 1) {
+      double angle = (inverse ? 2 : -2) * Math.PI / length;
+      double stepRe = Math.cos(angle);
+      double stepIm = Math.sin(angle);
+      int half = length >> 1;
+      for (int start = 0; start < n; start += length) {
+        double wRe = 1;
+        double wIm = 0;
+        for (int k = 0; k < half; k++) {
+          int a = start + k;
+          int b = a + half;
+          double tRe = re[b] * wRe - im[b] * wIm;
+          double tIm = re[b] * wIm + im[b] * wRe;
+          re[b] = re[a] - tRe;
+          im[b] = im[a] - tIm;
+          re[a] += tRe;
+          im[a] += tIm;
+          double nextRe = wRe * stepRe - wIm * stepIm;
+          wIm = wRe * stepIm + wIm * stepRe;
+          wRe = nextRe;
+        }
+      }
+    }
+  }
+}
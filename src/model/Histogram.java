@@ -0,0 +1,185 @@
+package model;
+
+/**
+ * Represents the red, green, blue and intensity histograms of an image, each one a count for
+ * every level in [0, 255], together with the largest count of each. The intensity of a pixel is
+ * the average of its three components, rounded down.
+ */
+public final class Histogram {
+  /**
+   * The number of levels of each histogram.
+   */
+  public static final int LEVELS = 256;
+
+  // the intensity of every sum of the three components
+  private static final int[] INTENSITY = new int[3 * 255 + 1];
+
+  static {
+    for (int sum = 0; sum < INTENSITY.length; sum++) {
+      INTENSITY[sum] = sum / 3;
+    }
+  }
+
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+  private final int[] intensity;
+  private final int maxRed;
+  private final int maxGreen;
+  private final int maxBlue;
+  private final int maxIntensity;
+
+  /**
+   * Constructs the histogram from its counts, which are not copied.
+   */
+  Histogram(int[] red, int[] green, int[] blue, int[] intensity) {
+    this.red = red;
+    this.green = green;
+    this.blue = blue;
+    this.intensity = intensity;
+    this.maxRed = max(red);
+    this.maxGreen = max(green);
+    this.maxBlue = max(blue);
+    this.maxIntensity = max(intensity);
+  }
+
+  private static int max(int[] counts) {
+    int max = 0;
+    for (int count : counts) {
+      max = Math.max(max, count);
+    }
+    return max;
+  }
+
+  /**
+   * Counts the levels of every pixel of the image in one pass. Each band of rows is counted into
+   * its own histograms, which are added into the result when the band is done.
+   *
+   * @param image    the image to count.
+   * @param executor the executor to split the rows over.
+   * @return the histogram of the image.
+   */
+  static Histogram of(PackedImage image, ParallelExecutor executor) {
+    int width = image.getWidth();
+    int[] pixels = image.getPixels();
+    int[][] totals = new int[4][LEVELS];
+
+    executor.forRows(width, image.getHeight(), (startRow, endRow) -> {
+      int[] red = new int[LEVELS];
+      int[] green = new int[LEVELS];
+      int[] blue = new int[LEVELS];
+      int[] intensity = new int[LEVELS];
+      for (int i = startRow * width; i < endRow * width; i++) {
+        int rgb = pixels[i];
+        int r = (rgb >> 16) & 0xff;
+        int g = (rgb >> 8) & 0xff;
+        int b = rgb & 0xff;
+        red[r]++;
+        green[g]++;
+        blue[b]++;
+        intensity[INTENSITY[r + g + b]]++;
+      }
+      synchronized (totals) {
+        for (int level = 0; level < LEVELS; level++) {
+          totals[0][level] += red[level];
+          totals[1][level] += green[level];
+          totals[2][level] += blue[level];
+          totals[3][level] += intensity[level];
+        }
+      }
+    });
+    return new Histogram(totals[0], totals[1], totals[2], totals[3]);
+  }
+
+  /**
+   * Retrieves the number of pixels with the given red level.
+   *
+   * @param level the level in [0, 255].
+   * @return the count.
+   */
+  public int getRed(int level) {
+    return this.red[level];
+  }
+
+  /**
+   * Retrieves the number of pixels with the given green level.
+   *
+   * @param level the level in [0, 255].
+   * @return the count.
+   */
+  public int getGreen(int level) {
+    return this.green[level];
+  }
+
+  /**
+   * Retrieves the number of pixels with the given blue level.
+   *
+   * @param level the level in [0, 255].
+   * @return the count.
+   */
+  public int getBlue(int level) {
+    return this.blue[level];
+  }
+
+  /**
+   * Retrieves the number of pixels with the given intensity.
+   *
+   * @param level the level in [0, 255].
+   * @return the count.
+   */
+  public int getIntensity(int level) {
+    return this.intensity[level];
+  }
+
+  /**
+   * Retrieves the largest red count.
+   *
+   * @return the largest count, 0 for an empty image.
+   */
+  public int getMaxRed() {
+    return this.maxRed;
+  }
+
+  /**
+   * Retrieves the largest green count.
+   *
+   * @return the largest count, 0 for an empty image.
+   */
+  public int getMaxGreen() {
+    return this.maxGreen;
+  }
+
+  /**
+   * Retrieves the largest blue count.
+   *
+   * @return the largest count, 0 for an empty image.
+   */
+  public int getMaxBlue() {
+    return this.maxBlue;
+  }
+
+  /**
+   * Retrieves the largest intensity count.
+   *
+   * @return the largest count, 0 for an empty image.
+   */
+  public int getMaxIntensity() {
+    return this.maxIntensity;
+  }
+
+  int[] getRedCounts() {
+    return this.red;
+  }
+
+  int[] getGreenCounts() {
+    return this.green;
+  }
+
+  int[] getBlueCounts() {
+    return this.blue;
+  }
+
+  int[] getIntensityCounts() {
+    return this.intensity;
+  }
+}
@@ -0,0 +1,14 @@
+package model;
+
+/**
+ * Listens for changes to the images of a model, so a view can redraw an image when the image
+ * stored under its name changes.
+ */
+public interface ImageChangeListener {
+  /**
+   * Called after the image stored under the given name has changed.
+   *
+   * @param name the name of the changed image.
+   */
+  void imageChanged(String name);
+}
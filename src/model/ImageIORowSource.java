@@ -0,0 +1,82 @@
+package model;
+
+import java.awt.Rectangle;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Reads the rows of a JPEG, PNG or BMP file a band at a time, by asking the ImageIO reader for
+ * each band as a source region. Only the band is decoded into memory, but JPEG and PNG readers
+ * decode from the start of the file up to the band every time, so for the largest images BMP or
+ * PPM files are much quicker to stream.
+ */
+final class ImageIORowSource implements RowSource {
+  private final ImageInputStream in;
+  private final ImageReader reader;
+  private final int width;
+  private final int height;
+  private int next;
+
+  /**
+   * Opens the file and reads its size.
+   *
+   * @param filename the path of the file.
+   * @throws IOException if the file cannot be read or no reader knows its format.
+   */
+  ImageIORowSource(String filename) throws IOException {
+    this.in = ImageIO.createImageInputStream(new File(filename));
+    if (this.in == null) {
+      throw new IOException("Cannot read " + filename);
+    }
+    Iterator<ImageReader> readers = ImageIO.getImageReaders(this.in);
+    if (!readers.hasNext()) {
+      this.in.close();
+      throw new IOException("No reader for " + filename);
+    }
+    this.reader = readers.next();
+    try {
+      this.reader.setInput(this.in, true, true);
+      this.width = this.reader.getWidth(0);
+      this.height = this.reader.getHeight(0);
+    } catch (IOException | RuntimeException e) {
+      this.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int read(int[] pixels, int offset, int maxRows) throws IOException {
+    int rows = Math.min(maxRows, this.height - this.next);
+    if (rows <= 0) {
+      return 0;
+    }
+    ImageReadParam param = this.reader.getDefaultReadParam();
+    param.setSourceRegion(new Rectangle(0, this.next, this.width, rows));
+    int[] band = ImageUtil.toPackedImage(this.reader.read(0, param)).getPixels();
+    System.arraycopy(band, 0, pixels, offset, rows * this.width);
+    this.next += rows;
+    return rows;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.dispose();
+    this.in.close();
+  }
+}
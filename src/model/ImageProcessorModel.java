@@ -4,7 +4,12 @@ import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 
@@ -12,15 +17,93 @@ import javax.imageio.ImageIO;
 
 /**
  * Represents an ImageProcessorModel that can apply different transformations to Images.
+ * A stored PackedImage is never changed in place, every transformation builds a new one and
+ * replaces the entry, so several names can safely share one image.
+ *
+ * <p>Point operations (brighten, the grayscale methods and the color transformations) are not
+ * applied straight away. They are recorded against the image they start from and combined with
+ * any later point operations on the same name, and the whole chain runs in one pass when the
+ * pixels are first needed, so intermediate images that are never looked at are never built.
+ *
+ * <p>The model may be used from several threads at once. The names, versions and histograms are
+ * only touched while holding the lock of the model, and the pixel work of an operation runs
+ * outside it, so operations on different names run in parallel. Operations that change the same
+ * name must not overlap, since each one reads the image, works on it and then stores the result.
  */
 public class ImageProcessorModel implements ProcessorModelState {
-  private HashMap<String, Pixel[][]> images;
+  static final Kernel BLUR =
+          new Kernel(new double[][]{new double[]{.0625, .125, .0625},
+                                    new double[]{.125, .25, .125},
+                                    new double[]{.0625, .125, .0625}}, true);
+  static final Kernel SHARPEN =
+          new Kernel(new double[][]{ new double[]{-.125, -.125, -.125, -.125, -.125},
+                                     new double[]{-.125, .25, .25, .25, -.125},
+                                     new double[]{-.125, .25, 1, .25, -.125},
+                                     new double[]{-.125, .25, .25, .25, -.125},
+                                     new double[]{-.125, -.125, -.125, -.125, -.125}}, true);
+
+  private final HashMap<String, PackedImage> images;
+  // names whose point operations have not been applied yet, never also in images
+  private final HashMap<String, Deferred> pending;
+  private final ParallelExecutor executor;
+
+  // a version for every name, changed whenever the image stored under the name changes
+  private final HashMap<String, Long> versions;
+  private long lastVersion;
+  // histograms by name, each one only valid while the name keeps the version it was counted at
+  private final HashMap<String, CachedHistogram> histograms;
+  private volatile PPMFormat ppmFormat;
+  private final List<ImageChangeListener> listeners;
+
+  /**
+   * A chain of point operations waiting to be applied to an image.
+   */
+  private static class Deferred {
+    private final PackedImage base;
+    private final PointOperation operation;
+
+    Deferred(PackedImage base, PointOperation operation) {
+      this.base = base;
+      this.operation = operation;
+    }
+  }
+
+  /**
+   * A histogram together with the version of the image it was counted from.
+   */
+  private static class CachedHistogram {
+    private final long version;
+    private final Histogram histogram;
+
+    CachedHistogram(long version, Histogram histogram) {
+      this.version = version;
+      this.histogram = histogram;
+    }
+  }
 
   /**
    * Constructs the ImageProcessor.
    */
   public ImageProcessorModel() {
-    this.images = new HashMap<String, Pixel[][]>();
+    this(new ParallelExecutor());
+  }
+
+  /**
+   * Constructs the ImageProcessor running its per pixel work on the given executor.
+   *
+   * @param executor the executor that splits images into row bands.
+   */
+  public ImageProcessorModel(ParallelExecutor executor) {
+    if (executor == null) {
+      throw new IllegalArgumentException("Null executor");
+    }
+    this.images = new HashMap<String, PackedImage>();
+    this.pending = new HashMap<String, Deferred>();
+    this.versions = new HashMap<String, Long>();
+    this.histograms = new HashMap<String, CachedHistogram>();
+    this.ppmFormat = PPMFormat.Plain;
+    this.listeners = new ArrayList<ImageChangeListener>();
+    this.executor = executor;
   }
 
   /**
@@ -30,7 +113,36 @@ public class ImageProcessorModel implements ProcessorModelState {
    * @param image the image itself that we are loading.
    */
   public void load(String name, Pixel[][] image) {
-    this.images.put(name, image);
+    this.store(name, PackedImage.fromPixels(image));
+  }
+
+  /**
+   * Will load the given packed image into the images field.
+   *
+   * @param name  the name of the image we will load.
+   * @param image the image itself that we are loading.
+   */
+  @Override
+  public void load(String name, PackedImage image) {
+    if (image == null) {
+      throw new IllegalArgumentException("Null image");
+    }
+    this.store(name, image);
+  }
+
+  /**
+   * Stores the image under the given name, replacing whatever was there.
+   *
+   * @param name  the name of the image.
+   * @param image the image to store.
+   */
+  private void store(String name, PackedImage image) {
+    synchronized (this) {
+      this.images.put(name, image);
+      this.pending.remove(name);
+      this.changed(name);
+    }
+    this.tellListeners(name);
   }
 
   /**
@@ -54,21 +166,23 @@ public class ImageProcessorModel implements ProcessorModelState {
    */
   private void horizontalFlip(String name) {
     this.checkPreCondition(name);
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] dup = new Pixel[height][width];
-
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        Pixel pixel = image[row][col];
-
-        dup[row][width - (col + 1)] = new Pixel(pixel);
+    PackedImage image = this.image(name);
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int[] src = image.getPixels();
+
+    int[] dup = new int[width * height];
+
+    this.executor.forRows(width, height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        int offset = row * width;
+        for (int col = 0; col < width; col++) {
+          dup[offset + width - (col + 1)] = src[offset + col];
+        }
       }
-    }
+    });
 
-    this.images.put(name, dup);
+    this.store(name, new PackedImage(width, height, dup));
   }
 
   /**
@@ -77,8 +191,8 @@ public class ImageProcessorModel implements ProcessorModelState {
    * @param name name you're checking.
    * @throws IllegalArgumentException name not in hashmap.
    */
-  private void checkPreCondition(String name) throws IllegalArgumentException {
-    if (!this.images.containsKey(name) || name == null) {
+  private synchronized void checkPreCondition(String name) throws IllegalArgumentException {
+    if (name == null || !this.containsKey(name)) {
       throw new IllegalArgumentException("Image not loaded yet: " + name);
     }
   }
@@ -90,21 +204,20 @@ public class ImageProcessorModel implements ProcessorModelState {
    */
   private void verticalFlip(String name) {
     this.checkPreCondition(name);
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] dup = new Pixel[height][width];
+    PackedImage image = this.image(name);
+    int height = image.getHeight();
+    int width = image.getWidth();
+    int[] src = image.getPixels();
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        Pixel pixel = image[row][col];
+    int[] dup = new int[width * height];
 
-        dup[height - (row + 1)][col] = new Pixel(pixel);
+    this.executor.forRows(width, height, (startRow, endRow) -> {
+      for (int row = startRow; row < endRow; row++) {
+        System.arraycopy(src, row * width, dup, (height - (row + 1)) * width, width);
       }
-    }
+    });
 
-    this.images.put(name, dup);
+    this.store(name, new PackedImage(width, height, dup));
   }
 
   /**
@@ -114,21 +227,7 @@ public class ImageProcessorModel implements ProcessorModelState {
    * @param name  the name of the image to be changed.
    */
   public void brighten(int value, String name) {
-    this.checkPreCondition(name);
-
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] dupe = new Pixel[height][width];
-
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        dupe[row][col] = new Pixel(image[row][col]);
-        dupe[row][col].changeBrightness(value);
-      }
-    }
-    this.images.put(name, dupe);
+    this.defer(LookupTable.brighten(value), name);
   }
 
   /**
@@ -140,19 +239,37 @@ public class ImageProcessorModel implements ProcessorModelState {
   public Pixel[][] getCopy(String name) {
     this.checkPreCondition(name);
 
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] output = new Pixel[height][width];
+    return this.image(name).toPixels();
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        output[row][col] = new Pixel(image[row][col]);
+  /**
+   * Stores the image with the given name under the destination name as well, sharing it.
+   *
+   * @param name        the name of the image to be copied.
+   * @param destination the name the copy is stored under.
+   */
+  @Override
+  public void copy(String name, String destination) {
+    synchronized (this) {
+      this.checkPreCondition(name);
+
+      Deferred deferred = this.pending.get(name);
+      if (deferred == null) {
+        this.images.put(destination, this.images.get(name));
+        this.pending.remove(destination);
+      } else {
+        this.pending.put(destination, deferred);
+        this.images.remove(destination);
+      }
+      // the destination holds the same pixels, so a histogram of the source still holds
+      this.changed(destination);
+      CachedHistogram cached = this.histograms.get(name);
+      if (cached != null && cached.version == this.versions.get(name)) {
+        this.histograms.put(destination,
+                new CachedHistogram(this.versions.get(destination), cached.histogram));
       }
     }
-
-    return output;
+    this.tellListeners(destination);
   }
 
   /**
@@ -162,22 +279,140 @@ public class ImageProcessorModel implements ProcessorModelState {
    * @param name the name of the image to be converted to grayscale.
    */
   public void toGrayScale(GrayScale type, String name) {
-    this.checkPreCondition(name);
+    this.defer(LookupTable.grayscale(type), name);
+  }
 
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
+  /**
+   * Records the point operation against the image with the given name, after any operations
+   * already waiting on it. When the histogram of the image is known and the operation allows it,
+   * the histogram of the result is worked out from it, so it never needs a scan.
+   *
+   * @param operation the operation to apply.
+   * @param name      the name of the image.
+   * @throws IllegalArgumentException if there is no image with the name.
+   */
+  private void defer(PointOperation operation, String name) {
+    synchronized (this) {
+      this.checkPreCondition(name);
+
+      // a point operation usually gives the new histogram straight from the old one
+      CachedHistogram cached = this.histograms.get(name);
+      Histogram derived = cached == null || cached.version != this.versions.get(name)
+              ? null : operation.remap(cached.histogram);
+
+      Deferred deferred = this.pending.get(name);
+      if (deferred == null) {
+        this.pending.put(name, new Deferred(this.images.remove(name), operation));
+      } else {
+        this.pending.put(name, new Deferred(deferred.base, deferred.operation.then(operation)));
+      }
+      this.changed(name, derived);
+    }
+    this.tellListeners(name);
+  }
 
-    Pixel[][] dupe = new Pixel[height][width];
+  /**
+   * Gives the image with the given name a new version, which drops its cached histogram. It is
+   * called with the lock held.
+   *
+   * @param name the name of the changed image.
+   */
+  private void changed(String name) {
+    this.changed(name, null);
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        dupe[row][col] = new Pixel(image[row][col]);
-        dupe[row][col].toGrayScale(type);
+  /**
+   * Gives the image with the given name a new version with the given histogram. It is called
+   * with the lock held.
+   *
+   * @param name      the name of the changed image.
+   * @param histogram the histogram of the new image, or null if it is not known.
+   */
+  private void changed(String name, Histogram histogram) {
+    this.lastVersion++;
+    this.versions.put(name, this.lastVersion);
+    if (histogram == null) {
+      this.histograms.remove(name);
+    } else {
+      this.histograms.put(name, new CachedHistogram(this.lastVersion, histogram));
+    }
+  }
+
+  /**
+   * Tells the listeners the image with the given name changed. It is called after the lock is
+   * released, so a listener that reads the image, or waits on a thread that does, never holds up
+   * the threads changing other images.
+   *
+   * @param name the name of the changed image.
+   */
+  private void tellListeners(String name) {
+    List<ImageChangeListener> listeners;
+    synchronized (this) {
+      listeners = new ArrayList<ImageChangeListener>(this.listeners);
+    }
+    for (ImageChangeListener listener : listeners) {
+      listener.imageChanged(name);
+    }
+  }
+
+  @Override
+  public synchronized void addImageChangeListener(ImageChangeListener listener) {
+    if (listener == null) {
+      throw new IllegalArgumentException("Null listener");
+    }
+    this.listeners.add(listener);
+  }
+
+  /**
+   * Retrieves the version of the image with the given name.
+   *
+   * @param name the name of the image.
+   * @return the version, which changes whenever the image stored under the name changes.
+   */
+  @Override
+  public synchronized long getVersion(String name) {
+    this.checkPreCondition(name);
+
+    return this.versions.get(name);
+  }
+
+  /**
+   * Retrieves the image with the given name, applying its waiting point operations first. Every
+   * name still sharing the same waiting operations gets the result as well. The operations run
+   * outside the lock, so two threads asking for the same name at once may both run them.
+   *
+   * @param name the name of the image.
+   * @return the image.
+   */
+  private PackedImage image(String name) {
+    Deferred deferred;
+    synchronized (this) {
+      deferred = this.pending.get(name);
+      if (deferred == null) {
+        return this.images.get(name);
       }
     }
 
-    this.images.put(name, dupe);
+    PackedImage base = deferred.base;
+    PointOperation operation = deferred.operation;
+    int width = base.getWidth();
+    int[] src = base.getPixels();
+    int[] dst = new int[src.length];
+    this.executor.forRows(width, base.getHeight(), (startRow, endRow) ->
+            operation.apply(src, dst, startRow * width, endRow * width));
+    PackedImage result = new PackedImage(width, base.getHeight(), dst);
+
+    synchronized (this) {
+      Iterator<Map.Entry<String, Deferred>> entries = this.pending.entrySet().iterator();
+      while (entries.hasNext()) {
+        Map.Entry<String, Deferred> entry = entries.next();
+        if (entry.getValue() == deferred) {
+          this.images.put(entry.getKey(), result);
+          entries.remove();
+        }
+      }
+    }
+    return result;
   }
 
   /**
@@ -193,11 +428,49 @@ public class ImageProcessorModel implements ProcessorModelState {
       this.saveAny(path, name, "PNG");
     } else if (path.endsWith(".ppm")) {
       this.savePPM(path, name);
+    } else if (path.endsWith(".pgm")) {
+      this.checkPreCondition(name);
+      this.detach(path);
+      ImageUtil.savePPM(path, this.image(name), PPMFormat.Raw, true);
     } else if (path.endsWith(".bmp")) {
       this.saveAny(path, name, "BMP");
     } else {
-      throw new IllegalArgumentException("Invalid file format use .ppm, .jpeg, .jpg, .bmp or .png");
+      throw new IllegalArgumentException(
+              "Invalid file format use .ppm, .pgm, .jpeg, .jpg, .bmp or .png");
+    }
+  }
+
+  /**
+   * Decodes every image mapped from the file at the given path into the heap, so overwriting the
+   * file does not change them.
+   *
+   * @param path the path of the file about to be written.
+   */
+  private synchronized void detach(String path) {
+    Path file = Paths.get(path);
+    for (PackedImage image : this.images.values()) {
+      if (image.getMapped() != null && image.getMapped().isMappedFrom(file)) {
+        image.getPixels();
+      }
+    }
+    for (Deferred deferred : this.pending.values()) {
+      if (deferred.base.getMapped() != null && deferred.base.getMapped().isMappedFrom(file)) {
+        deferred.base.getPixels();
+      }
+    }
+  }
+
+  /**
+   * Chooses how PPM files are saved from now on, plain text (P3) by default or raw bytes (P6).
+   *
+   * @param format the format to save PPM files in.
+   */
+  @Override
+  public void setPPMFormat(PPMFormat format) {
+    if (format == null) {
+      throw new IllegalArgumentException("Null PPM format");
     }
+    this.ppmFormat = format;
   }
 
   /**
@@ -209,9 +482,11 @@ public class ImageProcessorModel implements ProcessorModelState {
    */
   private void saveAny(String path, String name, String format) {
     this.checkPreCondition(name);
-    Pixel[][] currImage = this.images.get(name);
+    PackedImage currImage = this.image(name);
 
-    BufferedImage image = ImageUtil.convertToBufferedFromImage(currImage);
+    // the JPEG writer works on interleaved bytes, the others are quickest from packed ints
+    BufferedImage image = ImageUtil.toBufferedImage(currImage, format.equals("JPEG")
+            ? BufferedImage.TYPE_3BYTE_BGR : BufferedImage.TYPE_INT_RGB);
 
     try {
       ImageIO.write(image, format, new File(path));
@@ -220,47 +495,31 @@ public class ImageProcessorModel implements ProcessorModelState {
     }
   }
 
-  private void savePPM(String path, String name) {
-    this.checkPreCondition(name);
-
-    Pixel[][] image = this.images.get(name);
-    int width = image[0].length;
-    int height = image.length;
-
-    String imageData = "P3" + "\n"
-            + String.valueOf(width) + " " + String.valueOf(height) + "\n"
-            + "255" + "\n"
-            + this.toString(name);
-    ImageUtil.savePPM(path, imageData);
-  }
-
   /**
-   * Converts the image with the given name to PPM format, as string.
+   * Runs the pipeline over the input file into the output file a band at a time, without loading
+   * the image. Loaded images mapped from the output file are decoded first, as for a save.
    *
-   * @param name name of the image to be saved.
-   * @return a string in ppm format.
+   * @param inputPath  the path of the file to read.
+   * @param outputPath the path of the file to write.
+   * @param pipeline   the operations to run.
    */
-  private String toString(String name) {
-    this.checkPreCondition(name);
-
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    StringBuilder str = new StringBuilder();
-
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        str.append(image[row][col].getRed());
-        str.append("\n");
-        str.append(image[row][col].getGreen());
-        str.append("\n");
-        str.append(image[row][col].getBlue());
-        str.append("\n");
-      }
+  @Override
+  public void stream(String inputPath, String outputPath, StreamPipeline pipeline) {
+    if (inputPath == null || outputPath == null || pipeline == null) {
+      throw new IllegalArgumentException("Invalid paths or pipeline");
+    }
+    this.detach(outputPath);
+    try {
+      pipeline.run(inputPath, outputPath, this.ppmFormat, this.executor);
+    } catch (IOException e) {
+      throw new IllegalStateException("Error streaming file: " + inputPath + " to " + outputPath);
     }
+  }
 
-    return str.toString();
+  private void savePPM(String path, String name) {
+    this.checkPreCondition(name);
+    this.detach(path);
+    ImageUtil.savePPM(path, this.image(name), this.ppmFormat, false);
   }
 
   /**
@@ -269,46 +528,25 @@ public class ImageProcessorModel implements ProcessorModelState {
    * @param kernel the kernel filter applieid to the image.
    * @param name   the name of the image to be filtered.
    */
-  private void filter(double[][] kernel, String name) {
-    this.checkPreCondition(name);
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] newImage = new Pixel[height][width];
-
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        newImage[row][col] = this.filterHelp(row, col, kernel, image);
-      }
-    }
-
-    this.images.put(name, newImage);
+  private void filter(Kernel kernel, String name) {
+    this.convolve(kernel, BorderMode.Zero, name);
   }
 
-  private Pixel filterHelp(int pixelRow, int pixelCol, double[][] kernel,
-                           Pixel[][] image) {
-    int size = kernel.length;
-    int red = 0;
-    int green = 0;
-    int blue = 0;
-
-    for (int row = 0 - size / 2; row <= size / 2; row++) {
-      for (int col = 0 - size / 2; col <= size / 2; col++) {
-        if (!(pixelRow + row < 0 || pixelCol + col < 0 || pixelRow + row >= image.length
-                || pixelCol + col >= image[0].length)) {
-
-          red += image[pixelRow + row][pixelCol + col].getRed()
-                  * kernel[row + size / 2][col + size / 2];
-          green += image[pixelRow + row][pixelCol + col].getGreen()
-                  * kernel[row + size / 2][col + size / 2];
-          blue += image[pixelRow + row][pixelCol + col].getBlue()
-                  * kernel[row + size / 2][col + size / 2];
-        }
-      }
+  /**
+   * Convolves the image with the given name with the given kernel.
+   *
+   * @param kernel the kernel applied to the image.
+   * @param border how pixels outside the image are read.
+   * @param name   the name of the image to be convolved.
+   */
+  @Override
+  public void convolve(Kernel kernel, BorderMode border, String name) {
+    this.checkPreCondition(name);
+    if (kernel == null || border == null) {
+      throw new IllegalArgumentException("Invalid kernel or border mode");
     }
 
-    return new Pixel(red, green, blue);
+    this.store(name, Convolution.apply(this.image(name), kernel, border, this.executor));
   }
 
   /**
@@ -319,10 +557,7 @@ public class ImageProcessorModel implements ProcessorModelState {
   @Override
   public void blur(String name) {
     System.out.println("blur");
-    double[][] blurKernel =
-            new double[][]{new double[]{.0625, .125, .0625}, new double[]{.125, .25, .125},
-                           new double[]{.0625, .125, .0625}};
-    this.filter(blurKernel, name);
+    this.filter(BLUR, name);
   }
 
   /**
@@ -333,30 +568,11 @@ public class ImageProcessorModel implements ProcessorModelState {
   @Override
   public void sharpen(String name) {
     System.out.println("sharpen");
-    double[][] sharpenKernel =
-            new double[][]{ new double[]{-.125, -.125, -.125, -.125, -.125},
-                            new double[]{-.125, .25, .25, .25, -.125},
-                            new double[]{-.125, .25, 1, .25, -.125},
-                            new double[]{-.125, .25, .25, .25, -.125},
-                            new double[]{-.125, -.125, -.125, -.125, -.125}};
-    this.filter(sharpenKernel, name);
+    this.filter(SHARPEN, name);
   }
 
-  private void colorTransformation(double[] transformation, String name) {
-    this.checkPreCondition(name);
-    Pixel[][] image = images.get(name);
-    int height = image.length;
-    int width = image[0].length;
-
-    Pixel[][] newImage = new Pixel[height][width];
-
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        Pixel p = image[row][col].applyTransformation(transformation);
-        newImage[row][col] = p;
-      }
-    }
-    this.images.put(name, newImage);
+  private void colorTransformation(ColorMatrix transformation, String name) {
+    this.defer(transformation, name);
   }
 
   /**
@@ -366,9 +582,7 @@ public class ImageProcessorModel implements ProcessorModelState {
    */
   @Override
   public void transformationGrayscale(String name) {
-    double[] transformation =
-            new double[]{.2126, .7152, .0722, .2126, .7152, .0722, .2126, .7152, .0722};
-    this.colorTransformation(transformation, name);
+    this.colorTransformation(ColorMatrix.GRAY, name);
   }
 
   /**
@@ -378,84 +592,90 @@ public class ImageProcessorModel implements ProcessorModelState {
    */
   @Override
   public void sepia(String name) {
-    double[] transformation =
-            new double[]{.393, .769, .189, .349, .686, .168, .272, .534, .131};
-    this.colorTransformation(transformation, name);
+    this.colorTransformation(ColorMatrix.SEPIA, name);
   }
 
-  public Map<Integer, Integer> getRedCount(String imageName) {
+  /**
+   * Counts the red, green, blue and intensity levels of the image with the given name. The
+   * histogram is kept until the image changes, so asking again is free.
+   *
+   * @param imageName the name of the image.
+   * @return the histogram of the image.
+   */
+  @Override
+  public Histogram getHistogram(String imageName) {
     Objects.requireNonNull(imageName);
-
-    Map<Integer, Integer> redCount = new HashMap<>();
-    redCount.put(-1, 0);
-
-    Pixel[][] image = this.images.get(imageName);
-    for (int r = 0; r < image.length; r++) {
-      for (int c = 0; c < image[0].length; c++) {
-        int x = redCount.getOrDefault(image[r][c].getRed(), 0) + 1;
-        redCount.put(-1, Math.max(redCount.get(-1), x));
-        redCount.put(image[r][c].getRed(), x);
+    this.checkPreCondition(imageName);
+
+    long version;
+    synchronized (this) {
+      version = this.versions.get(imageName);
+      CachedHistogram cached = this.histograms.get(imageName);
+      if (cached != null && cached.version == version) {
+        return cached.histogram;
       }
     }
-
-    return redCount;
-  }
-
-  public Map<Integer, Integer> getGreenCount(String imageName) {
-    Objects.requireNonNull(imageName);
-
-    Map<Integer, Integer> greenCount = new HashMap<>();
-    greenCount.put(-1, 0);
-
-    Pixel[][] image = this.images.get(imageName);
-    for (int r = 0; r < image.length; r++) {
-      for (int c = 0; c < image[0].length; c++) {
-        int x = greenCount.getOrDefault(image[r][c].getGreen(), 0) + 1;
-        greenCount.put(-1, Math.max(x, greenCount.get(-1)));
-        greenCount.put(image[r][c].getGreen(), x);
+    Histogram histogram = Histogram.of(this.image(imageName), this.executor);
+    synchronized (this) {
+      // the image may have changed while it was counted
+      if (this.versions.get(imageName) == version) {
+        this.histograms.put(imageName, new CachedHistogram(version, histogram));
       }
     }
-
-    return greenCount;
+    return histogram;
   }
 
-  public Map<Integer, Integer> getBlueCount(String imageName) {
-    Objects.requireNonNull(imageName);
+  /**
+   * Retrieves the image with the given name for display, sharing its pixels. Images are never
+   * changed once stored, so the shared pixels stay as they are while the view draws them.
+   *
+   * @param name the name of the image.
+   * @return the image, backed by the pixels of the model.
+   */
+  @Override
+  public BufferedImage getDisplayImage(String name) {
+    this.checkPreCondition(name);
 
-    Map<Integer, Integer> blueCount = new HashMap<>();
-    blueCount.put(-1, 0);
+    return ImageUtil.toDisplayImage(this.image(name));
+  }
 
-    Pixel[][] image = this.images.get(imageName);
-    for (int r = 0; r < image.length; r++) {
-      for (int c = 0; c < image[0].length; c++) {
-        int x = blueCount.getOrDefault(image[r][c].getBlue(), 0) + 1;
-        blueCount.put(-1, Math.max(x, blueCount.get(-1)));
-        blueCount.put(image[r][c].getBlue(), x);
+  /**
+   * Turns histogram counts into a map from each level that occurs to its count, with the largest
+   * count under -1.
+   */
+  private static Map<Integer, Integer> toMap(int[] counts, int max) {
+    Map<Integer, Integer> map = new HashMap<>();
+    map.put(-1, max);
+    for (int level = 0; level < Histogram.LEVELS; level++) {
+      if (counts[level] != 0) {
+        map.put(level, counts[level]);
       }
     }
+    return map;
+  }
 
-    return blueCount;
+  public Map<Integer, Integer> getRedCount(String imageName) {
+    Histogram histogram = this.getHistogram(imageName);
+    return toMap(histogram.getRedCounts(), histogram.getMaxRed());
   }
 
-  public Map<Integer, Integer> getIntensityCount(String imageName) {
-    Objects.requireNonNull(imageName);
+  public Map<Integer, Integer> getGreenCount(String imageName) {
+    Histogram histogram = this.getHistogram(imageName);
+    return toMap(histogram.getGreenCounts(), histogram.getMaxGreen());
+  }
 
-    Map<Integer, Integer> intensityCount = new HashMap<>();
-    intensityCount.put(-1, 0);
+  public Map<Integer, Integer> getBlueCount(String imageName) {
+    Histogram histogram = this.getHistogram(imageName);
+    return toMap(histogram.getBlueCounts(), histogram.getMaxBlue());
+  }
 
-    Pixel[][] image = this.images.get(imageName);
-    for (int r = 0; r < image.length; r++) {
-      for (int c = 0; c < image[0].length; c++) {
-        int x = intensityCount.getOrDefault((int)image[r][c].getIntensity(), 0) + 1;
-        intensityCount.put(-1, Math.max(x, intensityCount.get(-1)));
-        intensityCount.put((int)image[r][c].getIntensity(), x);
-      }
-    }
-    return intensityCount;
+  public Map<Integer, Integer> getIntensityCount(String imageName) {
+    Histogram histogram = this.getHistogram(imageName);
+    return toMap(histogram.getIntensityCounts(), histogram.getMaxIntensity());
   }
 
   @Override
-  public boolean containsKey(String key) {
-    return this.images.containsKey(key);
+  public synchronized boolean containsKey(String key) {
+    return this.images.containsKey(key) || this.pending.containsKey(key);
   }
 }
@@ -1,9 +1,22 @@
 package model;
 
+import controller.BatchRunner;
 import controller.ImageProcessorController;
+import controller.JobServer;
+import controller.StageMetrics;
 
-import java.awt.*;
+import java.awt.Dimension;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -14,52 +27,177 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.Scanner;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 
 /**
  * This class contains utility methods to read a PPM image from file and simply print its contents.
  * Feel free to change this method as required.
  */
 public class ImageUtil {
+  // the smallest pixel data of a raw file that is mapped rather than read
+  private static final long MAP_THRESHOLD = 1 << 20;
 
   public static BufferedImage convertToBufferedFromImage(Pixel[][] currImage) {
     if (currImage == null) {
       throw new IllegalArgumentException("Null image when converting to BufferedImage");
     }
-    int width = currImage[0].length;
-    int height = currImage.length;
+    return ImageUtil.toBufferedImage(PackedImage.fromPixels(currImage),
+            BufferedImage.TYPE_INT_RGB);
+  }
 
-    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+  /**
+   * Converts the packed image to a BufferedImage.
+   *
+   * @param currImage the image to be converted.
+   * @return a BufferedImage of type TYPE_INT_RGB with the same colors.
+   */
+  public static BufferedImage convertToBufferedFromImage(PackedImage currImage) {
+    if (currImage == null) {
+      throw new IllegalArgumentException("Null image when converting to BufferedImage");
+    }
+    return ImageUtil.toBufferedImage(currImage, BufferedImage.TYPE_INT_RGB);
+  }
 
-    for (int row = 0; row < height; row++) {
-      for (int col = 0; col < width; col++) {
-        int currRed = currImage[row][col].getRed();
-        int currGreen = currImage[row][col].getGreen();
-        int currBlue = currImage[row][col].getBlue();
-        if (currBlue > 255 || currRed > 255 || currGreen > 255) {
-          currBlue = Math.min(255, currBlue);
-          currRed = Math.min(255, currRed);
-          currGreen = Math.min(255, currGreen);
+  /**
+   * Converts the packed image to a new BufferedImage of the given type, writing its raster
+   * directly. TYPE_INT_RGB is a copy of the packed pixels, TYPE_3BYTE_BGR spreads each pixel over
+   * three bytes and TYPE_BYTE_GRAY keeps the intensity of each pixel.
+   *
+   * @param image the image to be converted.
+   * @param type  one of TYPE_INT_RGB, TYPE_3BYTE_BGR and TYPE_BYTE_GRAY.
+   * @return the BufferedImage.
+   * @throws IllegalArgumentException if the type is not one of those.
+   */
+  static BufferedImage toBufferedImage(PackedImage image, int type)
+          throws IllegalArgumentException {
+    int[] pixels = image.getPixels();
+    BufferedImage buffered = new BufferedImage(image.getWidth(), image.getHeight(), type);
+    // a new image has one bank, no offset and rows of exactly its width
+    DataBuffer buffer = buffered.getRaster().getDataBuffer();
+    switch (type) {
+      case BufferedImage.TYPE_INT_RGB:
+        System.arraycopy(pixels, 0, ((DataBufferInt) buffer).getData(), 0, pixels.length);
+        break;
+      case BufferedImage.TYPE_3BYTE_BGR: {
+        byte[] data = ((DataBufferByte) buffer).getData();
+        for (int i = 0, p = 0; i < pixels.length; i++, p += 3) {
+          int rgb = pixels[i];
+          data[p] = (byte) rgb;
+          data[p + 1] = (byte) (rgb >> 8);
+          data[p + 2] = (byte) (rgb >> 16);
         }
-
-        if (currBlue < 0 || currRed < 0 || currGreen < 0) {
-          currBlue = Math.max(0, currBlue);
-          currRed = Math.max(0, currRed);
-          currGreen = Math.max(0, currGreen);
+        break;
+      }
+      case BufferedImage.TYPE_BYTE_GRAY: {
+        byte[] data = ((DataBufferByte) buffer).getData();
+        for (int i = 0; i < pixels.length; i++) {
+          int rgb = pixels[i];
+          data[i] = (byte) ((((rgb >> 16) & 0xff) + ((rgb >> 8) & 0xff) + (rgb & 0xff)) / 3);
         }
+        break;
+      }
+      default:
+        throw new IllegalArgumentException("Unsupported image type: " + type);
+    }
+    return buffered;
+  }
 
-        Color your_color = new Color(currRed, currGreen, currBlue);
-        String hex_string = Integer.toHexString(your_color.getRGB()).substring(2);
+  /**
+   * Wraps the packed image in a BufferedImage that shares its pixels instead of copying them, the
+   * color model reads each int as 0xRRGGBB just as the image stores it.
+   *
+   * @param image the image to be wrapped.
+   * @return a BufferedImage backed by the pixels of the image.
+   */
+  static BufferedImage toDisplayImage(PackedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    DirectColorModel colors = new DirectColorModel(24, 0xff0000, 0xff00, 0xff);
+    DataBufferInt buffer = new DataBufferInt(image.getPixels(), width * height);
+    WritableRaster raster = Raster.createPackedRaster(buffer, width, height, width,
+            colors.getMasks(), null);
+    return new BufferedImage(colors, raster, false, null);
+  }
 
-        int hex = Integer.parseInt(hex_string, 16);
+  /**
+   * Packs the pixels of a BufferedImage. The rasters of int RGB, interleaved byte RGB and byte
+   * gray images are read directly, anything else goes through one bulk getRGB. Gray levels are
+   * taken as they are stored rather than through the color conversion getRGB applies to them.
+   *
+   * @param image the image to be packed.
+   * @return the packed image.
+   */
+  static PackedImage toPackedImage(BufferedImage image) {
+    int width = image.getWidth();
+    int height = image.getHeight();
+    int[] pixels = new int[width * height];
+
+    WritableRaster raster = image.getRaster();
+    DataBuffer buffer = raster.getDataBuffer();
+    SampleModel sampleModel = raster.getSampleModel();
+    // where the raster starts in its sample model, which is not 0, 0 for a subimage
+    int x0 = -raster.getSampleModelTranslateX();
+    int y0 = -raster.getSampleModelTranslateY();
 
-        image.setRGB(col, row, hex);
+    switch (image.getType()) {
+      case BufferedImage.TYPE_INT_RGB:
+      case BufferedImage.TYPE_INT_ARGB: {
+        int[] data = ((DataBufferInt) buffer).getData();
+        SinglePixelPackedSampleModel packed = (SinglePixelPackedSampleModel) sampleModel;
+        int stride = packed.getScanlineStride();
+        int start = buffer.getOffset() + packed.getOffset(x0, y0);
+        for (int row = 0, i = 0; row < height; row++) {
+          for (int p = start + row * stride, end = p + width; p < end; p++, i++) {
+            pixels[i] = data[p] & 0xffffff;
+          }
+        }
+        break;
+      }
+      case BufferedImage.TYPE_3BYTE_BGR:
+      case BufferedImage.TYPE_4BYTE_ABGR: {
+        byte[] data = ((DataBufferByte) buffer).getData();
+        ComponentSampleModel interleaved = (ComponentSampleModel) sampleModel;
+        int pixelStride = interleaved.getPixelStride();
+        int stride = interleaved.getScanlineStride();
+        int[] bands = interleaved.getBandOffsets();
+        int start = buffer.getOffset() + interleaved.getOffset(x0, y0) - bands[0];
+        for (int row = 0, i = 0; row < height; row++) {
+          for (int col = 0, p = start + row * stride; col < width; col++, i++, p += pixelStride) {
+            pixels[i] = ((data[p + bands[0]] & 0xff) << 16) | ((data[p + bands[1]] & 0xff) << 8)
+                    | (data[p + bands[2]] & 0xff);
+          }
+        }
+        break;
+      }
+      case BufferedImage.TYPE_BYTE_GRAY: {
+        byte[] data = ((DataBufferByte) buffer).getData();
+        ComponentSampleModel gray = (ComponentSampleModel) sampleModel;
+        int pixelStride = gray.getPixelStride();
+        int stride = gray.getScanlineStride();
+        int start = buffer.getOffset() + gray.getOffset(x0, y0);
+        for (int row = 0, i = 0; row < height; row++) {
+          for (int col = 0, p = start + row * stride; col < width; col++, i++, p += pixelStride) {
+            int level = data[p] & 0xff;
+            pixels[i] = (level << 16) | (level << 8) | level;
+          }
+        }
+        break;
       }
+      default:
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+          pixels[i] &= 0xffffff;
+        }
+        break;
     }
-
-    return image;
+    return new PackedImage(width, height, pixels);
   }
 
   /**
@@ -78,6 +216,24 @@ public class ImageUtil {
     }
   }
 
+  /**
+   * Saves the image as a PPM file, or as a PGM file of the intensity of every pixel, which is the
+   * gray level itself for gray images. The file is encoded and written a buffer at a time, so the
+   * whole file is never held in memory.
+   *
+   * @param filePath the string representing the local file path.
+   * @param image    the image to save.
+   * @param format   whether to save plain text or raw bytes.
+   * @param gray     whether to save a PGM file.
+   */
+  static void savePPM(String filePath, PackedImage image, PPMFormat format, boolean gray) {
+    try {
+      PPMWriter.write(filePath, image, format, gray);
+    } catch (IOException exception) {
+      throw new IllegalStateException("Error writing to file.");
+    }
+  }
+
   /**
    * Reads the file with the given file name and returns the associated image.
    *
@@ -85,92 +241,279 @@ public class ImageUtil {
    * @return the array of pixels of the image.
    */
   public static Pixel[][] readFile(String filename) {
-    if (filename.endsWith(".ppm")) {
-      return ImageUtil.readPPM(filename);
+    return ImageUtil.readImage(filename).toPixels();
+  }
+
+  /**
+   * Reads the file with the given file name and returns the associated packed image.
+   *
+   * @param filename the filename to be read.
+   * @return the packed image.
+   */
+  public static PackedImage readImage(String filename) {
+    return ImageUtil.readImage(filename, ReadOptions.FULL);
+  }
+
+  /**
+   * Reads the given region of the file with the given file name, subsampled, and returns the
+   * associated packed image. Only the pixels kept are decoded.
+   *
+   * @param filename the filename to be read.
+   * @param options  the region and subsampling to read.
+   * @return the packed image.
+   */
+  public static PackedImage readImage(String filename, ReadOptions options) {
+    if (options == null) {
+      throw new IllegalArgumentException("Null read options");
+    }
+    if (filename.endsWith(".ppm") || filename.endsWith(".pgm")) {
+      return ImageUtil.readPPM(filename, options);
     } else if (filename.endsWith(".bmp") || filename.endsWith(".jpeg") ||
             filename.endsWith(".png") || filename.endsWith(".jpg")) {
-      return ImageUtil.readJPEGPNGBMP(filename);
+      return ImageUtil.readJPEGPNGBMP(filename, options);
     } else {
       throw new IllegalArgumentException("Invalid filename");
     }
   }
 
-  private static Pixel[][] readJPEGPNGBMP(String filename) {
-    try {
-      BufferedImage image = ImageIO.read(new File(filename));
-      int height = image.getHeight();
-      int width = image.getWidth();
-
-      Pixel[][] outputImage = new Pixel[height][width];
-
-      for (int row = 0; row < height; row++) {
-        for (int col = 0; col < width; col++) {
+  /**
+   * Reads the size of an image from the header of its file, without decoding its pixels.
+   *
+   * @param filename the path of the file.
+   * @return the width and height of the image.
+   * @throws IllegalArgumentException if the file is not of a format that can be read.
+   * @throws IllegalStateException    if the file cannot be read.
+   */
+  public static Dimension readSize(String filename) {
+    try (RowSource rows = ImageUtil.openRows(filename)) {
+      return new Dimension(rows.getWidth(), rows.getHeight());
+    } catch (IOException e) {
+      throw new IllegalStateException("Error reading file: " + filename);
+    }
+  }
 
-          int color = (image.getRGB(col, row));
-          int blue = (color & 0xff);
-          int green = (color & 0xff00) >> 8;
-          int red = (color & 0xff0000) >> 16;
+  /**
+   * Opens the file for reading its rows in order, a band at a time.
+   *
+   * @param filename the path of the file.
+   * @return the rows of the image.
+   * @throws IOException              if the file cannot be read.
+   * @throws IllegalArgumentException if the file is not of a format that can be read.
+   */
+  static RowSource openRows(String filename) throws IOException {
+    if (filename.endsWith(".ppm") || filename.endsWith(".pgm")) {
+      return new PPMRowSource(filename);
+    } else if (filename.endsWith(".bmp") || filename.endsWith(".jpeg")
+            || filename.endsWith(".png") || filename.endsWith(".jpg")) {
+      return new ImageIORowSource(filename);
+    } else {
+      throw new IllegalArgumentException("Invalid filename");
+    }
+  }
 
-          outputImage[row][col] = new Pixel(red, green, blue);
-        }
+  private static PackedImage readJPEGPNGBMP(String filename, ReadOptions options) {
+    if (options.isFull()) {
+      try {
+        BufferedImage image = ImageIO.read(new File(filename));
+        return ImageUtil.toPackedImage(image);
+      } catch (IOException e) {
+        throw new IllegalStateException("Error reading file: " + filename);
+      }
+    }
+    // the reader decodes only the region and keeps only the sampled pixels
+    try (ImageInputStream in = ImageIO.createImageInputStream(new File(filename))) {
+      Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+      if (readers == null || !readers.hasNext()) {
+        throw new IllegalStateException("Error reading file: " + filename);
+      }
+      ImageReader reader = readers.next();
+      try {
+        reader.setInput(in, true, true);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(options.region(reader.getWidth(0), reader.getHeight(0)));
+        param.setSourceSubsampling(options.getSubsample(), options.getSubsample(), 0, 0);
+        return ImageUtil.toPackedImage(reader.read(0, param));
+      } finally {
+        reader.dispose();
       }
-      return outputImage;
     } catch (IOException e) {
       throw new IllegalStateException("Error reading file: " + filename);
     }
   }
 
   /**
-   * Read an image file in the PPM format and print the colors.
+   * Keeps the pixels of the image in the region and subsampling of the options.
+   *
+   * @param image   the image, which may be mapped.
+   * @param options the region and subsampling to keep.
+   * @return the kept pixels as a new image.
+   */
+  private static PackedImage sample(PackedImage image, ReadOptions options) {
+    Rectangle region = options.region(image.getWidth(), image.getHeight());
+    int step = options.getSubsample();
+    int width = options.sampled(region.width);
+    int height = options.sampled(region.height);
+    int[] pixels = new int[width * height];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        pixels[row * width + col] = image.getRGB(region.y + row * step, region.x + col * step);
+      }
+    }
+    return new PackedImage(width, height, pixels);
+  }
+
+  /**
+   * Read an image file in the PPM or PGM format and print the colors. The file is parsed byte by
+   * byte through PPMReader, straight into the packed pixels. Plain (P3, P2) and raw (P6, P5)
+   * files are told apart by their magic number. Large raw files with one byte samples are mapped
+   * into memory instead of read, so loading them again is served by the page cache.
+   *
+   * <p>When only a region or a subsampling is read, the rows before the region and the rows
+   * between the kept ones are skipped without decoding: raw files seek past them, and the
+   * samples of plain files are only scanned for the whitespace between them.
    *
    * @param filename the path of the file.
+   * @param options  the region and subsampling to read.
    */
-  private static Pixel[][] readPPM(String filename) {
-    Scanner sc;
+  private static PackedImage readPPM(String filename, ReadOptions options) {
+    try (PPMReader reader = new PPMReader(new FileInputStream(filename))) {
+      String token = reader.readToken();
+      if (!token.equals("P3") && !token.equals("P6") && !token.equals("P2")
+              && !token.equals("P5")) {
+        System.out.println("Invalid PPM file: plain RAW file should begin with P3");
+      }
+      int width = reader.readInt();
+      System.out.println("Width of image: " + width);
+      int height = reader.readInt();
+      System.out.println("Height of image: " + height);
+      int maxValue = reader.readInt();
+      System.out.println("Maximum value of a color in this file (usually 255): " + maxValue);
 
-    try {
-      sc = new Scanner(new FileInputStream(filename));
+      int size = Math.multiplyExact(width, height);
+      boolean gray = token.equals("P2") || token.equals("P5");
+      boolean raw = token.equals("P6") || token.equals("P5");
+      if (raw && maxValue == 255 && (long) size * (gray ? 1 : 3) >= MAP_THRESHOLD) {
+        PackedImage mapped = new PackedImage(width, height, MappedPixels.map(
+                Paths.get(filename), reader.position(), width, height, gray));
+        return options.isFull() ? mapped : ImageUtil.sample(mapped, options);
+      }
+      if (!options.isFull()) {
+        return ImageUtil.readPPMRegion(reader, width, height, maxValue, gray, raw, options);
+      }
+      int[] image = new int[size];
+      if (raw) {
+        reader.readRawPixels(image, 0, size, gray, maxValue);
+      } else {
+        reader.readPlainPixels(image, 0, size, gray, maxValue);
+      }
+      return new PackedImage(width, height, image);
     } catch (FileNotFoundException e) {
       throw new IllegalArgumentException("File " + filename + " not found!");
+    } catch (IOException | ArithmeticException e) {
+      throw new IllegalStateException("Error reading file: " + filename);
     }
-    StringBuilder builder = new StringBuilder();
-    //read the file line by line, and populate a string. This will throw away any comment lines
-    while (sc.hasNextLine()) {
-      String s = sc.nextLine();
-      if (s.charAt(0) != '#') {
-        builder.append(s + System.lineSeparator());
+  }
+
+  /**
+   * Reads the pixels of a PPM file in the region and subsampling of the options a row at a time,
+   * after the header has been read.
+   */
+  private static PackedImage readPPMRegion(PPMReader reader, int width, int height, int maxValue,
+                                           boolean gray, boolean raw, ReadOptions options)
+          throws IOException {
+    Rectangle region = options.region(width, height);
+    int step = options.getSubsample();
+    int sampledWidth = options.sampled(region.width);
+    int sampledHeight = options.sampled(region.height);
+    long rowBytes = (long) width * (gray ? 1 : 3) * (maxValue < 256 ? 1 : 2);
+
+    int[] pixels = new int[sampledWidth * sampledHeight];
+    int[] row = new int[width];
+    // the next row of the file the reader is at
+    int next = 0;
+    for (int out = 0; out < sampledHeight; out++) {
+      int source = region.y + out * step;
+      if (raw) {
+        reader.skipBytes(rowBytes * (source - next));
+        reader.readRawPixels(row, 0, width, gray, maxValue);
+      } else {
+        reader.skipTokens((long) width * (gray ? 1 : 3) * (source - next));
+        reader.readPlainPixels(row, 0, width, gray, maxValue);
+      }
+      next = source + 1;
+      for (int col = 0; col < sampledWidth; col++) {
+        pixels[out * sampledWidth + col] = row[region.x + col * step];
       }
     }
+    return new PackedImage(sampledWidth, sampledHeight, pixels);
+  }
 
-    //now set up the scanner to read from the string we just built
-    sc = new Scanner(builder.toString());
+  /**
+   * Reads a convolution kernel. The source is either the path of a file or the weights written
+   * inline, separated by commas. Weights are numbers or fractions such as 1/16, and the number
+   * of them must be the square of an odd number. In a file they may also be separated by
+   * whitespace, and anything after a # on a line is a comment.
+   *
+   * @param source the path of the kernel file or the inline weights.
+   * @return the kernel.
+   * @throws IllegalArgumentException if the weights are not a valid kernel.
+   */
+  public static Kernel readKernel(String source) throws IllegalArgumentException {
+    String text = source;
+    Path path = Paths.get(source);
+    if (!source.contains(",") && Files.isRegularFile(path)) {
+      try {
+        StringBuilder builder = new StringBuilder();
+        for (String line : Files.readAllLines(path)) {
+          int comment = line.indexOf('#');
+          builder.append(comment < 0 ? line : line.substring(0, comment)).append(' ');
+        }
+        text = builder.toString();
+      } catch (IOException e) {
+        throw new IllegalStateException("Error reading kernel: " + source);
+      }
+    }
+    return ImageUtil.parseKernel(text, source);
+  }
 
-    String token;
+  /**
+   * Reads a convolution kernel written inline, never from a file, for scripts that must not
+   * reach files by the name of a kernel. The weights are written as for readKernel.
+   *
+   * @param weights the weights, separated by commas or whitespace.
+   * @return the kernel.
+   * @throws IllegalArgumentException if the weights are not a valid kernel.
+   */
+  public static Kernel parseKernel(String weights) throws IllegalArgumentException {
+    return ImageUtil.parseKernel(weights, weights);
+  }
 
-    token = sc.next();
-    if (!token.equals("P3")) {
-      System.out.println("Invalid PPM file: plain RAW file should begin with P3");
+  private static Kernel parseKernel(String text, String source) {
+    String[] tokens = text.trim().split("[\\s,]+");
+    int size = (int) Math.round(Math.sqrt(tokens.length));
+    if (tokens[0].isEmpty() || size * size != tokens.length || size % 2 == 0) {
+      throw new IllegalArgumentException("Kernel needs an odd square number of weights: "
+              + source);
     }
-    int width = sc.nextInt();
-    System.out.println("Width of image: " + width);
-    int height = sc.nextInt();
-    System.out.println("Height of image: " + height);
-    int maxValue = sc.nextInt();
-    System.out.println("Maximum value of a color in this file (usually 255): " + maxValue);
-
-    Pixel[][] image = new Pixel[height][width];
 
-    for (int i = 0; i < height; i++) {
-      for (int j = 0; j < width; j++) {
-        int r = sc.nextInt();
-        int g = sc.nextInt();
-        int b = sc.nextInt();
+    double[][] weights = new double[size][size];
+    for (int i = 0; i < tokens.length; i++) {
+      weights[i / size][i % size] = ImageUtil.parseWeight(tokens[i]);
+    }
+    return new Kernel(weights);
+  }
 
-        image[i][j] = new Pixel(r, g, b);
+  private static double parseWeight(String token) {
+    try {
+      int slash = token.indexOf('/');
+      if (slash < 0) {
+        return Double.parseDouble(token);
       }
+      return Double.parseDouble(token.substring(0, slash))
+              / Double.parseDouble(token.substring(slash + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid kernel weight: " + token);
     }
-
-    return image;
   }
 
   /**
@@ -182,18 +525,95 @@ public class ImageUtil {
 
     ImageProcessorModel model;
     ImageProcessorController controller;
-    if (Arrays.asList(args).contains("-file")) {
-      String filename = args[1];
+    List<String> arguments = Arrays.asList(args);
+    ParallelExecutor executor = new ParallelExecutor();
+    if (arguments.contains("-threads")) {
+      try {
+        executor = new ParallelExecutor(
+                Integer.parseInt(args[arguments.indexOf("-threads") + 1]),
+                ParallelExecutor.DEFAULT_THRESHOLD);
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new IllegalArgumentException("-threads needs a number of threads");
+      }
+    }
+    if (arguments.contains("-scalar")) {
+      Vectorization.setEnabled(false);
+    }
+    int jobs = Runtime.getRuntime().availableProcessors();
+    if (arguments.contains("-jobs")) {
+      try {
+        jobs = Integer.parseInt(args[arguments.indexOf("-jobs") + 1]);
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new IllegalArgumentException("-jobs needs a number of jobs");
+      }
+    }
+    if (arguments.contains("-serve")) {
+      int port;
+      try {
+        port = Integer.parseInt(args[arguments.indexOf("-serve") + 1]);
+      } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+        throw new IllegalArgumentException("-serve needs a port");
+      }
+      try {
+        JobServer server = new JobServer(port, jobs, JobServer.DEFAULT_MAX_JOB_BYTES, executor);
+        server.start();
+        System.out.println("Taking jobs at http://127.0.0.1:" + server.getPort() + "/jobs");
+      } catch (IOException e) {
+        throw new IllegalStateException("Error starting the job server: " + e.getMessage());
+      }
+      return;
+    }
+    if (arguments.contains("-batch")) {
+      int at = arguments.indexOf("-batch");
+      if (at + 3 >= args.length) {
+        throw new IllegalArgumentException("-batch needs a script, a glob and an output "
+                + "directory");
+      }
+      String template;
+      try {
+        template = new String(Files.readAllBytes(Paths.get(args[at + 1])));
+      } catch (IOException e) {
+        throw new IllegalStateException("Error reading script: " + args[at + 1]);
+      }
+      List<String> inputs = BatchRunner.findFiles(args[at + 2]);
+      BatchRunner runner = new BatchRunner(template, jobs, executor);
+      if (arguments.contains("-stages")) {
+        try {
+          String[] stages = args[arguments.indexOf("-stages") + 1].split(",");
+          int transformers = Integer.parseInt(stages[1]);
+          int encoders = Integer.parseInt(stages[2]);
+          runner.setStages(Integer.parseInt(stages[0]), transformers, encoders,
+                  transformers + encoders);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+          throw new IllegalArgumentException("-stages needs decode,transform,encode threads");
+        }
+      }
+      Map<String, String> failures = runner.run(inputs, args[at + 3]);
+      for (Map.Entry<String, String> failure : failures.entrySet()) {
+        System.err.println("Failed " + failure.getKey() + ": " + failure.getValue());
+      }
+      for (StageMetrics stage : runner.getMetrics()) {
+        System.out.println(stage);
+      }
+      System.out.println("Processed " + (inputs.size() - failures.size()) + " of "
+              + inputs.size() + " files");
+      if (!failures.isEmpty()) {
+        System.exit(1);
+      }
+      return;
+    }
+    if (arguments.contains("-file")) {
+      String filename = args[arguments.indexOf("-file") + 1];
       try {
         Readable x = new FileReader(new File(filename));
-        model = new ImageProcessorModel();
+        model = new ImageProcessorModel(executor);
         controller = new ImageProcessorController(model, x);
         controller.setFileReadTrue();
       } catch (IOException e) {
         throw new IllegalStateException("Error reading script: " + filename);
       }
     } else {
-      model = new ImageProcessorModel();
+      model = new ImageProcessorModel(executor);
       controller = new ImageProcessorController(model);
     }
     controller.startProgram();
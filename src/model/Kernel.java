@@ -0,0 +1,350 @@
+package model;
+
+/**
+ * Represents a square convolution kernel of odd size. When the kernel is built it works out
+ * whether it can be evaluated with integer arithmetic, which is the case when every weight is a
+ * multiple of a power of two (a dyadic fraction), and whether it is separable into a column and
+ * a row vector so it can be evaluated as two one dimensional passes.
+ *
+ * <p>The kernels of the blur and sharpen filters truncate the sum after every tap, as the filters
+ * always have, instead of truncating the exact sum once. When every weight of such a kernel is a
+ * power of two at most one, each tap adds the level shifted right, and when the shifts are the
+ * sums of a shift per row and a shift per column, as they are for blur, the taps can still be
+ * summed as a row pass and a column pass.
+ */
+public class Kernel {
+  /**
+   * The largest power of two a dyadic kernel may be scaled by.
+   */
+  private static final int MAX_SHIFT = 16;
+
+  private final double[][] weights;
+  private final int size;
+
+  // integer form of the kernel, null when it is not dyadic
+  private final int[][] intWeights;
+  private final int shift;
+
+  // separable form of the kernel, null when it is not separable
+  private final double[] column;
+  private final double[] row;
+  private final int[] intColumn;
+  private final int[] intRow;
+  private final int columnShift;
+  private final int rowShift;
+
+  // whether the sum is truncated toward zero after every tap
+  private final boolean truncating;
+
+  // shift form of a truncating kernel, the weight at (i, j) is 2^-(shiftColumn[i] + shiftRow[j]),
+  // null when the weights are not of that form
+  private final int[] shiftColumn;
+  private final int[] shiftRow;
+
+  /**
+   * Constructs a kernel from the given weights, which are copied.
+   *
+   * @param weights the square weights of the kernel, with an odd number of rows.
+   * @throws IllegalArgumentException if the weights are not square and odd sized.
+   */
+  public Kernel(double[][] weights) throws IllegalArgumentException {
+    this(weights, false);
+  }
+
+  /**
+   * Constructs a kernel from the given weights, which are copied.
+   *
+   * @param weights    the square weights of the kernel, with an odd number of rows.
+   * @param truncating whether the sum is truncated toward zero after every tap, in row order,
+   *                   which needs dyadic weights.
+   * @throws IllegalArgumentException if the weights are not square and odd sized, or are not
+   *                                  dyadic for a truncating kernel.
+   */
+  Kernel(double[][] weights, boolean truncating) throws IllegalArgumentException {
+    if (weights == null || weights.length % 2 == 0) {
+      throw new IllegalArgumentException("Kernel must have an odd size");
+    }
+    this.size = weights.length;
+    this.weights = new double[size][];
+    for (int i = 0; i < size; i++) {
+      if (weights[i] == null || weights[i].length != size) {
+        throw new IllegalArgumentException("Kernel must be square");
+      }
+      for (double weight : weights[i]) {
+        if (Double.isNaN(weight) || Double.isInfinite(weight)) {
+          throw new IllegalArgumentException("Kernel weights must be finite");
+        }
+      }
+      this.weights[i] = weights[i].clone();
+    }
+
+    double[] flat = new double[size * size];
+    for (int i = 0; i < size; i++) {
+      System.arraycopy(this.weights[i], 0, flat, i * size, size);
+    }
+    this.shift = dyadicShift(flat);
+    if (this.shift >= 0) {
+      this.intWeights = new int[size][size];
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          this.intWeights[i][j] = (int) Math.scalb(this.weights[i][j], this.shift);
+        }
+      }
+    } else {
+      this.intWeights = null;
+    }
+    if (truncating && this.intWeights == null) {
+      throw new IllegalArgumentException("A kernel truncating every tap must be dyadic");
+    }
+    this.truncating = truncating;
+    int[][] shifts = truncating ? this.shiftFactors() : null;
+    this.shiftColumn = shifts == null ? null : shifts[0];
+    this.shiftRow = shifts == null ? null : shifts[1];
+
+    double[][] factors = this.factor();
+    if (factors != null) {
+      this.column = factors[0];
+      this.row = factors[1];
+      int colShift = dyadicShift(this.column);
+      int rShift = dyadicShift(this.row);
+      if (this.shift >= 0 && colShift >= 0 && rShift >= 0 && colShift + rShift <= MAX_SHIFT
+              && 255L * absSum(this.column, colShift) * absSum(this.row, rShift)
+              < Integer.MAX_VALUE / 2) {
+        this.columnShift = colShift;
+        this.rowShift = rShift;
+        this.intColumn = toInts(this.column, colShift);
+        this.intRow = toInts(this.row, rShift);
+      } else {
+        this.columnShift = -1;
+        this.rowShift = -1;
+        this.intColumn = null;
+        this.intRow = null;
+      }
+    } else {
+      this.column = null;
+      this.row = null;
+      this.columnShift = -1;
+      this.rowShift = -1;
+      this.intColumn = null;
+      this.intRow = null;
+    }
+  }
+
+  /**
+   * Finds the smallest power of two that turns every weight into an integer, such that a sum of
+   * 255 times every weight still fits in an int.
+   *
+   * @param values the weights.
+   * @return the power of two, or -1 if there is none.
+   */
+  private static int dyadicShift(double[] values) {
+    for (int shift = 0; shift <= MAX_SHIFT; shift++) {
+      long total = 0;
+      boolean integral = true;
+      for (double value : values) {
+        double scaled = Math.scalb(value, shift);
+        if (scaled != Math.rint(scaled)) {
+          integral = false;
+          break;
+        }
+        total += Math.abs((long) scaled);
+      }
+      if (integral) {
+        return total * 255 < Integer.MAX_VALUE / 2 ? shift : -1;
+      }
+    }
+    return -1;
+  }
+
+  private static long absSum(double[] values, int shift) {
+    long total = 0;
+    for (double value : values) {
+      total += Math.abs((long) Math.scalb(value, shift));
+    }
+    return total;
+  }
+
+  private static int[] toInts(double[] values, int shift) {
+    int[] ints = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      ints[i] = (int) Math.scalb(values[i], shift);
+    }
+    return ints;
+  }
+
+  /**
+   * Splits the kernel into a column vector and a row vector whose outer product is the kernel.
+   *
+   * @return the column and the row, or null if the kernel is not separable.
+   */
+  private double[][] factor() {
+    int pivotRow = 0;
+    int pivotCol = 0;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (Math.abs(weights[i][j]) > Math.abs(weights[pivotRow][pivotCol])) {
+          pivotRow = i;
+          pivotCol = j;
+        }
+      }
+    }
+    double pivot = weights[pivotRow][pivotCol];
+    if (pivot == 0 || size == 1) {
+      return null;
+    }
+
+    double[] col = new double[size];
+    double[] r = new double[size];
+    for (int i = 0; i < size; i++) {
+      col[i] = weights[i][pivotCol];
+      r[i] = weights[pivotRow][i] / pivot;
+    }
+
+    double tolerance = Math.abs(pivot) * 1e-9;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (Math.abs(col[i] * r[j] - weights[i][j]) > tolerance) {
+          return null;
+        }
+      }
+    }
+    return new double[][]{col, r};
+  }
+
+  /**
+   * Splits the shifts of a kernel whose weights are powers of two in (0, 1] into a shift per row
+   * and a shift per column whose sums are the shifts of the weights.
+   *
+   * @return the shift of every row then the shift of every column, or null if there are none.
+   */
+  private int[][] shiftFactors() {
+    int[][] shifts = new int[size][size];
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        double weight = this.weights[i][j];
+        int exponent = Math.getExponent(weight);
+        if (weight <= 0 || weight > 1 || weight != Math.scalb(1.0, exponent)) {
+          return null;
+        }
+        shifts[i][j] = -exponent;
+      }
+    }
+    int[] col = new int[size];
+    int[] r = new int[size];
+    for (int i = 0; i < size; i++) {
+      col[i] = shifts[i][0];
+      r[i] = shifts[0][i] - shifts[0][0];
+    }
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        if (col[i] + r[j] != shifts[i][j]) {
+          return null;
+        }
+      }
+    }
+    return new int[][]{col, r};
+  }
+
+  /**
+   * Retrieves the number of rows (and columns) of the kernel.
+   *
+   * @return the size of the kernel.
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Retrieves the weight at the given position.
+   *
+   * @param row the row of the weight.
+   * @param col the column of the weight.
+   * @return the weight.
+   */
+  public double getWeight(int row, int col) {
+    return this.weights[row][col];
+  }
+
+  /**
+   * Whether the kernel can be evaluated as a column pass followed by a row pass.
+   *
+   * @return true if the kernel is separable.
+   */
+  public boolean isSeparable() {
+    return this.column != null;
+  }
+
+  /**
+   * Whether every weight is a multiple of a power of two, so the kernel can be evaluated with
+   * integer multiplies and a shift.
+   *
+   * @return true if the kernel is dyadic.
+   */
+  public boolean isDyadic() {
+    return this.intWeights != null;
+  }
+
+  /**
+   * Whether the sum is truncated toward zero after every tap instead of once at the end.
+   *
+   * @return true for the kernels of the blur and sharpen filters.
+   */
+  boolean isTruncating() {
+    return this.truncating;
+  }
+
+  /**
+   * Whether the kernel truncates every tap and its weights are powers of two whose shifts split
+   * into a shift per row and a shift per column, so it can run as a row pass and a column pass.
+   *
+   * @return true for the kernel of the blur filter.
+   */
+  boolean isShiftSeparable() {
+    return this.shiftColumn != null;
+  }
+
+  int[] getShiftColumn() {
+    return this.shiftColumn;
+  }
+
+  int[] getShiftRow() {
+    return this.shiftRow;
+  }
+
+  double[][] getWeights() {
+    return this.weights;
+  }
+
+  int[][] getIntWeights() {
+    return this.intWeights;
+  }
+
+  int getShift() {
+    return this.shift;
+  }
+
+  double[] getColumn() {
+    return this.column;
+  }
+
+  double[] getRow() {
+    return this.row;
+  }
+
+  int[] getIntColumn() {
+    return this.intColumn;
+  }
+
+  int[] getIntRow() {
+    return this.intRow;
+  }
+
+  /**
+   * Retrieves the shift of the integer separable form, -1 if the separable form is not dyadic.
+   *
+   * @return the total shift of the column and row passes.
+   */
+  int getSeparableShift() {
+    return this.intColumn == null ? -1 : this.columnShift + this.rowShift;
+  }
+}
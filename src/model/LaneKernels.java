@@ -0,0 +1,96 @@
+package model;
+
+/**
+ * The lane-wise pixel kernels that run on the incubating Vector API. Each method gives exactly
+ * the results of the plain lane-wise loop it stands for.
+ *
+ * <p>The implementation, VectorKernels, lives in the vector source folder and is compiled on its
+ * own with --add-modules jdk.incubator.vector, so the rest of the program builds without the
+ * module. Vectorization loads it by name when the class and the module are both present.
+ */
+interface LaneKernels {
+  /**
+   * Retrieves the number of ints in one vector.
+   *
+   * @return the number of lanes.
+   */
+  int lanes();
+
+  /**
+   * Adds the value to every channel of the packed pixels in [from, to) of the source, clamping
+   * to [0, 255], and writes them into the same positions of the destination.
+   *
+   * @param src   the source pixels.
+   * @param dst   the destination pixels, it may be the source.
+   * @param from  the first index.
+   * @param to    one past the last index.
+   * @param value the amount to add, in [-256, 256].
+   */
+  void brighten(int[] src, int[] dst, int from, int to, int value);
+
+  /**
+   * Applies a color matrix to the packed pixels in [from, to) of the source, writing into the
+   * same positions of the destination. The products are taken and added in doubles in the order
+   * of ColorMatrix, then truncated and clamped to [0, 255].
+   *
+   * @param src    the source pixels.
+   * @param dst    the destination pixels, it may be the source.
+   * @param from   the first index.
+   * @param to     one past the last index.
+   * @param matrix the nine entries of the matrix, row major.
+   */
+  void colorMatrix(int[] src, int[] dst, int from, int to, double[] matrix);
+
+  /**
+   * Adds the source times the weight to the destination, element by element.
+   *
+   * @param dst     the sums.
+   * @param dstFrom the index of the first sum.
+   * @param src     the values.
+   * @param srcFrom the index of the first value.
+   * @param weight  the weight of every value.
+   * @param length  the number of elements.
+   */
+  void multiplyAdd(int[] dst, int dstFrom, int[] src, int srcFrom, int weight, int length);
+
+  /**
+   * Adds the source times the weight to the destination, element by element, where both are
+   * scaled by 2^shift, and truncates each sum toward zero back to an integer.
+   *
+   * @param dst     the sums, integers.
+   * @param dstFrom the index of the first sum.
+   * @param src     the values.
+   * @param srcFrom the index of the first value.
+   * @param weight  the weight of every value, scaled by 2^shift.
+   * @param shift   the shift of the weight.
+   * @param length  the number of elements.
+   */
+  void multiplyAddTruncating(int[] dst, int dstFrom, int[] src, int srcFrom, int weight,
+                             int shift, int length);
+
+  /**
+   * Adds the source shifted right to the destination, element by element.
+   *
+   * @param dst     the sums.
+   * @param dstFrom the index of the first sum.
+   * @param src     the values.
+   * @param srcFrom the index of the first value.
+   * @param shift   the shift of every value.
+   * @param length  the number of elements.
+   */
+  void shiftAdd(int[] dst, int dstFrom, int[] src, int srcFrom, int shift, int length);
+
+  /**
+   * Shifts the channel sums right, clamps them to [0, 255] and packs them into pixels.
+   *
+   * @param red     the red sums.
+   * @param green   the green sums.
+   * @param blue    the blue sums.
+   * @param shift   the shift of the sums.
+   * @param dst     the pixels.
+   * @param dstFrom the index of the first pixel.
+   * @param length  the number of pixels, the sums start at 0.
+   */
+  void packShifted(int[] red, int[] green, int[] blue, int shift, int[] dst, int dstFrom,
+                   int length);
+}
@@ -0,0 +1,385 @@
+package model;
+
+/**
+ * A point operation compiled into 256 entry tables, one per channel, so applying it to a pixel
+ * is three table reads instead of arithmetic, branches and clamping.
+ *
+ * <p>A table works in one of four ways. Per channel tables map each channel on its own, which
+ * is how brighten works. Sum tables add up the three table values and divide the sum by a fixed
+ * divisor into a gray level, which covers the weighted grayscale methods, and the division is an
+ * exact multiply and shift worked out when the table is built. Weight tables hold the products
+ * of each level and a fractional weight as doubles, and truncate their sum to the gray level,
+ * which gives luma exactly as Pixel computes it. Max tables take the largest of the three table
+ * values as the gray level.
+ *
+ * <p>A per channel table followed by any other table composes into a single table, and a gray
+ * table followed by a per channel table whose three tables are equal folds the second table into
+ * the first one's gray level.
+ *
+ * <p>Brighten tables remember their offset, so when Vectorization is on they run as a lane-wise
+ * add and saturate instead of table reads, on the Vector API when Vectorization has its kernels.
+ *
+ * <p>The histogram of the output of a brighten table follows from the histogram of its input,
+ * as does the histogram of a gray table whose gray level is one component or the intensity.
+ */
+final class LookupTable implements PointOperation {
+  private static final int PER_CHANNEL = 0;
+  private static final int SUM = 1;
+  private static final int MAX = 2;
+  private static final int WEIGHTED = 3;
+
+  // the largest sum a sum table may produce for the division below to be exact
+  private static final int MAX_SUM = 1 << 22;
+  private static final int DIVIDE_SHIFT = 40;
+
+  // the offset of a table that only adds to each channel
+  private static final int NO_OFFSET = Integer.MIN_VALUE;
+
+  // the histograms a gray level can follow
+  private static final int NO_SOURCE = -1;
+  private static final int RED_SOURCE = 0;
+  private static final int GREEN_SOURCE = 1;
+  private static final int BLUE_SOURCE = 2;
+  private static final int INTENSITY_SOURCE = 3;
+
+  private final int[] red;
+  private final int[] green;
+  private final int[] blue;
+  // the per channel products of a weight table, null for the other tables
+  private final double[] redWeights;
+  private final double[] greenWeights;
+  private final double[] blueWeights;
+  private final int combine;
+  private final long magic;
+  private final int divisor;
+  // applied to the gray level of a gray table, null for none
+  private final int[] post;
+  // what a per channel table adds to each channel before clamping, NO_OFFSET for none
+  private final int offset;
+  // the input histogram the gray level of a gray table is counted by, NO_SOURCE for none
+  private final int source;
+
+  private LookupTable(int[] red, int[] green, int[] blue, int combine, int divisor) {
+    this(red, green, blue, combine, divisor, null, NO_OFFSET, NO_SOURCE);
+  }
+
+  private LookupTable(int[] red, int[] green, int[] blue, int combine, int divisor,
+                      int[] post, int offset, int source) {
+    this.red = red;
+    this.green = green;
+    this.blue = blue;
+    this.redWeights = null;
+    this.greenWeights = null;
+    this.blueWeights = null;
+    this.combine = combine;
+    this.divisor = divisor;
+    this.post = post;
+    this.offset = offset;
+    this.source = source;
+    this.magic = ((1L << DIVIDE_SHIFT) + divisor - 1) / divisor;
+    // the multiply and shift equals the division as long as the rounding error of the magic
+    // number times the largest sum stays below one
+    if (combine == SUM && (MAX_SUM * (this.magic * divisor - (1L << DIVIDE_SHIFT))
+            >= (1L << DIVIDE_SHIFT) || red[255] + green[255] + blue[255] > MAX_SUM)) {
+      throw new IllegalArgumentException("Divisor too large for a lookup table: " + divisor);
+    }
+  }
+
+  private LookupTable(double[] redWeights, double[] greenWeights, double[] blueWeights,
+                      int[] post) {
+    int[] identity = LookupTable.scaled(1);
+    this.red = identity;
+    this.green = identity;
+    this.blue = identity;
+    this.redWeights = redWeights;
+    this.greenWeights = greenWeights;
+    this.blueWeights = blueWeights;
+    this.combine = WEIGHTED;
+    this.divisor = 1;
+    this.magic = 1L << DIVIDE_SHIFT;
+    this.post = post;
+    this.offset = NO_OFFSET;
+    this.source = NO_SOURCE;
+  }
+
+  /**
+   * Compiles brightening by the given amount, clamped to [0, 255].
+   *
+   * @param value the amount to brighten by, negative to darken.
+   * @return the table.
+   */
+  static LookupTable brighten(int value) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = PackedImage.clamp(i + value);
+    }
+    return new LookupTable(table, table, table, PER_CHANNEL, 1, null,
+            Math.max(-256, Math.min(256, value)), NO_SOURCE);
+  }
+
+  /**
+   * Compiles one of the methods of converting to grayscale.
+   *
+   * @param type the method of converting to greyscale.
+   * @return the table.
+   * @throws IllegalArgumentException if the type is null.
+   */
+  static LookupTable grayscale(GrayScale type) throws IllegalArgumentException {
+    if (type == null) {
+      throw new IllegalArgumentException("Not valid type of greyscale method");
+    }
+    switch (type) {
+      case Intensity:
+        return LookupTable.weighted(1, 1, 1, 3, INTENSITY_SOURCE);
+      case Luma:
+        // summed in the order Pixel sums them, so the doubles round the same way
+        return new LookupTable(LookupTable.products(.2126), LookupTable.products(.7152),
+                LookupTable.products(.0722), null);
+      case Value:
+        int[] identity = LookupTable.scaled(1);
+        return new LookupTable(identity, identity, identity, MAX, 1);
+      case Red:
+        return LookupTable.weighted(1, 0, 0, 1, RED_SOURCE);
+      case Green:
+        return LookupTable.weighted(0, 1, 0, 1, GREEN_SOURCE);
+      case Blue:
+        return LookupTable.weighted(0, 0, 1, 1, BLUE_SOURCE);
+      default:
+        throw new IllegalArgumentException("Not valid type of greyscale method");
+    }
+  }
+
+  private static LookupTable weighted(int redWeight, int greenWeight, int blueWeight,
+                                      int divisor, int source) {
+    return new LookupTable(LookupTable.scaled(redWeight), LookupTable.scaled(greenWeight),
+            LookupTable.scaled(blueWeight), SUM, divisor, null, NO_OFFSET, source);
+  }
+
+  private static int[] scaled(int weight) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = i * weight;
+    }
+    return table;
+  }
+
+  private static double[] products(double weight) {
+    double[] table = new double[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = weight * i;
+    }
+    return table;
+  }
+
+  private static double[] compose(int[] first, double[] second) {
+    double[] table = new double[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = second[first[i]];
+    }
+    return table;
+  }
+
+  /**
+   * Whether the table turns every pixel gray.
+   *
+   * @return true if the output channels are always equal.
+   */
+  boolean isGray() {
+    return this.combine != PER_CHANNEL;
+  }
+
+  /**
+   * Composes this table with the next operation into one table when that is exact, which is the
+   * case when either table maps each channel on its own.
+   *
+   * @param next the operation to apply after this one.
+   * @return the combined operation.
+   */
+  @Override
+  public PointOperation then(PointOperation next) {
+    if (!(next instanceof LookupTable)) {
+      return PointOperation.super.then(next);
+    }
+    LookupTable after = (LookupTable) next;
+    if (this.combine == PER_CHANNEL && after.combine == WEIGHTED) {
+      return new LookupTable(LookupTable.compose(this.red, after.redWeights),
+              LookupTable.compose(this.green, after.greenWeights),
+              LookupTable.compose(this.blue, after.blueWeights), after.post);
+    }
+    if (this.combine == PER_CHANNEL) {
+      return new LookupTable(LookupTable.compose(this.red, after.red),
+              LookupTable.compose(this.green, after.green),
+              LookupTable.compose(this.blue, after.blue), after.combine, after.divisor,
+              after.post, NO_OFFSET, NO_SOURCE);
+    }
+    if (after.combine == PER_CHANNEL && after.red == after.green && after.green == after.blue) {
+      int[] gray = this.post == null ? after.red : LookupTable.compose(this.post, after.red);
+      if (this.combine == WEIGHTED) {
+        return new LookupTable(this.redWeights, this.greenWeights, this.blueWeights, gray);
+      }
+      return new LookupTable(this.red, this.green, this.blue, this.combine, this.divisor, gray,
+              NO_OFFSET, this.source);
+    }
+    return PointOperation.super.then(next);
+  }
+
+  /**
+   * Works out the histogram of the output from the histogram of the input. The components of a
+   * per channel table are remapped level by level, but the intensity only follows when the table
+   * adds the same offset to every channel and no pixel clips. Every histogram of a gray table is
+   * the histogram of its gray level, which is known when that level is one component or the
+   * intensity of the input.
+   *
+   * @param input the histogram of the input.
+   * @return the histogram of the output, or null if it depends on more than the input histogram.
+   */
+  @Override
+  public Histogram remap(Histogram input) {
+    if (this.combine == PER_CHANNEL) {
+      int value = this.offset;
+      if (value == NO_OFFSET || clips(input.getRedCounts(), value)
+              || clips(input.getGreenCounts(), value) || clips(input.getBlueCounts(), value)) {
+        return null;
+      }
+      return new Histogram(remap(input.getRedCounts(), this.red),
+              remap(input.getGreenCounts(), this.green), remap(input.getBlueCounts(), this.blue),
+              remap(input.getIntensityCounts(), this.red));
+    }
+
+    int[] gray;
+    switch (this.source) {
+      case RED_SOURCE:
+        gray = input.getRedCounts();
+        break;
+      case GREEN_SOURCE:
+        gray = input.getGreenCounts();
+        break;
+      case BLUE_SOURCE:
+        gray = input.getBlueCounts();
+        break;
+      case INTENSITY_SOURCE:
+        gray = input.getIntensityCounts();
+        break;
+      default:
+        return null;
+    }
+    if (this.post != null) {
+      gray = remap(gray, this.post);
+    }
+    // the histograms are never changed, so the four of them can share the counts
+    return new Histogram(gray, gray, gray, gray);
+  }
+
+  /**
+   * Whether adding the offset pushes any counted level outside [0, 255].
+   */
+  private static boolean clips(int[] counts, int offset) {
+    for (int level = 0; level < counts.length; level++) {
+      if (counts[level] != 0 && (level + offset < 0 || level + offset > 255)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int[] remap(int[] counts, int[] table) {
+    int[] remapped = new int[counts.length];
+    for (int level = 0; level < counts.length; level++) {
+      remapped[table[level]] += counts[level];
+    }
+    return remapped;
+  }
+
+  private static int[] compose(int[] first, int[] second) {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      table[i] = second[first[i]];
+    }
+    return table;
+  }
+
+  /**
+   * Applies the table to one packed color.
+   *
+   * @param rgb the packed color.
+   * @return the packed result.
+   */
+  @Override
+  public int apply(int rgb) {
+    int r = this.red[(rgb >> 16) & 0xff];
+    int g = this.green[(rgb >> 8) & 0xff];
+    int b = this.blue[rgb & 0xff];
+    if (this.combine == PER_CHANNEL) {
+      return (r << 16) | (g << 8) | b;
+    }
+    int gray;
+    if (this.combine == SUM) {
+      gray = (int) (((r + g + b) * this.magic) >>> DIVIDE_SHIFT);
+    } else if (this.combine == WEIGHTED) {
+      gray = (int) (this.redWeights[(rgb >> 16) & 0xff] + this.greenWeights[(rgb >> 8) & 0xff]
+              + this.blueWeights[rgb & 0xff]);
+    } else {
+      gray = Math.max(Math.max(r, g), b);
+    }
+    if (this.post != null) {
+      gray = this.post[gray];
+    }
+    return (gray << 16) | (gray << 8) | gray;
+  }
+
+  /**
+   * Applies the table to the packed pixels in [from, to) of the source, writing into the same
+   * positions of the destination.
+   *
+   * @param src  the source pixels.
+   * @param dst  the destination pixels, it may be the source.
+   * @param from the first index.
+   * @param to   one past the last index.
+   */
+  @Override
+  public void apply(int[] src, int[] dst, int from, int to) {
+    int[] redTable = this.red;
+    int[] greenTable = this.green;
+    int[] blueTable = this.blue;
+    LaneKernels vectors = Vectorization.kernels();
+    if (this.offset != NO_OFFSET && vectors != null) {
+      vectors.brighten(src, dst, from, to, this.offset);
+    } else if (this.offset != NO_OFFSET && Vectorization.isEnabled()) {
+      int value = this.offset;
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        dst[i] = (Vectorization.saturate(((rgb >> 16) & 0xff) + value) << 16)
+                | (Vectorization.saturate(((rgb >> 8) & 0xff) + value) << 8)
+                | Vectorization.saturate((rgb & 0xff) + value);
+      }
+    } else if (this.combine == PER_CHANNEL) {
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        dst[i] = (redTable[(rgb >> 16) & 0xff] << 16) | (greenTable[(rgb >> 8) & 0xff] << 8)
+                | blueTable[rgb & 0xff];
+      }
+    } else if (this.combine == SUM && this.post == null) {
+      long m = this.magic;
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        int gray = (int) (((redTable[(rgb >> 16) & 0xff] + greenTable[(rgb >> 8) & 0xff]
+                + blueTable[rgb & 0xff]) * m) >>> DIVIDE_SHIFT);
+        dst[i] = (gray << 16) | (gray << 8) | gray;
+      }
+    } else if (this.combine == WEIGHTED && this.post == null) {
+      double[] redWeights = this.redWeights;
+      double[] greenWeights = this.greenWeights;
+      double[] blueWeights = this.blueWeights;
+      for (int i = from; i < to; i++) {
+        int rgb = src[i];
+        int gray = (int) (redWeights[(rgb >> 16) & 0xff] + greenWeights[(rgb >> 8) & 0xff]
+                + blueWeights[rgb & 0xff]);
+        dst[i] = (gray << 16) | (gray << 8) | gray;
+      }
+    } else {
+      for (int i = from; i < to; i++) {
+        dst[i] = this.apply(src[i]);
+      }
+    }
+  }
+}
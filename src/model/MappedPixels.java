@@ -0,0 +1,161 @@
+package model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The pixels of a raw PPM (P6) or PGM (P5) file with one byte samples, read straight from the
+ * file mapped into memory instead of from the heap. Pages are read by the operating system as
+ * they are touched and stay in its page cache between loads of the same file.
+ *
+ * <p>The mapping is read only. A file larger than one mapping allows is mapped as several bands
+ * of whole rows. The pixels follow the file, so it must not be changed while they are in use.
+ */
+final class MappedPixels {
+  private static final long MAX_BAND = Integer.MAX_VALUE;
+
+  private final Path path;
+  private final ByteBuffer[] bands;
+  private final int width;
+  private final int height;
+  private final int channels;
+  private final int rowsPerBand;
+
+  private MappedPixels(Path path, ByteBuffer[] bands, int width, int height, int channels,
+                       int rowsPerBand) {
+    this.path = path;
+    this.bands = bands;
+    this.width = width;
+    this.height = height;
+    this.channels = channels;
+    this.rowsPerBand = rowsPerBand;
+  }
+
+  /**
+   * Maps the pixels of a raw file.
+   *
+   * @param path   the path of the file.
+   * @param offset the position of the first pixel, just past the header.
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @param gray   whether each pixel is one gray level rather than three samples.
+   * @return the mapped pixels.
+   * @throws IOException              if the file cannot be mapped.
+   * @throws IllegalArgumentException if the file is too short for the image.
+   */
+  static MappedPixels map(Path path, long offset, int width, int height, boolean gray)
+          throws IOException {
+    int channels = gray ? 1 : 3;
+    long rowBytes = (long) width * channels;
+    if (rowBytes > MAX_BAND) {
+      throw new IllegalArgumentException("Invalid PPM file: row too long to map");
+    }
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      if (channel.size() - offset < rowBytes * height) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+      int rowsPerBand = rowBytes == 0 ? Math.max(height, 1)
+              : (int) Math.min(Math.max(height, 1), MAX_BAND / rowBytes);
+      ByteBuffer[] bands = new ByteBuffer[(height + rowsPerBand - 1) / rowsPerBand];
+      for (int band = 0; band < bands.length; band++) {
+        int rows = Math.min(rowsPerBand, height - band * rowsPerBand);
+        bands[band] = channel.map(FileChannel.MapMode.READ_ONLY,
+                offset + band * rowsPerBand * rowBytes, rows * rowBytes);
+      }
+      // the mapping stays valid once the channel is closed
+      return new MappedPixels(path.toAbsolutePath(), bands, width, height, channels,
+              rowsPerBand);
+    }
+  }
+
+  /**
+   * Whether the pixels are mapped from the file at the given path.
+   *
+   * @param other the path of a file.
+   * @return true if it is the mapped file.
+   */
+  boolean isMappedFrom(Path other) {
+    try {
+      return Files.exists(other) && Files.isSameFile(this.path, other);
+    } catch (IOException e) {
+      return this.path.equals(other.toAbsolutePath());
+    }
+  }
+
+  /**
+   * Whether each pixel is one gray level.
+   *
+   * @return true for a PGM file.
+   */
+  boolean isGray() {
+    return this.channels == 1;
+  }
+
+  /**
+   * Reads the packed color at the given position.
+   *
+   * @param row the row of the pixel.
+   * @param col the column of the pixel.
+   * @return the color packed as 0xRRGGBB.
+   */
+  int getRGB(int row, int col) {
+    if (row < 0 || row >= this.height || col < 0 || col >= this.width) {
+      throw new IndexOutOfBoundsException("No pixel at " + row + ", " + col);
+    }
+    ByteBuffer band = this.bands[row / this.rowsPerBand];
+    int p = ((row % this.rowsPerBand) * this.width + col) * this.channels;
+    if (this.channels == 1) {
+      int level = band.get(p) & 0xff;
+      return (level << 16) | (level << 8) | level;
+    }
+    return ((band.get(p) & 0xff) << 16) | ((band.get(p + 1) & 0xff) << 8)
+            | (band.get(p + 2) & 0xff);
+  }
+
+  /**
+   * Decodes every pixel into packed colors, a row at a time.
+   *
+   * @param pixels the packed pixels to fill, width * height long.
+   */
+  void decode(int[] pixels) {
+    byte[] row = new byte[this.width * this.channels];
+    for (int r = 0; r < this.height; r++) {
+      // a view of its own, so reads from other threads keep their positions
+      ByteBuffer band = this.bands[r / this.rowsPerBand].duplicate();
+      band.position((r % this.rowsPerBand) * row.length);
+      band.get(row);
+      int i = r * this.width;
+      if (this.channels == 1) {
+        for (int p = 0; p < row.length; p++, i++) {
+          int level = row[p] & 0xff;
+          pixels[i] = (level << 16) | (level << 8) | level;
+        }
+      } else {
+        for (int p = 0; p < row.length; p += 3, i++) {
+          pixels[i] = ((row[p] & 0xff) << 16) | ((row[p + 1] & 0xff) << 8) | (row[p + 2] & 0xff);
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes the samples as they are in the file, which is the pixel data of a raw file of the same
+   * kind.
+   *
+   * @param channel the channel to write to.
+   * @throws IOException if the channel cannot be written.
+   */
+  void writeTo(WritableByteChannel channel) throws IOException {
+    for (ByteBuffer band : this.bands) {
+      ByteBuffer data = band.duplicate();
+      while (data.hasRemaining()) {
+        channel.write(data);
+      }
+    }
+  }
+}
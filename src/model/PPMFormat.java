@@ -0,0 +1,8 @@
+package model;
+
+/**
+ * The possible ways of writing PPM files: Plain writes text (P3), Raw writes bytes (P6).
+ */
+public enum PPMFormat {
+  Plain, Raw
+}
@@ -0,0 +1,329 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the tokens of a PPM file straight from the bytes of a stream, through one reused buffer.
+ * Numbers are parsed digit by digit without building strings, and comments, which run from a #
+ * to the end of the line, are skipped wherever whitespace may appear.
+ *
+ * <p>The pixels of plain (P3 and P2) files are numbers, and the pixels of raw (P6 and P5) files
+ * are bytes, one per sample when the maximum value is below 256 and two otherwise. Samples are
+ * scaled from the maximum value of the file to 255.
+ */
+final class PPMReader implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final InputStream in;
+  private final byte[] buffer;
+  private int position;
+  private int limit;
+  // the bytes read from the stream so far, buffered or not
+  private long consumed;
+  // the last scaling table built, kept for reads a row at a time
+  private int[] levels;
+  private int levelsMaxValue;
+
+  /**
+   * Constructs a reader of the given stream, which is closed with the reader.
+   *
+   * @param in the stream to read.
+   */
+  PPMReader(InputStream in) {
+    if (in == null) {
+      throw new IllegalArgumentException("Null stream");
+    }
+    this.in = in;
+    this.buffer = new byte[BUFFER_SIZE];
+  }
+
+  /**
+   * Reads the next byte.
+   *
+   * @return the byte, or -1 at the end of the stream.
+   * @throws IOException if the stream cannot be read.
+   */
+  private int read() throws IOException {
+    if (this.position == this.limit) {
+      this.limit = this.in.read(this.buffer, 0, this.buffer.length);
+      this.position = 0;
+      if (this.limit <= 0) {
+        this.limit = 0;
+        return -1;
+      }
+      this.consumed += this.limit;
+    }
+    return this.buffer[this.position++] & 0xff;
+  }
+
+  /**
+   * Skips whitespace and comments.
+   *
+   * @return the first byte after them, or -1 at the end of the stream.
+   * @throws IOException if the stream cannot be read.
+   */
+  private int skip() throws IOException {
+    int c = this.read();
+    while (true) {
+      if (c == '#') {
+        while (c != '\n' && c != '\r' && c != -1) {
+          c = this.read();
+        }
+      } else if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\f' || c == 0x0b) {
+        c = this.read();
+      } else {
+        return c;
+      }
+    }
+  }
+
+  /**
+   * Reads the next token, such as the magic number at the start of the file.
+   *
+   * @return the token.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream has no more tokens.
+   */
+  String readToken() throws IOException {
+    int c = this.skip();
+    if (c == -1) {
+      throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+    }
+    StringBuilder token = new StringBuilder();
+    while (c != -1 && c > ' ' && c != '#') {
+      token.append((char) c);
+      c = this.read();
+    }
+    if (c == '#') {
+      this.position--;
+    }
+    return token.toString();
+  }
+
+  /**
+   * Reads the next non negative decimal number.
+   *
+   * @return the number.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the next token is not a number or there is none.
+   */
+  int readInt() throws IOException {
+    int c = this.skip();
+    if (c < '0' || c > '9') {
+      throw new IllegalArgumentException(c == -1 ? "Invalid PPM file: unexpected end of file"
+              : "Invalid PPM file: expected a number but found '" + (char) c + "'");
+    }
+    int value = 0;
+    while (c >= '0' && c <= '9') {
+      if (value > (Integer.MAX_VALUE - 9) / 10) {
+        throw new IllegalArgumentException("Invalid PPM file: number too large");
+      }
+      value = value * 10 + (c - '0');
+      c = this.read();
+    }
+    if (c == '#') {
+      // the comment belongs to what follows the number
+      this.position--;
+    } else if (c != -1 && c > ' ') {
+      throw new IllegalArgumentException("Invalid PPM file: expected a number but found '"
+              + (char) c + "'");
+    }
+    return value;
+  }
+
+  /**
+   * Makes sure at least the given number of bytes are buffered, moving the unread ones to the
+   * start of the buffer.
+   *
+   * @param needed the number of bytes needed, at most the size of the buffer.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream ends first.
+   */
+  private void fill(int needed) throws IOException {
+    int remaining = this.limit - this.position;
+    System.arraycopy(this.buffer, this.position, this.buffer, 0, remaining);
+    this.position = 0;
+    this.limit = remaining;
+    while (this.limit < needed) {
+      int read = this.in.read(this.buffer, this.limit, this.buffer.length - this.limit);
+      if (read < 0) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+      this.limit += read;
+      this.consumed += read;
+    }
+  }
+
+  /**
+   * Retrieves the position in the stream of the next byte to be read, which after the header of
+   * a raw file is where its pixels start.
+   *
+   * @return the number of bytes read so far.
+   */
+  long position() {
+    return this.consumed - (this.limit - this.position);
+  }
+
+  /**
+   * Skips the given number of bytes, seeking past them when the stream allows it.
+   *
+   * @param count the number of bytes to skip.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream ends first.
+   */
+  void skipBytes(long count) throws IOException {
+    int buffered = (int) Math.min(count, this.limit - this.position);
+    this.position += buffered;
+    count -= buffered;
+    while (count > 0) {
+      long skipped = this.in.skip(count);
+      if (skipped > 0) {
+        this.consumed += skipped;
+        count -= skipped;
+      } else if (this.read() == -1) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      } else {
+        count--;
+      }
+    }
+  }
+
+  /**
+   * Skips the given number of tokens, such as the samples of plain rows outside a region, by
+   * scanning for the whitespace and comments between them without parsing the numbers.
+   *
+   * @param count the number of tokens to skip.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream ends first.
+   */
+  void skipTokens(long count) throws IOException {
+    for (; count > 0; count--) {
+      int c = this.skip();
+      if (c == -1) {
+        throw new IllegalArgumentException("Invalid PPM file: unexpected end of file");
+      }
+      while (c != -1 && c > ' ' && c != '#') {
+        c = this.read();
+      }
+      if (c == '#') {
+        this.position--;
+      }
+    }
+  }
+
+  /**
+   * Builds the table scaling each sample up to the given maximum value to [0, 255], rounding to
+   * the nearest level. Samples above the maximum value become 255. The table is kept for the next
+   * call with the same arguments.
+   *
+   * @param maxValue the maximum value of the file.
+   * @param size     the number of samples in the table.
+   * @return the table.
+   * @throws IllegalArgumentException if the maximum value is not in [1, 65535].
+   */
+  private int[] levels(int maxValue, int size) throws IllegalArgumentException {
+    if (maxValue < 1 || maxValue > 65535) {
+      throw new IllegalArgumentException("Invalid PPM file: maximum value " + maxValue);
+    }
+    if (this.levels != null && this.levelsMaxValue == maxValue && this.levels.length == size) {
+      return this.levels;
+    }
+    int[] levels = new int[size];
+    for (int sample = 0; sample < size; sample++) {
+      levels[sample] = sample >= maxValue ? 255
+              : (int) ((sample * 255L + maxValue / 2) / maxValue);
+    }
+    this.levels = levels;
+    this.levelsMaxValue = maxValue;
+    return levels;
+  }
+
+  /**
+   * Reads plain pixels into [from, to) of the packed pixels, three numbers each for P3 or one
+   * gray level each for P2. With a maximum value of 255 components above it are clamped.
+   *
+   * @param pixels   the packed pixels to fill.
+   * @param from     the index of the first pixel to read.
+   * @param to       one past the index of the last pixel to read.
+   * @param gray     whether each pixel is one gray level.
+   * @param maxValue the maximum value of the file.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream ends early or holds something else.
+   */
+  void readPlainPixels(int[] pixels, int from, int to, boolean gray, int maxValue)
+          throws IOException {
+    int[] levels = maxValue == 255 ? null : this.levels(maxValue, maxValue + 1);
+    for (int i = from; i < to; i++) {
+      int r = this.readInt();
+      int g = gray ? r : this.readInt();
+      int b = gray ? r : this.readInt();
+      if (levels != null) {
+        r = levels[Math.min(r, maxValue)];
+        g = levels[Math.min(g, maxValue)];
+        b = levels[Math.min(b, maxValue)];
+      }
+      pixels[i] = PackedImage.pack(r, g, b);
+    }
+  }
+
+  /**
+   * Reads raw pixels into [from, to) of the packed pixels, three samples each for P6 or one gray
+   * level each for P5. The single whitespace byte after the maximum value must already be read,
+   * which readInt does.
+   *
+   * @param pixels   the packed pixels to fill.
+   * @param from     the index of the first pixel to read.
+   * @param to       one past the index of the last pixel to read.
+   * @param gray     whether each pixel is one gray level.
+   * @param maxValue the maximum value of the file.
+   * @throws IOException              if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream ends early.
+   */
+  void readRawPixels(int[] pixels, int from, int to, boolean gray, int maxValue)
+          throws IOException {
+    int sampleBytes = maxValue < 256 ? 1 : 2;
+    int pixelBytes = (gray ? 1 : 3) * sampleBytes;
+    int[] levels = maxValue == 255 ? null
+            : this.levels(maxValue, sampleBytes == 1 ? 256 : 65536);
+    byte[] b = this.buffer;
+
+    int i = from;
+    while (i < to) {
+      if (this.limit - this.position < pixelBytes) {
+        this.fill(pixelBytes);
+      }
+      // every whole pixel in the buffer
+      int end = Math.min(to, i + (this.limit - this.position) / pixelBytes);
+      int p = this.position;
+      if (levels == null && !gray) {
+        for (; i < end; i++, p += 3) {
+          pixels[i] = ((b[p] & 0xff) << 16) | ((b[p + 1] & 0xff) << 8) | (b[p + 2] & 0xff);
+        }
+      } else if (levels == null) {
+        for (; i < end; i++, p++) {
+          int level = b[p] & 0xff;
+          pixels[i] = (level << 16) | (level << 8) | level;
+        }
+      } else {
+        for (; i < end; i++, p += pixelBytes) {
+          int r = levels[sample(b, p, sampleBytes)];
+          int g = gray ? r : levels[sample(b, p + sampleBytes, sampleBytes)];
+          int bl = gray ? r : levels[sample(b, p + 2 * sampleBytes, sampleBytes)];
+          pixels[i] = (r << 16) | (g << 8) | bl;
+        }
+      }
+      this.position = p;
+    }
+  }
+
+  private static int sample(byte[] b, int p, int sampleBytes) {
+    return sampleBytes == 1 ? b[p] & 0xff : ((b[p] & 0xff) << 8) | (b[p + 1] & 0xff);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.in.close();
+  }
+}
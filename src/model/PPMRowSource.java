@@ -0,0 +1,72 @@
+package model;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Reads the rows of a PPM or PGM file, plain or raw, straight from the file as they are asked
+ * for. Only the buffer of the reader is held, whatever the size of the image.
+ */
+final class PPMRowSource implements RowSource {
+  private final PPMReader reader;
+  private final int width;
+  private final int height;
+  private final int maxValue;
+  private final boolean gray;
+  private final boolean raw;
+  private int next;
+
+  /**
+   * Opens the file and reads its header.
+   *
+   * @param filename the path of the file.
+   * @throws IOException              if the file cannot be read.
+   * @throws IllegalArgumentException if the file is not a PPM or PGM file.
+   */
+  PPMRowSource(String filename) throws IOException {
+    this.reader = new PPMReader(new FileInputStream(filename));
+    try {
+      String token = this.reader.readToken();
+      if (!token.equals("P3") && !token.equals("P6") && !token.equals("P2")
+              && !token.equals("P5")) {
+        throw new IllegalArgumentException("Invalid PPM file: " + filename);
+      }
+      this.width = this.reader.readInt();
+      this.height = this.reader.readInt();
+      this.maxValue = this.reader.readInt();
+      this.gray = token.equals("P2") || token.equals("P5");
+      this.raw = token.equals("P6") || token.equals("P5");
+    } catch (IOException | RuntimeException e) {
+      this.reader.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public int getWidth() {
+    return this.width;
+  }
+
+  @Override
+  public int getHeight() {
+    return this.height;
+  }
+
+  @Override
+  public int read(int[] pixels, int offset, int maxRows) throws IOException {
+    int rows = Math.min(maxRows, this.height - this.next);
+    int end = offset + rows * this.width;
+    if (this.raw) {
+      this.reader.readRawPixels(pixels, offset, end, this.gray, this.maxValue);
+    } else {
+      this.reader.readPlainPixels(pixels, offset, end, this.gray, this.maxValue);
+    }
+    this.next += rows;
+    return rows;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.reader.close();
+  }
+}
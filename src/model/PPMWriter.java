@@ -0,0 +1,266 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Writes a PackedImage as a PPM or PGM file without holding the encoded file in memory. Pixels
+ * are encoded into one of two reused buffers while a writer thread writes the other one through
+ * a FileChannel, so encoding the next rows overlaps writing the previous ones and memory stays at
+ * two buffers however large the image is. The writer threads are shared by every file and reused
+ * from one file to the next. A file that fits in one buffer gains nothing from the overlap, so it
+ * is encoded into a buffer of its own size and written on the calling thread.
+ *
+ * <p>Plain files write every sample on its own line, and gray files write the intensity of every
+ * pixel, which is the gray level itself for gray images. An image mapped from a raw file of the
+ * same kind is copied from the mapping without encoding.
+ *
+ * <p>A writer may also be given the pixels a band of rows at a time, for images that are never
+ * held whole.
+ */
+final class PPMWriter implements Closeable {
+  private static final int BUFFER_SIZE = 1 << 18;
+
+  // the most bytes one pixel takes, three samples of up to three digits and a newline
+  private static final int MAX_PIXEL_BYTES = 12;
+
+  // handed to the writer thread after the last buffer
+  private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+  // runs the writing side of every large file
+  private static final ExecutorService WRITERS = Executors.newCachedThreadPool(runnable -> {
+    Thread thread = new Thread(runnable, "ppm-writer");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  private final String filePath;
+  private final boolean raw;
+  private final boolean gray;
+  private final FileChannel channel;
+  private final BlockingQueue<ByteBuffer> free;
+  private final BlockingQueue<ByteBuffer> full;
+  private final IOException[] failure;
+  // null when the file is written on the calling thread
+  private final Future<?> writer;
+  private ByteBuffer buffer;
+
+  /**
+   * Creates the file, replacing it if it exists, and writes the header.
+   *
+   * @param filePath the path of the file.
+   * @param width    the width of the image.
+   * @param height   the height of the image.
+   * @param format   whether to write text (P3 or P2) or bytes (P6 or P5).
+   * @param gray     whether to write a grayscale PGM file instead of a PPM file.
+   * @throws IOException if the file cannot be created.
+   */
+  PPMWriter(String filePath, int width, int height, PPMFormat format, boolean gray)
+          throws IOException {
+    this.filePath = filePath;
+    this.raw = format == PPMFormat.Raw;
+    this.gray = gray;
+    this.failure = new IOException[1];
+    byte[] header = header(width, height, this.raw, gray);
+    long size = header.length + (long) width * height * (this.raw ? (gray ? 1 : 3)
+            : (gray ? 4 : MAX_PIXEL_BYTES));
+
+    this.channel = FileChannel.open(Paths.get(filePath), StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    if (size <= BUFFER_SIZE) {
+      this.free = null;
+      this.full = null;
+      this.writer = null;
+      // room for one more pixel, so the buffer never fills
+      this.buffer = ByteBuffer.allocate((int) size + MAX_PIXEL_BYTES);
+    } else {
+      this.free = new ArrayBlockingQueue<>(2);
+      this.full = new ArrayBlockingQueue<>(3);
+      this.free.add(ByteBuffer.allocate(BUFFER_SIZE));
+      this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      this.writer = WRITERS.submit(() -> drain(this.channel, this.full, this.free,
+              this.failure));
+    }
+    this.buffer.put(header);
+  }
+
+  private static byte[] header(int width, int height, boolean raw, boolean gray) {
+    String magic = gray ? (raw ? "P5" : "P2") : (raw ? "P6" : "P3");
+    return (magic + "\n" + width + " " + height + "\n255\n").getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * Writes the image to the file, replacing it if it exists.
+   *
+   * @param filePath the path of the file.
+   * @param image    the image to write.
+   * @param format   whether to write text (P3 or P2) or bytes (P6 or P5).
+   * @param gray     whether to write a grayscale PGM file instead of a PPM file.
+   * @throws IOException if the file cannot be written.
+   */
+  static void write(String filePath, PackedImage image, PPMFormat format, boolean gray)
+          throws IOException {
+    boolean raw = format == PPMFormat.Raw;
+
+    // a raw file mapped from elsewhere already holds the pixel data of a file of the same kind,
+    // as long as the image has not been decoded and the mapping dropped
+    MappedPixels mapped = image.getMapped();
+    Path path = Paths.get(filePath);
+    if (raw && mapped != null && mapped.isGray() == gray && !mapped.isMappedFrom(path)) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+              StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+        ByteBuffer head = ByteBuffer.wrap(header(image.getWidth(), image.getHeight(), raw, gray));
+        while (head.hasRemaining()) {
+          channel.write(head);
+        }
+        mapped.writeTo(channel);
+      }
+      return;
+    }
+
+    int[] pixels = image.getPixels();
+    try (PPMWriter writer = new PPMWriter(filePath, image.getWidth(), image.getHeight(), format,
+            gray)) {
+      writer.write(pixels, 0, pixels.length);
+    }
+  }
+
+  /**
+   * Writes the pixels in [from, to) after the ones written so far.
+   *
+   * @param pixels the packed pixels.
+   * @param from   the index of the first pixel to write.
+   * @param to     one past the index of the last pixel to write.
+   * @throws IOException if the file cannot be written.
+   */
+  void write(int[] pixels, int from, int to) throws IOException {
+    ByteBuffer buffer = this.buffer;
+    try {
+      for (int i = from; i < to; i++) {
+        if (buffer.remaining() < MAX_PIXEL_BYTES) {
+          buffer.flip();
+          this.full.put(buffer);
+          buffer = this.free.take();
+        }
+        encode(buffer, pixels[i], this.raw, this.gray);
+      }
+    } catch (InterruptedException e) {
+      this.writer.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted writing " + this.filePath);
+    } finally {
+      this.buffer = buffer;
+    }
+  }
+
+  /**
+   * Writes what is left in the buffers and closes the file.
+   *
+   * @throws IOException if the file cannot be written.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!this.channel.isOpen()) {
+      return;
+    }
+    try {
+      if (this.writer == null) {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+          this.channel.write(this.buffer);
+        }
+      } else if (!this.writer.isDone()) {
+        this.buffer.flip();
+        this.full.put(this.buffer);
+        this.full.put(END);
+        this.writer.get();
+      }
+    } catch (InterruptedException e) {
+      this.writer.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted writing " + this.filePath);
+    } catch (ExecutionException e) {
+      throw new IOException("Error writing " + this.filePath, e.getCause());
+    } finally {
+      this.channel.close();
+    }
+    if (this.failure[0] != null) {
+      throw this.failure[0];
+    }
+  }
+
+  /**
+   * Writes every full buffer to the channel and hands it back, until the end marker. After a
+   * failure the buffers are still handed back, so the encoding side never waits forever.
+   */
+  private static void drain(FileChannel channel, BlockingQueue<ByteBuffer> full,
+                            BlockingQueue<ByteBuffer> free, IOException[] failure) {
+    try {
+      for (ByteBuffer buffer = full.take(); buffer != END; buffer = full.take()) {
+        try {
+          while (failure[0] == null && buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        } catch (IOException e) {
+          failure[0] = e;
+        }
+        buffer.clear();
+        free.put(buffer);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Encodes one pixel at the position of the buffer.
+   */
+  private static void encode(ByteBuffer buffer, int rgb, boolean raw, boolean gray) {
+    int r = (rgb >> 16) & 0xff;
+    int g = (rgb >> 8) & 0xff;
+    int b = rgb & 0xff;
+    if (gray) {
+      int intensity = (r + g + b) / 3;
+      if (raw) {
+        buffer.put((byte) intensity);
+      } else {
+        encodeLevel(buffer, intensity);
+      }
+    } else if (raw) {
+      buffer.put((byte) r);
+      buffer.put((byte) g);
+      buffer.put((byte) b);
+    } else {
+      encodeLevel(buffer, r);
+      encodeLevel(buffer, g);
+      encodeLevel(buffer, b);
+    }
+  }
+
+  /**
+   * Encodes a level in [0, 255] as decimal digits followed by a newline.
+   */
+  private static void encodeLevel(ByteBuffer buffer, int level) {
+    if (level >= 100) {
+      buffer.put((byte) ('0' + level / 100));
+    }
+    if (level >= 10) {
+      buffer.put((byte) ('0' + level / 10 % 10));
+    }
+    buffer.put((byte) ('0' + level % 10));
+    buffer.put((byte) '\n');
+  }
+}
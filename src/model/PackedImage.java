@@ -0,0 +1,225 @@
+package model;
+
+/**
+ * Represents an image stored as one packed 0xRRGGBB int per pixel, in row major order. This is
+ * the storage the model works on, a Pixel[][] is only produced when one is asked for.
+ *
+ * <p>An image loaded from a large raw file may instead be backed by the file mapped into memory.
+ * Single pixels are read from the mapping, and the packed pixels are only decoded into the heap
+ * the first time the whole array is needed, such as when an operation produces a new image from
+ * it, and the mapping is dropped then, so the file is no longer held open once it is decoded. The
+ * file itself is never written, so the image stays unchanged like any other.
+ */
+public class PackedImage {
+  private final int width;
+  private final int height;
+  private volatile int[] pixels;
+  // the file the pixels are read from until they are decoded, null once they are in the heap
+  private volatile MappedPixels mapped;
+
+  /**
+   * Constructs a black image of the given size.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   */
+  public PackedImage(int width, int height) {
+    this(width, height, new int[Math.max(width, 0) * Math.max(height, 0)]);
+  }
+
+  /**
+   * Constructs an image around the given packed pixels, the array is used as is and not copied.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @param pixels the packed pixels, row major, width * height long.
+   * @throws IllegalArgumentException if the size and the pixels do not match.
+   */
+  public PackedImage(int width, int height, int[] pixels) throws IllegalArgumentException {
+    if (width < 0 || height < 0 || pixels == null || pixels.length != width * height) {
+      throw new IllegalArgumentException("Invalid image dimensions");
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+    this.mapped = null;
+  }
+
+  /**
+   * Constructs an image around the mapped pixels of a raw file.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @param mapped the mapped pixels.
+   */
+  PackedImage(int width, int height, MappedPixels mapped) {
+    this.width = width;
+    this.height = height;
+    this.mapped = mapped;
+  }
+
+  /**
+   * Packs the given 2d Pixel array into a new image.
+   *
+   * @param image the image to be packed.
+   * @return the packed image.
+   * @throws IllegalArgumentException if the image is null or has null pixels.
+   */
+  public static PackedImage fromPixels(Pixel[][] image) throws IllegalArgumentException {
+    if (image == null) {
+      throw new IllegalArgumentException("Null image");
+    }
+    int height = image.length;
+    int width = height == 0 ? 0 : image[0].length;
+
+    int[] pixels = new int[width * height];
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        Pixel pixel = image[row][col];
+        if (pixel == null) {
+          throw new IllegalArgumentException("Null pixel");
+        }
+        pixels[row * width + col] = pack(pixel.getRed(), pixel.getGreen(), pixel.getBlue());
+      }
+    }
+    return new PackedImage(width, height, pixels);
+  }
+
+  /**
+   * Unpacks this image into a new 2d Pixel array.
+   *
+   * @return a 2d Pixel array with the same colors as this image.
+   */
+  public Pixel[][] toPixels() {
+    Pixel[][] output = new Pixel[this.height][this.width];
+
+    for (int row = 0; row < this.height; row++) {
+      for (int col = 0; col < this.width; col++) {
+        int rgb = this.getRGB(row, col);
+        output[row][col] = new Pixel(red(rgb), green(rgb), blue(rgb));
+      }
+    }
+    return output;
+  }
+
+  /**
+   * Retrieves the width of the image.
+   *
+   * @return the width in pixels.
+   */
+  public int getWidth() {
+    return this.width;
+  }
+
+  /**
+   * Retrieves the height of the image.
+   *
+   * @return the height in pixels.
+   */
+  public int getHeight() {
+    return this.height;
+  }
+
+  /**
+   * Retrieves the packed color at the given position.
+   *
+   * @param row the row of the pixel.
+   * @param col the column of the pixel.
+   * @return the color packed as 0xRRGGBB.
+   */
+  public int getRGB(int row, int col) {
+    int[] packed = this.pixels;
+    if (packed == null) {
+      MappedPixels file = this.mapped;
+      if (file != null) {
+        return file.getRGB(row, col);
+      }
+      // decoded in the meantime, the pixels are set before the mapping is dropped
+      packed = this.pixels;
+    }
+    return packed[row * this.width + col];
+  }
+
+  /**
+   * Retrieves the backing array of the image, it is not a copy. The pixels of a mapped image are
+   * decoded the first time, and the mapping is dropped.
+   *
+   * @return the packed pixels in row major order.
+   */
+  int[] getPixels() {
+    int[] packed = this.pixels;
+    if (packed == null) {
+      synchronized (this) {
+        packed = this.pixels;
+        if (packed == null) {
+          packed = new int[this.width * this.height];
+          this.mapped.decode(packed);
+          this.pixels = packed;
+          this.mapped = null;
+        }
+      }
+    }
+    return packed;
+  }
+
+  /**
+   * Retrieves the mapped pixels of an image loaded from a raw file.
+   *
+   * @return the mapped pixels, or null if the image is not mapped or has been decoded.
+   */
+  MappedPixels getMapped() {
+    return this.mapped;
+  }
+
+  /**
+   * Packs the given components into one int, clamping each one to [0, 255].
+   *
+   * @param red   the red component.
+   * @param green the green component.
+   * @param blue  the blue component.
+   * @return the color packed as 0xRRGGBB.
+   */
+  public static int pack(int red, int green, int blue) {
+    return (clamp(red) << 16) | (clamp(green) << 8) | clamp(blue);
+  }
+
+  /**
+   * Clamps a component to [0, 255].
+   *
+   * @param value the component.
+   * @return the clamped component.
+   */
+  public static int clamp(int value) {
+    return value < 0 ? 0 : (value > 255 ? 255 : value);
+  }
+
+  /**
+   * Retrieves the red component of a packed color.
+   *
+   * @param rgb the packed color.
+   * @return the red component.
+   */
+  public static int red(int rgb) {
+    return (rgb >> 16) & 0xff;
+  }
+
+  /**
+   * Retrieves the green component of a packed color.
+   *
+   * @param rgb the packed color.
+   * @return the green component.
+   */
+  public static int green(int rgb) {
+    return (rgb >> 8) & 0xff;
+  }
+
+  /**
+   * Retrieves the blue component of a packed color.
+   *
+   * @param rgb the packed color.
+   * @return the blue component.
+   */
+  public static int blue(int rgb) {
+    return rgb & 0xff;
+  }
+}
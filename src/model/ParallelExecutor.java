@@ -0,0 +1,142 @@
+package model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs per row work over an image in parallel. The rows are split in halves into bands until a
+ * band is at most the threshold number of pixels, and the bands are run on a ForkJoinPool.
+ * Images smaller than the threshold are run on the calling thread.
+ *
+ * <p>Executors made with the defaults share one pool, which lives as long as the program. An
+ * executor made with its own parallelism owns its pool, and closing it shuts the pool down.
+ */
+public class ParallelExecutor implements AutoCloseable {
+  /**
+   * The default number of pixels below which work is not split any further.
+   */
+  public static final int DEFAULT_THRESHOLD = 1 << 16;
+
+  private final ForkJoinPool pool;
+  private final int threshold;
+  // whether the pool is the default one, which is never shut down
+  private final boolean shared;
+
+  /**
+   * Holds the pool of the executors made with the defaults, created when the first one is.
+   */
+  private static final class DefaultPool {
+    private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+    // null with one processor, when everything runs on the calling thread
+    private static final ForkJoinPool POOL = PARALLELISM == 1 ? null
+            : new ForkJoinPool(PARALLELISM);
+  }
+
+  /**
+   * Represents work done on a band of rows of an image.
+   */
+  public interface RowTask {
+    /**
+     * Does the work for the rows in [startRow, endRow).
+     *
+     * @param startRow the first row of the band.
+     * @param endRow   one past the last row of the band.
+     */
+    void run(int startRow, int endRow);
+  }
+
+  /**
+   * Constructs an executor.
+   *
+   * @param parallelism the number of threads to use, 1 runs everything on the calling thread.
+   * @param threshold   the number of pixels below which a band is not split.
+   * @throws IllegalArgumentException if parallelism or threshold is not positive.
+   */
+  public ParallelExecutor(int parallelism, int threshold) throws IllegalArgumentException {
+    if (parallelism < 1 || threshold < 1) {
+      throw new IllegalArgumentException("Parallelism and threshold must be positive");
+    }
+    this.pool = parallelism == 1 ? null : new ForkJoinPool(parallelism);
+    this.threshold = threshold;
+    this.shared = false;
+  }
+
+  /**
+   * Constructs an executor using every available processor and the default threshold, on the
+   * pool shared by every executor made this way.
+   */
+  public ParallelExecutor() {
+    this.pool = DefaultPool.POOL;
+    this.threshold = DEFAULT_THRESHOLD;
+    this.shared = true;
+  }
+
+  /**
+   * Retrieves the number of threads this executor uses.
+   *
+   * @return the parallelism level.
+   */
+  public int getParallelism() {
+    return this.pool == null ? 1 : this.pool.getParallelism();
+  }
+
+  /**
+   * Runs the task over every row of an image with the given size, returning once all rows are
+   * done.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @param task   the work to do for each band of rows.
+   */
+  public void forRows(int width, int height, RowTask task) {
+    if (this.pool == null || (long) width * height <= this.threshold) {
+      task.run(0, height);
+    } else {
+      this.pool.invoke(new Band(task, Math.max(1, width), this.threshold, 0, height));
+    }
+  }
+
+  /**
+   * Shuts down the pool of this executor, unless it is the shared default pool. Work already
+   * running finishes, and the executor must not be used afterwards.
+   */
+  @Override
+  public void close() {
+    if (this.pool != null && !this.shared) {
+      this.pool.shutdown();
+    }
+  }
+
+  /**
+   * A band of rows that splits itself in half until it is small enough to run.
+   */
+  private static final class Band extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final transient RowTask task;
+    private final int width;
+    private final int threshold;
+    private final int startRow;
+    private final int endRow;
+
+    Band(RowTask task, int width, int threshold, int startRow, int endRow) {
+      this.task = task;
+      this.width = width;
+      this.threshold = threshold;
+      this.startRow = startRow;
+      this.endRow = endRow;
+    }
+
+    @Override
+    protected void compute() {
+      int rows = this.endRow - this.startRow;
+      if (rows <= 1 || (long) rows * this.width <= this.threshold) {
+        this.task.run(this.startRow, this.endRow);
+      } else {
+        int middle = this.startRow + rows / 2;
+        invokeAll(new Band(this.task, this.width, this.threshold, this.startRow, middle),
+                new Band(this.task, this.width, this.threshold, middle, this.endRow));
+      }
+    }
+  }
+}
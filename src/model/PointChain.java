@@ -0,0 +1,79 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A sequence of point operations applied in one pass. The pixels are pushed through every
+ * operation a small block at a time, so the block stays in cache between operations and the
+ * image is only read and written once, with no intermediate images.
+ */
+final class PointChain implements PointOperation {
+  /**
+   * The number of pixels pushed through every operation at a time.
+   */
+  private static final int BLOCK = 2048;
+
+  private final List<PointOperation> operations;
+
+  /**
+   * Constructs the chain of first followed by second, flattening chains.
+   *
+   * @param first  the operation applied first.
+   * @param second the operation applied second.
+   */
+  PointChain(PointOperation first, PointOperation second) {
+    this.operations = new ArrayList<>();
+    this.add(first);
+    this.add(second);
+  }
+
+  private void add(PointOperation operation) {
+    if (operation instanceof PointChain) {
+      this.operations.addAll(((PointChain) operation).operations);
+    } else {
+      this.operations.add(operation);
+    }
+  }
+
+  @Override
+  public int apply(int rgb) {
+    for (PointOperation operation : this.operations) {
+      rgb = operation.apply(rgb);
+    }
+    return rgb;
+  }
+
+  @Override
+  public void apply(int[] src, int[] dst, int from, int to) {
+    for (int start = from; start < to; start += BLOCK) {
+      int end = Math.min(to, start + BLOCK);
+      this.operations.get(0).apply(src, dst, start, end);
+      for (int i = 1; i < this.operations.size(); i++) {
+        this.operations.get(i).apply(dst, dst, start, end);
+      }
+    }
+  }
+
+  @Override
+  public Histogram remap(Histogram input) {
+    Histogram histogram = input;
+    for (int i = 0; i < this.operations.size() && histogram != null; i++) {
+      histogram = this.operations.get(i).remap(histogram);
+    }
+    return histogram;
+  }
+
+  @Override
+  public PointOperation then(PointOperation next) {
+    PointOperation last = this.operations.get(this.operations.size() - 1);
+    PointOperation merged = last.then(next);
+    PointChain chain = new PointChain(this, next);
+    if (!(merged instanceof PointChain)) {
+      // the last operation absorbed the next one, such as two lookup tables becoming one
+      chain.operations.remove(chain.operations.size() - 1);
+      chain.operations.set(chain.operations.size() - 1, merged);
+    }
+    return chain;
+  }
+}
@@ -0,0 +1,48 @@
+package model;
+
+/**
+ * Represents an operation whose output pixel only depends on the same input pixel, such as
+ * brighten, the grayscale methods and color transformations. Point operations can be chained so
+ * several of them run in one pass over an image.
+ */
+interface PointOperation {
+  /**
+   * Applies the operation to one packed color.
+   *
+   * @param rgb the packed color.
+   * @return the packed result.
+   */
+  int apply(int rgb);
+
+  /**
+   * Applies the operation to the packed pixels in [from, to) of the source, writing into the same
+   * positions of the destination.
+   *
+   * @param src  the source pixels.
+   * @param dst  the destination pixels, it may be the source.
+   * @param from the first index.
+   * @param to   one past the last index.
+   */
+  void apply(int[] src, int[] dst, int from, int to);
+
+  /**
+   * Works out the histogram of the output from the histogram of the input, without looking at
+   * the pixels.
+   *
+   * @param input the histogram of the input.
+   * @return the histogram of the output, or null if it depends on more than the input histogram.
+   */
+  default Histogram remap(Histogram input) {
+    return null;
+  }
+
+  /**
+   * Builds the operation that applies this operation and then the given one.
+   *
+   * @param next the operation to apply after this one.
+   * @return the combined operation.
+   */
+  default PointOperation then(PointOperation next) {
+    return new PointChain(this, next);
+  }
+}
@@ -1,5 +1,6 @@
 package model;
 
+import java.awt.image.BufferedImage;
 import java.util.Map;
 
 /**
@@ -14,6 +15,14 @@ public interface ProcessorModelState {
    */
   public void load(String name, Pixel[][] image);
 
+  /**
+   * Will load the given packed image into the images field without unpacking it.
+   *
+   * @param name  the name of the image we will load.
+   * @param image the image itself that we are loading.
+   */
+  public void load(String name, PackedImage image);
+
   /**
    * Flips an image either vertically or horizontally.
    *
@@ -38,6 +47,16 @@ public interface ProcessorModelState {
    */
   public Pixel[][] getCopy(String name);
 
+  /**
+   * Stores the image with the given name under the destination name as well. No pixels are
+   * copied, both names share the image until one of them is transformed, which always writes
+   * into a fresh image.
+   *
+   * @param name        the name of the image to be copied.
+   * @param destination the name the copy is stored under.
+   */
+  public void copy(String name, String destination);
+
   /**
    * Converts the image with the given name to GrayScale using the given method.
    *
@@ -66,6 +85,14 @@ public interface ProcessorModelState {
    */
   public void sharpen(String name);
 
+  /**
+   * Convolves an image with the given kernel.
+   * @param kernel the kernel to apply.
+   * @param border how pixels outside the image are read.
+   * @param name the name of the image to be convolved.
+   */
+  public void convolve(Kernel kernel, BorderMode border, String name);
+
   /**
    * Turns an image to grayscale.
    * @param name the name of the image to be made grayscale.
@@ -78,6 +105,52 @@ public interface ProcessorModelState {
    */
   public void sepia(String name);
 
+  /**
+   * Chooses how PPM files are saved from now on, as plain text (P3) or raw bytes (P6). Files
+   * saved as .pgm are always raw (P5).
+   * @param format the format to save PPM files in.
+   */
+  public void setPPMFormat(PPMFormat format);
+
+  /**
+   * Runs the operations of the pipeline over an image file into another file a band of rows at a
+   * time, so the image is never held whole and may be larger than the heap.
+   * @param inputPath  the path of the file to read.
+   * @param outputPath the path of the file to write.
+   * @param pipeline   the operations to run.
+   */
+  public void stream(String inputPath, String outputPath, StreamPipeline pipeline);
+
+  /**
+   * Retrieves the version of an image, which changes whenever the image stored under the name
+   * changes, so views can tell whether what they last drew is still current.
+   * @param name the name of the image.
+   * @return the version of the image.
+   */
+  public long getVersion(String name);
+
+  /**
+   * Counts the red, green, blue and intensity levels of an image in one pass.
+   * @param imageName the name of the image.
+   * @return the histogram of the image.
+   */
+  public Histogram getHistogram(String imageName);
+
+  /**
+   * Retrieves an image for display, backed by the pixels of the model rather than a copy of
+   * them. The image must not be drawn on, and it shows the image as it is now, a later change to
+   * the name stores a new image rather than changing this one.
+   * @param name the name of the image.
+   * @return the image.
+   */
+  public BufferedImage getDisplayImage(String name);
+
+  /**
+   * Adds a listener told whenever the image stored under a name changes.
+   * @param listener the listener to add.
+   */
+  public void addImageChangeListener(ImageChangeListener listener);
+
   public Map<Integer, Integer> getRedCount(String imageName);
   public Map<Integer, Integer> getGreenCount(String imageName);
   public Map<Integer, Integer> getBlueCount(String imageName);
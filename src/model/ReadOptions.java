@@ -0,0 +1,90 @@
+package model;
+
+import java.awt.Rectangle;
+
+/**
+ * Represents what part of an image file to decode when it is read: a region of the image, and a
+ * subsampling factor that keeps every nth column of every nth row of it. Only the kept pixels are
+ * decoded and stored, so a thumbnail or a crop of a large file costs a fraction of reading it
+ * whole.
+ */
+public class ReadOptions {
+  /**
+   * Reads the whole image at full size.
+   */
+  public static final ReadOptions FULL = new ReadOptions(null, 1);
+
+  // null for the whole image
+  private final Rectangle region;
+  private final int subsample;
+
+  /**
+   * Constructs the options.
+   *
+   * @param region    the region of the image to read, or null for the whole image. Parts of it
+   *                  outside the image are left out.
+   * @param subsample the factor to subsample by, 1 to keep every pixel.
+   * @throws IllegalArgumentException if the region is empty or starts at a negative position, or
+   *                                  the factor is less than 1.
+   */
+  public ReadOptions(Rectangle region, int subsample) throws IllegalArgumentException {
+    if (region != null && (region.x < 0 || region.y < 0 || region.width <= 0
+            || region.height <= 0)) {
+      throw new IllegalArgumentException("Invalid region: " + region.x + "," + region.y + ","
+              + region.width + "," + region.height);
+    }
+    if (subsample < 1) {
+      throw new IllegalArgumentException("Invalid subsampling factor: " + subsample);
+    }
+    this.region = region == null ? null : new Rectangle(region);
+    this.subsample = subsample;
+  }
+
+  /**
+   * Whether the whole image is read at full size.
+   *
+   * @return true if every pixel is read.
+   */
+  public boolean isFull() {
+    return this.region == null && this.subsample == 1;
+  }
+
+  /**
+   * Retrieves the subsampling factor.
+   *
+   * @return the factor, 1 when every pixel is kept.
+   */
+  public int getSubsample() {
+    return this.subsample;
+  }
+
+  /**
+   * Works out the region to read from an image of the given size.
+   *
+   * @param width  the width of the image.
+   * @param height the height of the image.
+   * @return the part of the region inside the image, or the whole image if there is no region.
+   * @throws IllegalArgumentException if the region is outside the image.
+   */
+  Rectangle region(int width, int height) throws IllegalArgumentException {
+    Rectangle image = new Rectangle(0, 0, width, height);
+    if (this.region == null) {
+      return image;
+    }
+    Rectangle clipped = this.region.intersection(image);
+    if (clipped.isEmpty()) {
+      throw new IllegalArgumentException("Region outside the image");
+    }
+    return clipped;
+  }
+
+  /**
+   * Counts the pixels kept out of the given number along one side.
+   *
+   * @param length the number of pixels along the side of the region.
+   * @return the number kept after subsampling.
+   */
+  int sampled(int length) {
+    return (length + this.subsample - 1) / this.subsample;
+  }
+}
@@ -0,0 +1,36 @@
+package model;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Hands out the rows of an image in order, a band at a time, so an image can be worked on
+ * without ever being held whole. Sources read the rows from a file, and stages read them from
+ * another source and change them on the way.
+ */
+interface RowSource extends Closeable {
+  /**
+   * Retrieves the width of the image.
+   *
+   * @return the width in pixels.
+   */
+  int getWidth();
+
+  /**
+   * Retrieves the height of the image.
+   *
+   * @return the height in pixels.
+   */
+  int getHeight();
+
+  /**
+   * Reads the next rows as packed pixels.
+   *
+   * @param pixels  the array to read into.
+   * @param offset  the index in the array of the first pixel of the first row.
+   * @param maxRows the most rows to read.
+   * @return the number of rows read, 0 once every row has been read.
+   * @throws IOException if the rows cannot be read.
+   */
+  int read(int[] pixels, int offset, int maxRows) throws IOException;
+}
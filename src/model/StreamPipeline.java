@@ -0,0 +1,434 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.bmp.BMPImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Represents a sequence of operations run over an image file a band of rows at a time, from the
+ * file it is read from to the file it is written to, so images larger than the heap can be
+ * processed. Only a few bands are ever held: the band being read, and for each convolution the
+ * band with the rows its kernel reaches above and below it.
+ *
+ * <p>Point operations and horizontal flips work on every band on its own, and consecutive point
+ * operations are combined into one pass as the model combines them. A convolution keeps the rows
+ * its kernel reaches across the edges of the band, so the output is the same as convolving the
+ * whole image, except that a Wrap border would need the rows at the other end of the image and is
+ * refused, as are vertical flips.
+ *
+ * <p>PPM and PGM files are read and written incrementally, PNG and BMP files are written
+ * incrementally, and JPEG, PNG and BMP files are read a band at a time through their ImageIO
+ * reader. JPEG files cannot be written, since the writer asks for the whole image at once.
+ */
+public class StreamPipeline {
+  /**
+   * The number of pixels in a band when no band size is given.
+   */
+  private static final int BAND_PIXELS = 1 << 20;
+
+  private final List<Step> steps;
+  // 0 to size bands by BAND_PIXELS
+  private int bandRows;
+
+  /**
+   * One operation of the pipeline, waiting for the rows it will work on.
+   */
+  private interface Step {
+    RowSource over(RowSource upstream, ParallelExecutor executor);
+  }
+
+  /**
+   * Constructs a pipeline that copies the image as it is until operations are added.
+   */
+  public StreamPipeline() {
+    this.steps = new ArrayList<>();
+  }
+
+  /**
+   * Sets the number of rows in a band.
+   *
+   * @param rows the number of rows.
+   * @return this pipeline.
+   * @throws IllegalArgumentException if the number is less than 1.
+   */
+  public StreamPipeline setBandRows(int rows) throws IllegalArgumentException {
+    if (rows < 1) {
+      throw new IllegalArgumentException("Invalid band size: " + rows);
+    }
+    this.bandRows = rows;
+    return this;
+  }
+
+  /**
+   * Brightens or darkens the image by the given amount.
+   *
+   * @param value the amount to brighten by, negative to darken.
+   * @return this pipeline.
+   */
+  public StreamPipeline brighten(int value) {
+    return this.point(LookupTable.brighten(value));
+  }
+
+  /**
+   * Converts the image to grayscale using the given method.
+   *
+   * @param type the method of converting to grayscale.
+   * @return this pipeline.
+   * @throws IllegalArgumentException if the type is null.
+   */
+  public StreamPipeline toGrayScale(GrayScale type) throws IllegalArgumentException {
+    return this.point(LookupTable.grayscale(type));
+  }
+
+  /**
+   * Turns the image to greyscale using a color transformation.
+   *
+   * @return this pipeline.
+   */
+  public StreamPipeline transformationGrayscale() {
+    return this.point(ColorMatrix.GRAY);
+  }
+
+  /**
+   * Turns the image to sepia coloring using a color transformation.
+   *
+   * @return this pipeline.
+   */
+  public StreamPipeline sepia() {
+    return this.point(ColorMatrix.SEPIA);
+  }
+
+  /**
+   * Flips the image horizontally.
+   *
+   * @return this pipeline.
+   */
+  public StreamPipeline horizontalFlip() {
+    this.steps.add(FlipStage::new);
+    return this;
+  }
+
+  /**
+   * Blurs the image with the kernel the model blurs with.
+   *
+   * @return this pipeline.
+   */
+  public StreamPipeline blur() {
+    return this.convolve(ImageProcessorModel.BLUR, BorderMode.Zero);
+  }
+
+  /**
+   * Sharpens the image with the kernel the model sharpens with.
+   *
+   * @return this pipeline.
+   */
+  public StreamPipeline sharpen() {
+    return this.convolve(ImageProcessorModel.SHARPEN, BorderMode.Zero);
+  }
+
+  /**
+   * Convolves the image with the given kernel.
+   *
+   * @param kernel the kernel to apply.
+   * @param border how pixels outside the image are read.
+   * @return this pipeline.
+   * @throws IllegalArgumentException if the kernel or border mode is null, or the border mode is
+   *                                  Wrap.
+   */
+  public StreamPipeline convolve(Kernel kernel, BorderMode border)
+          throws IllegalArgumentException {
+    if (kernel == null || border == null) {
+      throw new IllegalArgumentException("Invalid kernel or border mode");
+    }
+    if (border == BorderMode.Wrap) {
+      throw new IllegalArgumentException("A Wrap border cannot be streamed");
+    }
+    this.steps.add((upstream, executor) ->
+            new ConvolutionStage(upstream, kernel, border, executor));
+    return this;
+  }
+
+  private StreamPipeline point(PointOperation operation) {
+    int last = this.steps.size() - 1;
+    if (last >= 0 && this.steps.get(last) instanceof PointStep) {
+      PointStep previous = (PointStep) this.steps.get(last);
+      this.steps.set(last, new PointStep(previous.operation.then(operation)));
+    } else {
+      this.steps.add(new PointStep(operation));
+    }
+    return this;
+  }
+
+  /**
+   * Reads the input file, runs every operation over it and writes the output file, a band at a
+   * time.
+   *
+   * @param inputPath  the path of the file to read.
+   * @param outputPath the path of the file to write, replaced if it exists.
+   * @param ppmFormat  the format to write a PPM file in, PGM files are always raw.
+   * @param executor   the executor to split the work on each band over.
+   * @throws IOException              if a file cannot be read or written.
+   * @throws IllegalArgumentException if either file is not of a format that can be streamed, or
+   *                                  they are the same file.
+   */
+  void run(String inputPath, String outputPath, PPMFormat ppmFormat, ParallelExecutor executor)
+          throws IOException {
+    String format = outputFormat(outputPath);
+    Path input = Paths.get(inputPath);
+    Path output = Paths.get(outputPath);
+    if (Files.exists(output) && Files.isSameFile(input, output)) {
+      throw new IllegalArgumentException("Cannot stream a file onto itself: " + outputPath);
+    }
+
+    RowSource rows = ImageUtil.openRows(inputPath);
+    try {
+      for (Step step : this.steps) {
+        rows = step.over(rows, executor);
+      }
+      int band = this.bandRows > 0 ? this.bandRows
+              : Math.max(1, BAND_PIXELS / Math.max(1, rows.getWidth()));
+      if (format.equals("PPM") || format.equals("PGM")) {
+        writePPM(rows, outputPath, band, format.equals("PGM") ? PPMFormat.Raw : ppmFormat,
+                format.equals("PGM"));
+      } else {
+        writeImageIO(rows, output, band, format);
+      }
+    } finally {
+      rows.close();
+    }
+  }
+
+  /**
+   * Works out the format to write from the extension of the path.
+   */
+  private static String outputFormat(String path) {
+    if (path.endsWith(".ppm")) {
+      return "PPM";
+    } else if (path.endsWith(".pgm")) {
+      return "PGM";
+    } else if (path.endsWith(".png")) {
+      return "PNG";
+    } else if (path.endsWith(".bmp")) {
+      return "BMP";
+    } else if (path.endsWith(".jpeg") || path.endsWith(".jpg")) {
+      throw new IllegalArgumentException("JPEG files cannot be streamed, use .ppm, .pgm, .png or "
+              + ".bmp");
+    } else {
+      throw new IllegalArgumentException("Invalid file format use .ppm, .pgm, .png or .bmp");
+    }
+  }
+
+  private static void writePPM(RowSource rows, String path, int band, PPMFormat format,
+                               boolean gray) throws IOException {
+    int width = rows.getWidth();
+    int[] pixels = new int[band * width];
+    try (PPMWriter writer = new PPMWriter(path, width, rows.getHeight(), format, gray)) {
+      for (int read = rows.read(pixels, 0, band); read > 0; read = rows.read(pixels, 0, band)) {
+        writer.write(pixels, 0, read * width);
+      }
+    }
+  }
+
+  private static void writeImageIO(RowSource rows, Path path, int band, String format)
+          throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format);
+    if (!writers.hasNext()) {
+      throw new IOException("No writer for " + format);
+    }
+    ImageWriter writer = writers.next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (param instanceof BMPImageWriteParam) {
+      // bottom up BMP files would need the last rows first
+      ((BMPImageWriteParam) param).setTopDown(true);
+    }
+    // the output stream writes over an existing file without shortening it
+    Files.deleteIfExists(path);
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(path.toFile())) {
+      if (out == null) {
+        throw new IOException("Cannot write " + path);
+      }
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(new BandedImage(rows, band), null, null), param);
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * Consecutive point operations, combined into one.
+   */
+  private static final class PointStep implements Step {
+    private final PointOperation operation;
+
+    PointStep(PointOperation operation) {
+      this.operation = operation;
+    }
+
+    @Override
+    public RowSource over(RowSource upstream, ParallelExecutor executor) {
+      return new PointStage(upstream, this.operation, executor);
+    }
+  }
+
+  /**
+   * A stage reading the rows of another source, which it closes with itself.
+   */
+  private abstract static class Stage implements RowSource {
+    protected final RowSource upstream;
+
+    Stage(RowSource upstream) {
+      this.upstream = upstream;
+    }
+
+    @Override
+    public int getWidth() {
+      return this.upstream.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return this.upstream.getHeight();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.upstream.close();
+    }
+  }
+
+  /**
+   * Applies a point operation to each band in place.
+   */
+  private static final class PointStage extends Stage {
+    private final PointOperation operation;
+    private final ParallelExecutor executor;
+
+    PointStage(RowSource upstream, PointOperation operation, ParallelExecutor executor) {
+      super(upstream);
+      this.operation = operation;
+      this.executor = executor;
+    }
+
+    @Override
+    public int read(int[] pixels, int offset, int maxRows) throws IOException {
+      int rows = this.upstream.read(pixels, offset, maxRows);
+      int width = this.getWidth();
+      this.executor.forRows(width, rows, (startRow, endRow) ->
+              this.operation.apply(pixels, pixels, offset + startRow * width,
+                      offset + endRow * width));
+      return rows;
+    }
+  }
+
+  /**
+   * Reverses every row of each band in place.
+   */
+  private static final class FlipStage extends Stage {
+    private final ParallelExecutor executor;
+
+    FlipStage(RowSource upstream, ParallelExecutor executor) {
+      super(upstream);
+      this.executor = executor;
+    }
+
+    @Override
+    public int read(int[] pixels, int offset, int maxRows) throws IOException {
+      int rows = this.upstream.read(pixels, offset, maxRows);
+      int width = this.getWidth();
+      this.executor.forRows(width, rows, (startRow, endRow) -> {
+        for (int row = startRow; row < endRow; row++) {
+          int left = offset + row * width;
+          for (int right = left + width - 1; left < right; left++, right--) {
+            int swap = pixels[left];
+            pixels[left] = pixels[right];
+            pixels[right] = swap;
+          }
+        }
+      });
+      return rows;
+    }
+  }
+
+  /**
+   * Convolves each band together with the rows the kernel reaches above and below it. The rows
+   * are kept in a window that slides down the image: the rows still reached by the next band are
+   * moved to the front, and the rest are read after them. Convolving the window treats its edges
+   * as the edges of the image, but an output row only reads rows beyond the window when the
+   * window ends at the real edge, so every output row is the one the whole image would give.
+   */
+  private static final class ConvolutionStage extends Stage {
+    private final Kernel kernel;
+    private final BorderMode border;
+    private final ParallelExecutor executor;
+    private final int radius;
+    private int[] window;
+    // the input rows [windowStart, windowEnd) are in the window
+    private int windowStart;
+    private int windowEnd;
+    // the next output row
+    private int next;
+
+    ConvolutionStage(RowSource upstream, Kernel kernel, BorderMode border,
+                     ParallelExecutor executor) {
+      super(upstream);
+      this.kernel = kernel;
+      this.border = border;
+      this.executor = executor;
+      this.radius = kernel.getSize() / 2;
+      this.window = new int[0];
+    }
+
+    @Override
+    public int read(int[] pixels, int offset, int maxRows) throws IOException {
+      int width = this.getWidth();
+      int height = this.getHeight();
+      int rows = Math.min(maxRows, height - this.next);
+      if (rows <= 0) {
+        return 0;
+      }
+      int first = Math.max(0, this.next - this.radius);
+      int last = Math.min(height, this.next + rows + this.radius);
+
+      // keep the rows still reached, then read the ones below them
+      int kept = this.windowEnd - first;
+      System.arraycopy(this.window, (first - this.windowStart) * width, this.window, 0,
+              kept * width);
+      this.windowStart = first;
+      int size = (last - first) * width;
+      if (this.window.length < size) {
+        this.window = Arrays.copyOf(this.window, size);
+      }
+      while (this.windowEnd < last) {
+        int read = this.upstream.read(this.window, (this.windowEnd - first) * width,
+                last - this.windowEnd);
+        if (read == 0) {
+          throw new IllegalArgumentException("The image ended early");
+        }
+        this.windowEnd += read;
+      }
+
+      int[] band = this.window.length == size ? this.window : Arrays.copyOf(this.window, size);
+      PackedImage convolved = Convolution.apply(new PackedImage(width, last - first, band),
+              this.kernel, this.border, this.executor);
+      System.arraycopy(convolved.getPixels(), (this.next - first) * width, pixels, offset,
+              rows * width);
+      this.next += rows;
+      return rows;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package model;
+
+/**
+ * Switches the pixel kernels between their lane-wise forms and their scalar forms. The lane-wise
+ * forms only use int arithmetic, shifts and masks that are the same for every pixel, with no
+ * table lookups or branches. When VectorKernels, written with the Vector API, has been compiled
+ * from the vector source folder and the program runs with --add-modules jdk.incubator.vector,
+ * they run through it. Otherwise they run as plain loops, which the JIT may or may not turn into
+ * vector instructions. The scalar forms use lookup tables and per pixel branches. Every form
+ * gives exactly the same results.
+ *
+ * <p>The switch starts from the imageprocessor.vectorize system property and is on unless the
+ * property is false.
+ */
+public final class Vectorization {
+  /**
+   * The system property holding the starting state of the switch.
+   */
+  public static final String PROPERTY = "imageprocessor.vectorize";
+
+  private static volatile boolean enabled =
+          !"false".equalsIgnoreCase(System.getProperty(PROPERTY));
+
+  // the kernels on the Vector API, null when the module or VectorKernels is missing
+  private static final LaneKernels VECTOR_KERNELS = vectorKernels();
+
+  private Vectorization() {
+  }
+
+  /**
+   * Whether the lane-wise kernels are used.
+   *
+   * @return true if they are used.
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turns the lane-wise kernels on or off.
+   *
+   * @param on true to use the lane-wise kernels, false for the scalar ones.
+   */
+  public static void setEnabled(boolean on) {
+    enabled = on;
+  }
+
+  /**
+   * Whether the lane-wise kernels are used and run through the Vector API.
+   *
+   * @return true if they run on the Vector API.
+   */
+  public static boolean usesVectorApi() {
+    return enabled && VECTOR_KERNELS != null;
+  }
+
+  /**
+   * Retrieves the kernels on the Vector API when the lane-wise kernels are used and run on it.
+   *
+   * @return the kernels, or null to run the plain loops.
+   */
+  static LaneKernels kernels() {
+    return enabled ? VECTOR_KERNELS : null;
+  }
+
+  private static LaneKernels vectorKernels() {
+    if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      return null;
+    }
+    try {
+      LaneKernels kernels = (LaneKernels) Class.forName("model.VectorKernels")
+              .getDeclaredConstructor().newInstance();
+      return kernels.lanes() > 1 ? kernels : null;
+    } catch (ReflectiveOperationException | LinkageError e) {
+      // not compiled in, or built against a different Vector API
+      return null;
+    }
+  }
+
+  /**
+   * Clamps a component to [0, 255] with sign masks instead of branches.
+   *
+   * @param value the component.
+   * @return the clamped component.
+   */
+  static int saturate(int value) {
+    // negative values become 0
+    value &= ~(value >> 31);
+    // values above 255 become all ones, then 255
+    return (value | ((255 - value) >> 31)) & 0xff;
+  }
+}
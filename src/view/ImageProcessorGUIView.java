@@ -6,6 +6,8 @@ import java.awt.event.ActionListener;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
 import java.io.File;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.*;
 import javax.swing.event.ListSelectionEvent;
@@ -23,12 +25,11 @@ import commands.SaveCommand;
 import model.ColorTransformationType;
 import model.FilterType;
 import model.GrayScale;
-import model.ImageUtil;
-import model.Pixel;
+import model.ImageChangeListener;
 import model.ProcessorModelState;
 
 public class ImageProcessorGUIView extends JFrame implements ActionListener, ItemListener,
-        ListSelectionListener, ImageProcessorView {
+        ListSelectionListener, ImageChangeListener, ImageProcessorView {
 
   String currentImage;
   private ProcessorModelState model;
@@ -40,6 +41,8 @@ public class ImageProcessorGUIView extends JFrame implements ActionListener, Ite
   private JPanel outerHist;
   private JTextArea localSaveText;
   private JTextArea filePath;
+  // the names of the changed images waiting to be shown again
+  private final Set<String> redraws;
 
   public ImageProcessorGUIView(ProcessorModelState model) {
     super();
@@ -47,6 +50,8 @@ public class ImageProcessorGUIView extends JFrame implements ActionListener, Ite
     setSize(1000, 1000);
     JPanel histogramPanel;
     this.model = model;
+    this.redraws = ConcurrentHashMap.newKeySet();
+    model.addImageChangeListener(this);
 
     label = new JLabel(new ImageIcon());
     label.setSize(250, 500);
@@ -209,10 +214,6 @@ public class ImageProcessorGUIView extends JFrame implements ActionListener, Ite
           System.out.println(f.getAbsolutePath());
           cmd = new LoadCommand(String.valueOf(lastKey), f.getAbsolutePath());
           cmd.commandGo(model);
-          label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-          outerHist.remove(outerHist.getComponent(0));
-          outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-          outerHist.revalidate();
         }
         this.currentImage = String.valueOf(lastKey);
       }
@@ -220,150 +221,73 @@ public class ImageProcessorGUIView extends JFrame implements ActionListener, Ite
       case "sepia":
         cmd = new ColorTransformationCommand(String.valueOf(lastKey),
                 String.valueOf(lastKey + 1), ColorTransformationType.Sepia);
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "blur":
         cmd = new FilterCommand(String.valueOf(lastKey),
                 String.valueOf(lastKey + 1), FilterType.Blur);
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "sharpen":
         cmd = new FilterCommand(String.valueOf(lastKey),
                 String.valueOf(lastKey + 1), FilterType.Sharpen);
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "red-component":
         cmd = new GrayscaleCommand(GrayScale.Red, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "green-component":
         cmd = new GrayscaleCommand(GrayScale.Green, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "blue-component":
         cmd = new GrayscaleCommand(GrayScale.Blue, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "luma":
         cmd = new GrayscaleCommand(GrayScale.Luma, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "intensity-component":
         cmd = new GrayscaleCommand(GrayScale.Intensity, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "value":
         cmd = new GrayscaleCommand(GrayScale.Value, String.valueOf(lastKey),
                 String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "brighten":
         cmd = new BrightenCommand(Integer.parseInt(textArea.getText()),
                 String.valueOf(lastKey), String.valueOf(lastKey + 1));
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "horizontal-flip":
         cmd = new FlipCommand( String.valueOf(lastKey),
                 String.valueOf(lastKey + 1), false);
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "vertical-flip":
         cmd = new FlipCommand( String.valueOf(lastKey),
                 String.valueOf(lastKey + 1), true);
-        cmd.commandGo(model);
-        lastKey++;
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(lastKey)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(lastKey)));
-        outerHist.revalidate();
-        this.currentImage = String.valueOf(lastKey);
+        this.runAndShow(cmd);
         break;
       case "open":
         String name = localName.getText();
         if (!model.containsKey(name)) {
           break;
         }
-        label.setIcon(new ImageIcon(ImageUtil.convertToBufferedFromImage(model.getCopy(String.valueOf(name)))));
-        outerHist.remove(outerHist.getComponent(0));
-        outerHist.add(new HistogramPanel(model, String.valueOf(name)));
-        outerHist.revalidate();
-        this.currentImage = localName.getText();
+        this.show(name);
         localName.setText("Opened: " + localName.getText());
         break;
       case "local save":
-        Pixel[][] newImage = model.getCopy(String.valueOf(lastKey));
-        model.load(localSaveText.getText(), newImage);
+        model.copy(String.valueOf(lastKey), localSaveText.getText());
         localSaveText.setText("Saved as: " + localSaveText.getText());
         break;
       case "save":
@@ -378,6 +302,52 @@ public class ImageProcessorGUIView extends JFrame implements ActionListener, Ite
 
   }
 
+  /**
+   * Runs a command that writes the next image from the current one, then makes the new image
+   * the current one. Storing it tells imageChanged, which shows it once this event is handled.
+   *
+   * @param cmd the command to run.
+   */
+  private void runAndShow(ImageProcessorCommands cmd) {
+    cmd.commandGo(model);
+    lastKey++;
+    this.currentImage = String.valueOf(lastKey);
+  }
+
+  /**
+   * Shows the image with the given name and its histogram. The label draws the pixels of the
+   * model itself, so nothing is copied or converted.
+   *
+   * @param name the name of the image to show.
+   */
+  private void show(String name) {
+    label.setIcon(new ImageIcon(model.getDisplayImage(name)));
+    outerHist.remove(outerHist.getComponent(0));
+    outerHist.add(new HistogramPanel(model, name));
+    outerHist.revalidate();
+    this.currentImage = name;
+  }
+
+  /**
+   * Shows the current image again when the image stored under its name changes. The image is
+   * shown later on the event dispatch thread, even when the change came from it, so the change
+   * that called this has finished and a run of changes to the same image is shown once.
+   *
+   * @param name the name of the changed image.
+   */
+  @Override
+  public void imageChanged(String name) {
+    if (!this.redraws.add(name)) {
+      return;
+    }
+    SwingUtilities.invokeLater(() -> {
+      this.redraws.remove(name);
+      if (name.equals(this.currentImage)) {
+        this.show(name);
+      }
+    });
+  }
+
   /**
    * Invoked when an item has been selected or deselected by the user.
    * The code written for this method performs the operations
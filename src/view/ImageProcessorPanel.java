@@ -7,7 +7,6 @@ import java.io.IOException;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 
-import model.ImageUtil;
 import model.ProcessorModelState;
 
 public class ImageProcessorPanel extends JScrollPane {
@@ -37,9 +36,8 @@ public class ImageProcessorPanel extends JScrollPane {
     if (this.imageName == null) {
       g.drawImage(emptyBoard, 0, 0, 250, 250, c);
     } else {
-      Image image = ImageUtil.convertToBufferedFromImage(model.getCopy(this.imageName));
-      image = image.getScaledInstance(250, 250, Image.SCALE_DEFAULT);
-      g.drawImage(image, 0, 0, 250, 250, c);
+      //drawn straight from the pixels of the model, scaled as it is drawn
+      g.drawImage(model.getDisplayImage(this.imageName), 0, 0, 250, 250, c);
     }
   }
 }
@@ -0,0 +1,171 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import commands.ImageProcessorCommands;
+import controller.BatchRunner;
+import controller.CommandParser;
+import controller.StageMetrics;
+import model.ImageProcessorModel;
+import model.ParallelExecutor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for running one script over many files.
+ */
+public class BatchRunnerTest {
+  private static final String TEMPLATE = "load {input} img\n"
+          + "red-component img r\n"
+          + "blur r r\n"
+          + "save {output}-red.ppm r\n"
+          + "sepia img s\n"
+          + "save {output}-sepia.png s\n";
+
+  private final Path dir;
+
+  /**
+   * Constructs the test around a fresh directory.
+   */
+  public BatchRunnerTest() throws IOException {
+    this.dir = Files.createTempDirectory("batch");
+  }
+
+  @After
+  public void deleteDirectory() throws IOException {
+    try (Stream<Path> files = Files.walk(this.dir)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private String write(String name, String contents) throws IOException {
+    Path file = this.dir.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, contents.getBytes(StandardCharsets.US_ASCII));
+    return file.toString();
+  }
+
+  private String image(String name, int seed) throws IOException {
+    StringBuilder contents = new StringBuilder("P3\n4 3\n255\n");
+    for (int i = 0; i < 12; i++) {
+      contents.append((i * seed) % 256).append(' ').append((i + seed) * 7 % 256).append(' ')
+              .append(seed * 31 % 256).append('\n');
+    }
+    return this.write(name, contents.toString());
+  }
+
+  @Test
+  public void findFilesMatchingGlob() throws IOException {
+    String b = this.image("b.ppm", 1);
+    String a = this.image("a.ppm", 2);
+    this.image("c.png.txt", 3);
+    String d = this.image("sub/d.ppm", 4);
+    assertEquals(Arrays.asList(a, b), BatchRunner.findFiles(this.dir + "/*.ppm"));
+    assertEquals(Arrays.asList(a, b, d), BatchRunner.findFiles(this.dir + "/**.ppm"));
+    assertEquals(Arrays.asList(d), BatchRunner.findFiles(this.dir + "/s*/*.ppm"));
+  }
+
+  @Test
+  public void runOverEveryFile() throws IOException {
+    List<String> inputs = Arrays.asList(this.image("one.ppm", 1), this.image("two.ppm", 2),
+            this.image("three.ppm", 3));
+    String out = this.dir.resolve("out").toString();
+    BatchRunner runner = new BatchRunner(TEMPLATE, 2, new ParallelExecutor());
+    // small enough that every file runs on its own
+    runner.setMemoryBudget(1);
+    assertEquals(0, runner.run(inputs, out).size());
+
+    for (String input : inputs) {
+      String name = new File(input).getName().replace(".ppm", "");
+      String expected = this.dir.resolve("expected-" + name).toString();
+      ImageProcessorModel model = new ImageProcessorModel();
+      for (ImageProcessorCommands cmd : new CommandParser(new StringReader(
+              TEMPLATE.replace("{input}", input).replace("{output}", expected))).parseAll()) {
+        cmd.commandGo(model);
+      }
+      for (String suffix : new String[]{"-red.ppm", "-sepia.png"}) {
+        assertArrayEquals(Files.readAllBytes(Paths.get(expected + suffix)),
+                Files.readAllBytes(Paths.get(out, name + suffix)));
+      }
+    }
+  }
+
+  @Test
+  public void failuresAreReportedByFile() throws IOException {
+    String good = this.image("good.ppm", 5);
+    String bad = this.write("bad.ppm", "P3\n4 3\n255\n1 2 3\n");
+    String missing = this.dir.resolve("missing.ppm").toString();
+    Map<String, String> failures = new BatchRunner(TEMPLATE, 3, new ParallelExecutor())
+            .run(Arrays.asList(bad, good, missing), this.dir.resolve("out").toString());
+    assertEquals(Arrays.asList(bad, missing), Arrays.asList(failures.keySet().toArray()));
+    assertTrue(Files.exists(this.dir.resolve("out").resolve("good-sepia.png")));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidTemplate() {
+    new BatchRunner("load {input} img\nspin img img\n", 1, new ParallelExecutor());
+  }
+
+  @Test
+  public void pipelinedRunMatchesWholeFiles() throws IOException {
+    List<String> inputs = new ArrayList<>();
+    for (int i = 0; i < 12; i++) {
+      inputs.add(this.image("in" + i + ".ppm", i + 1));
+    }
+    inputs.add(this.write("broken.ppm", "P3\n4 3\n255\n1 2 3\n"));
+    Path whole = this.dir.resolve("whole");
+    Path piped = this.dir.resolve("piped");
+    Map<String, String> wholeFailures = new BatchRunner(TEMPLATE, 2, new ParallelExecutor())
+            .run(inputs, whole.toString());
+    BatchRunner runner = new BatchRunner(TEMPLATE, 1, new ParallelExecutor());
+    runner.setStages(2, 3, 2, 1);
+    Map<String, String> pipedFailures = runner.run(inputs, piped.toString());
+
+    assertEquals(wholeFailures, pipedFailures);
+    assertEquals(1, pipedFailures.size());
+    for (int i = 0; i < 12; i++) {
+      for (String suffix : new String[]{"-red.ppm", "-sepia.png"}) {
+        assertArrayEquals(Files.readAllBytes(whole.resolve("in" + i + suffix)),
+                Files.readAllBytes(piped.resolve("in" + i + suffix)));
+      }
+    }
+
+    List<StageMetrics> metrics = runner.getMetrics();
+    assertEquals(Arrays.asList("decode", "transform", "encode"),
+            Arrays.asList(metrics.get(0).getName(), metrics.get(1).getName(),
+                    metrics.get(2).getName()));
+    // the broken file fails while it is loaded and never reaches the later stages
+    assertEquals(12, metrics.get(0).getCompleted());
+    assertEquals(1, metrics.get(0).getFailed());
+    assertEquals(12, metrics.get(1).getCompleted());
+    assertEquals(12, metrics.get(2).getCompleted());
+    assertEquals(13, metrics.get(0).getMaxQueueDepth());
+    // the queues between the stages never hold more than their capacity
+    assertTrue(metrics.get(1).getMaxQueueDepth() <= 1);
+    assertTrue(metrics.get(2).getMaxQueueDepth() <= 1);
+    for (StageMetrics stage : metrics) {
+      assertEquals(0, stage.getQueueDepth());
+      assertTrue(stage.getThroughput() > 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidStages() {
+    new BatchRunner(TEMPLATE, 1, new ParallelExecutor()).setStages(1, 0, 1, 1);
+  }
+}
@@ -0,0 +1,186 @@
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import commands.ImageProcessorCommands;
+import controller.CommandGraph;
+import controller.CommandParser;
+import model.ImageProcessorModel;
+import model.ProcessorModelState;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for running the commands of a script in parallel along their dependencies.
+ */
+public class CommandGraphTest {
+
+  private static CommandGraph graph(String script) {
+    return new CommandGraph(new CommandParser(new StringReader(script)).parseAll());
+  }
+
+  @Test
+  public void dependenciesFollowImagesAndFiles() {
+    CommandGraph graph = graph("load res/3x2.ppm img\n"
+            + "red-component img r\n"
+            + "green-component img g\n"
+            + "save r.ppm r\n"
+            + "save g.ppm g\n"
+            + "load r.ppm again\n"
+            + "sepia r img\n");
+    assertEquals(Arrays.asList(), graph.getDependencies(0));
+    assertEquals(Arrays.asList(0), graph.getDependencies(1));
+    assertEquals(Arrays.asList(0), graph.getDependencies(2));
+    assertEquals(Arrays.asList(1), graph.getDependencies(3));
+    // saves keep the order of the script
+    assertEquals(Arrays.asList(2, 3), graph.getDependencies(4));
+    assertEquals(Arrays.asList(3), graph.getDependencies(5));
+    // img is overwritten only once everything reading it is done
+    assertEquals(Arrays.asList(0, 1, 2), graph.getDependencies(6));
+  }
+
+  @Test
+  public void commandsWithoutDependenciesRunAlone() {
+    CommandGraph graph = graph("load res/3x2.ppm a\n"
+            + "load res/3x2.ppm b\n"
+            + "ppm-format raw\n"
+            + "save a.ppm a\n"
+            + "save b.ppm b\n");
+    assertEquals(Arrays.asList(), graph.getDependencies(1));
+    assertEquals(Arrays.asList(0, 1), graph.getDependencies(2));
+    assertEquals(Arrays.asList(0, 2), graph.getDependencies(3));
+    assertEquals(Arrays.asList(1, 2, 3), graph.getDependencies(4));
+  }
+
+  /**
+   * A command touching the given images that runs the given work.
+   */
+  private static ImageProcessorCommands command(Set<String> inputs, Set<String> outputs,
+                                                Runnable work) {
+    return new ImageProcessorCommands() {
+      @Override
+      public void commandGo(ProcessorModelState model) {
+        work.run();
+      }
+
+      @Override
+      public Set<String> getInputs() {
+        return inputs;
+      }
+
+      @Override
+      public Set<String> getOutputs() {
+        return outputs;
+      }
+    };
+  }
+
+  @Test
+  public void independentCommandsRunAtOnce() {
+    CyclicBarrier barrier = new CyclicBarrier(3);
+    Runnable meet = () -> {
+      try {
+        // only returns if all three commands are running at the same time
+        barrier.await(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    };
+    List<ImageProcessorCommands> commands = new ArrayList<>();
+    for (String name : new String[]{"r", "g", "b"}) {
+      commands.add(command(Collections.singleton("img"), Collections.singleton(name), meet));
+    }
+    new CommandGraph(commands).run(null, 3);
+  }
+
+  @Test
+  public void dependentCommandsRunInOrder() {
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    List<ImageProcessorCommands> commands = new ArrayList<>();
+    commands.add(command(Collections.emptySet(), Collections.singleton("a"), () -> {
+      sleep(50);
+      order.add("first");
+    }));
+    commands.add(command(Collections.singleton("a"), Collections.singleton("b"),
+        () -> order.add("second")));
+    commands.add(command(Collections.singleton("b"), Collections.singleton("a"),
+        () -> order.add("third")));
+    new CommandGraph(commands).run(null, 4);
+    assertEquals(Arrays.asList("first", "second", "third"), order);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Test
+  public void failureStopsDependentCommands() {
+    List<String> ran = Collections.synchronizedList(new ArrayList<>());
+    List<ImageProcessorCommands> commands = new ArrayList<>();
+    commands.add(command(Collections.emptySet(), Collections.singleton("a"), () -> {
+      throw new IllegalArgumentException("broken");
+    }));
+    commands.add(command(Collections.singleton("a"), Collections.singleton("b"),
+        () -> ran.add("b")));
+    try {
+      new CommandGraph(commands).run(null, 2);
+      throw new AssertionError("expected the failure");
+    } catch (IllegalArgumentException e) {
+      assertEquals("broken", e.getMessage());
+    }
+    assertEquals(Collections.emptyList(), ran);
+  }
+
+  @Test
+  public void parallelScriptSavesWhatSequentialScriptSaves() throws IOException {
+    File dir = Files.createTempDirectory("script").toFile();
+    String script = "load res/3x2.ppm img\n"
+            + "red-component img r\n"
+            + "green-component img g\n"
+            + "blue-component img b\n"
+            + "brighten 40 img bright\n"
+            + "blur bright bright\n"
+            + "sepia bright s\n"
+            + "ppm-format raw\n"
+            + "save " + dir + "/OUT-r.ppm r\n"
+            + "save " + dir + "/OUT-g.ppm g\n"
+            + "save " + dir + "/OUT-b.png b\n"
+            + "save " + dir + "/OUT-s.bmp s\n"
+            + "load " + dir + "/OUT-r.ppm again\n"
+            + "horizontal-flip again again\n"
+            + "save " + dir + "/OUT-again.ppm again\n";
+    try {
+      ProcessorModelState sequential = new ImageProcessorModel();
+      for (ImageProcessorCommands cmd : new CommandParser(new StringReader(
+              script.replace("OUT", "seq"))).parseAll()) {
+        cmd.commandGo(sequential);
+      }
+      graph(script.replace("OUT", "par")).run(new ImageProcessorModel(), 4);
+
+      for (String file : new String[]{"r.ppm", "g.ppm", "b.png", "s.bmp", "again.ppm"}) {
+        assertArrayEquals(Files.readAllBytes(new File(dir, "seq-" + file).toPath()),
+                Files.readAllBytes(new File(dir, "par-" + file).toPath()));
+      }
+    } finally {
+      for (File file : dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+}
@@ -0,0 +1,283 @@
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import model.BorderMode;
+import model.ImageProcessorModel;
+import model.ImageUtil;
+import model.Kernel;
+import model.PackedImage;
+import model.ParallelExecutor;
+import model.Pixel;
+import model.Vectorization;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the Kernel analysis and the convolution paths it selects.
+ */
+public class ConvolutionTest {
+
+  @Test
+  public void blurIsSeparableAndDyadic() {
+    Kernel blur = new Kernel(new double[][]{new double[]{.0625, .125, .0625},
+                                            new double[]{.125, .25, .125},
+                                            new double[]{.0625, .125, .0625}});
+    assertTrue(blur.isSeparable());
+    assertTrue(blur.isDyadic());
+  }
+
+  @Test
+  public void sharpenIsDyadicOnly() {
+    Kernel sharpen = new Kernel(new double[][]{
+        new double[]{-.125, -.125, -.125, -.125, -.125},
+        new double[]{-.125, .25, .25, .25, -.125},
+        new double[]{-.125, .25, 1, .25, -.125},
+        new double[]{-.125, .25, .25, .25, -.125},
+        new double[]{-.125, -.125, -.125, -.125, -.125}});
+    assertFalse(sharpen.isSeparable());
+    assertTrue(sharpen.isDyadic());
+  }
+
+  @Test
+  public void thirdsAreNotDyadic() {
+    Kernel box = new Kernel(new double[][]{new double[]{1 / 9.0, 1 / 9.0, 1 / 9.0},
+                                           new double[]{1 / 9.0, 1 / 9.0, 1 / 9.0},
+                                           new double[]{1 / 9.0, 1 / 9.0, 1 / 9.0}});
+    assertTrue(box.isSeparable());
+    assertFalse(box.isDyadic());
+  }
+
+  private static int[] testPixels(int width, int height) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i * 7 % 256, i * 13 % 256, i * 29 % 256);
+    }
+    return pixels;
+  }
+
+  /**
+   * The green level the filters have always given, summing into an int so every tap truncates.
+   */
+  private static int filterGreen(int[] pixels, int width, int height, double[][] kernel,
+                                 int row, int col) {
+    return filter(pixels, width, height, kernel, row, col, 8);
+  }
+
+  /**
+   * The level of the channel at the given shift the filters have always given.
+   */
+  private static int filter(int[] pixels, int width, int height, double[][] kernel, int row,
+                            int col, int channelShift) {
+    int radius = kernel.length / 2;
+    int green = 0;
+    for (int i = -radius; i <= radius; i++) {
+      for (int j = -radius; j <= radius; j++) {
+        if (row + i >= 0 && row + i < height && col + j >= 0 && col + j < width) {
+          green += ((pixels[(row + i) * width + col + j] >> channelShift) & 0xff)
+                  * kernel[i + radius][j + radius];
+        }
+      }
+    }
+    return Math.max(0, Math.min(255, green));
+  }
+
+  @Test
+  public void filtersOfLargeImageMatchOriginalFilters() {
+    int width = 150;
+    int height = 140;
+    int[] pixels = testPixels(width, height);
+    double[][] blur = new double[][]{new double[]{.0625, .125, .0625},
+                                     new double[]{.125, .25, .125},
+                                     new double[]{.0625, .125, .0625}};
+    double[][] sharpen = new double[][]{new double[]{-.125, -.125, -.125, -.125, -.125},
+                                        new double[]{-.125, .25, .25, .25, -.125},
+                                        new double[]{-.125, .25, 1, .25, -.125},
+                                        new double[]{-.125, .25, .25, .25, -.125},
+                                        new double[]{-.125, -.125, -.125, -.125, -.125}};
+    ImageProcessorModel model = new ImageProcessorModel(new ParallelExecutor(3, 1000));
+    model.load("image", new PackedImage(width, height, pixels));
+    model.copy("image", "sharp");
+    model.blur("image");
+    model.sharpen("sharp");
+    Pixel[][] blurred = model.getCopy("image");
+    Pixel[][] sharpened = model.getCopy("sharp");
+
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        assertEquals(filterGreen(pixels, width, height, blur, row, col),
+                blurred[row][col].getGreen());
+        assertEquals(filterGreen(pixels, width, height, sharpen, row, col),
+                sharpened[row][col].getGreen());
+      }
+    }
+  }
+
+  @Test
+  public void blurMatchesOriginalFilterThroughSeparablePasses() {
+    double[][] blur = new double[][]{new double[]{.0625, .125, .0625},
+                                     new double[]{.125, .25, .125},
+                                     new double[]{.0625, .125, .0625}};
+    boolean vectorize = Vectorization.isEnabled();
+    try {
+      // wider and taller than a band, and narrower than the kernel
+      for (int[] shape : new int[][]{{150, 140}, {1, 9}, {9, 1}, {2, 2}}) {
+        int width = shape[0];
+        int height = shape[1];
+        int[] pixels = testPixels(width, height);
+        for (boolean on : new boolean[]{false, true}) {
+          Vectorization.setEnabled(on);
+          ImageProcessorModel model = new ImageProcessorModel(new ParallelExecutor(3, 1000));
+          model.load("image", new PackedImage(width, height, pixels));
+          model.blur("image");
+          Pixel[][] blurred = model.getCopy("image");
+          for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+              assertEquals(filter(pixels, width, height, blur, row, col, 16),
+                      blurred[row][col].getRed());
+              assertEquals(filter(pixels, width, height, blur, row, col, 8),
+                      blurred[row][col].getGreen());
+              assertEquals(filter(pixels, width, height, blur, row, col, 0),
+                      blurred[row][col].getBlue());
+            }
+          }
+        }
+      }
+    } finally {
+      Vectorization.setEnabled(vectorize);
+    }
+  }
+
+  @Test
+  public void convolveOfLargeImageMatchesExactSum() {
+    int width = 150;
+    int height = 140;
+    int[] pixels = testPixels(width, height);
+    ImageProcessorModel model = new ImageProcessorModel(new ParallelExecutor(3, 1000));
+    model.load("image", new PackedImage(width, height, pixels));
+    model.convolve(ImageUtil.readKernel("1/16,1/8,1/16,1/8,1/4,1/8,1/16,1/8,1/16"),
+            BorderMode.Zero, "image");
+    Pixel[][] blurred = model.getCopy("image");
+
+    int[][] weights = new int[][]{new int[]{1, 2, 1}, new int[]{2, 4, 2}, new int[]{1, 2, 1}};
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        int sum = 0;
+        for (int i = -1; i <= 1; i++) {
+          for (int j = -1; j <= 1; j++) {
+            if (row + i >= 0 && row + i < height && col + j >= 0 && col + j < width) {
+              sum += PackedImage.green(pixels[(row + i) * width + col + j])
+                      * weights[i + 1][j + 1];
+            }
+          }
+        }
+        assertEquals(sum / 16, blurred[row][col].getGreen());
+      }
+    }
+  }
+
+  @Test
+  public void borderModes() {
+    //a 3x1 image 10 20 30, convolved with a kernel that reads the pixel to the left
+    int[] pixels = new int[]{PackedImage.pack(10, 10, 10), PackedImage.pack(20, 20, 20),
+                             PackedImage.pack(30, 30, 30)};
+    Kernel left = ImageUtil.readKernel("0,0,0,1,0,0,0,0,0");
+    int[] expectedFirst = new int[]{0, 10, 20, 30};
+    BorderMode[] modes = new BorderMode[]{BorderMode.Zero, BorderMode.Clamp, BorderMode.Mirror,
+                                          BorderMode.Wrap};
+
+    for (int i = 0; i < modes.length; i++) {
+      ImageProcessorModel model = new ImageProcessorModel();
+      model.load("image", new PackedImage(3, 1, pixels));
+      model.convolve(left, modes[i], "image");
+      Pixel[][] result = model.getCopy("image");
+      assertEquals(expectedFirst[i], result[0][0].getRed());
+      assertEquals(10, result[0][1].getRed());
+      assertEquals(20, result[0][2].getRed());
+    }
+  }
+
+  @Test
+  public void largeKernelClampKeepsFlatImageFlat() {
+    int[] pixels = new int[20 * 9];
+    Arrays.fill(pixels, PackedImage.pack(90, 120, 200));
+    StringBuilder weights = new StringBuilder();
+    for (int i = 0; i < 81; i++) {
+      weights.append(i == 0 ? "" : ",").append("1/81");
+    }
+
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(20, 9, pixels));
+    model.convolve(ImageUtil.readKernel(weights.toString()), BorderMode.Clamp, "image");
+    Pixel[][] result = model.getCopy("image");
+    for (Pixel[] row : result) {
+      for (Pixel pixel : row) {
+        //1/81 is not exact, so the sum can land just below the original value
+        assertTrue(Math.abs(pixel.getGreen() - 120) <= 1);
+        assertTrue(Math.abs(pixel.getBlue() - 200) <= 1);
+      }
+    }
+  }
+
+  @Test
+  public void largeKernelMatchesDirectSum() {
+    //a 13x13 kernel that is not separable goes through the FFT
+    int size = 13;
+    double[][] weights = new double[size][size];
+    StringBuilder inline = new StringBuilder();
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        weights[i][j] = ((i * 7 + j * 3) % 5 - 1) / 64.0;
+        inline.append(i + j == 0 ? "" : ",").append(weights[i][j]);
+      }
+    }
+    Kernel kernel = ImageUtil.readKernel(inline.toString());
+    assertFalse(kernel.isSeparable());
+
+    int width = 90;
+    int height = 75;
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i * 7 % 256, i * 13 % 256, i * 29 % 256);
+    }
+
+    for (BorderMode border : new BorderMode[]{BorderMode.Zero, BorderMode.Wrap}) {
+      ImageProcessorModel model = new ImageProcessorModel(new ParallelExecutor(2, 500));
+      model.load("image", new PackedImage(width, height, pixels));
+      model.convolve(kernel, border, "image");
+      Pixel[][] result = model.getCopy("image");
+
+      for (int row = 0; row < height; row += 7) {
+        for (int col = 0; col < width; col += 3) {
+          int red = 0;
+          for (int i = 0; i < size; i++) {
+            for (int j = 0; j < size; j++) {
+              int r = row + i - size / 2;
+              int c = col + j - size / 2;
+              if (border == BorderMode.Wrap) {
+                r = Math.floorMod(r, height);
+                c = Math.floorMod(c, width);
+              } else if (r < 0 || c < 0 || r >= height || c >= width) {
+                continue;
+              }
+              red += PackedImage.red(pixels[r * width + c]) * (int) (weights[i][j] * 64);
+            }
+          }
+          assertEquals(PackedImage.clamp(red >> 6), result[row][col].getRed());
+        }
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void kernelNotSquare() {
+    ImageUtil.readKernel("1,2,3,4,5,6,7,8");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void evenKernel() {
+    new Kernel(new double[][]{new double[]{1, 1}, new double[]{1, 1}});
+  }
+}
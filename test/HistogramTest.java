@@ -0,0 +1,170 @@
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import model.GrayScale;
+import model.Histogram;
+import model.ImageProcessorModel;
+import model.PackedImage;
+import model.ParallelExecutor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests for the histograms of the ImageProcessorModel.
+ */
+public class HistogramTest {
+
+  private static PackedImage image(int width, int height) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i * 7 % 256, i * 13 % 251, i % 3 == 0 ? 255 : i % 17);
+    }
+    return new PackedImage(width, height, pixels);
+  }
+
+  @Test
+  public void countsEveryChannel() {
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(3, 1, new int[]{
+        PackedImage.pack(10, 20, 30), PackedImage.pack(10, 0, 255), PackedImage.pack(1, 1, 2)}));
+    Histogram histogram = model.getHistogram("image");
+
+    assertEquals(2, histogram.getRed(10));
+    assertEquals(1, histogram.getRed(1));
+    assertEquals(0, histogram.getRed(0));
+    assertEquals(1, histogram.getGreen(0));
+    assertEquals(1, histogram.getBlue(255));
+    // intensities are 20, 88 and 1
+    assertEquals(1, histogram.getIntensity(20));
+    assertEquals(1, histogram.getIntensity(88));
+    assertEquals(1, histogram.getIntensity(1));
+    assertEquals(2, histogram.getMaxRed());
+    assertEquals(1, histogram.getMaxIntensity());
+  }
+
+  @Test
+  public void parallelBandsMatchOneBand() {
+    PackedImage image = image(300, 200);
+    ImageProcessorModel serial = new ImageProcessorModel(new ParallelExecutor(1, 1));
+    ImageProcessorModel parallel = new ImageProcessorModel(new ParallelExecutor(4, 1000));
+    serial.load("image", image);
+    parallel.load("image", image);
+    Histogram expected = serial.getHistogram("image");
+    Histogram actual = parallel.getHistogram("image");
+
+    for (int level = 0; level < Histogram.LEVELS; level++) {
+      assertEquals(expected.getRed(level), actual.getRed(level));
+      assertEquals(expected.getGreen(level), actual.getGreen(level));
+      assertEquals(expected.getBlue(level), actual.getBlue(level));
+      assertEquals(expected.getIntensity(level), actual.getIntensity(level));
+    }
+  }
+
+  @Test
+  public void mapsKeepTheirFormat() {
+    PackedImage image = image(40, 30);
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", image);
+
+    Map<Integer, Integer> expected = new HashMap<>();
+    expected.put(-1, 0);
+    for (int i = 0; i < 40 * 30; i++) {
+      int rgb = image.getRGB(i / 40, i % 40);
+      int intensity = (PackedImage.red(rgb) + PackedImage.green(rgb) + PackedImage.blue(rgb)) / 3;
+      int count = expected.getOrDefault(intensity, 0) + 1;
+      expected.put(intensity, count);
+      expected.put(-1, Math.max(expected.get(-1), count));
+    }
+    assertEquals(expected, model.getIntensityCount("image"));
+  }
+
+  @Test
+  public void cachedUntilChanged() {
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", image(20, 10));
+    long version = model.getVersion("image");
+    Histogram first = model.getHistogram("image");
+    assertSame(first, model.getHistogram("image"));
+
+    model.copy("image", "copy");
+    assertSame(first, model.getHistogram("copy"));
+    assertNotEquals(version, model.getVersion("copy"));
+
+    model.brighten(10, "image");
+    assertNotEquals(version, model.getVersion("image"));
+    Histogram brightened = model.getHistogram("image");
+    assertNotSame(first, brightened);
+    assertEquals(first.getRed(0), brightened.getRed(10));
+    assertSame(first, model.getHistogram("copy"));
+  }
+
+  /**
+   * Applies the command to the image twice, once with its histogram known so the new one is
+   * derived and once without so it is counted, and checks they agree.
+   */
+  private static void assertDerived(PackedImage image, String command) {
+    Histogram[] results = new Histogram[2];
+    for (int pass = 0; pass < 2; pass++) {
+      ImageProcessorModel model = new ImageProcessorModel();
+      model.load("image", image);
+      if (pass == 0) {
+        model.getHistogram("image");
+      }
+      String[] parts = command.split(" ");
+      switch (parts[0]) {
+        case "brighten":
+          model.brighten(Integer.parseInt(parts[1]), "image");
+          break;
+        case "sepia":
+          model.sepia("image");
+          break;
+        default:
+          model.toGrayScale(GrayScale.valueOf(parts[0]), "image");
+      }
+      results[pass] = model.getHistogram("image");
+    }
+    for (int level = 0; level < Histogram.LEVELS; level++) {
+      assertEquals(results[1].getRed(level), results[0].getRed(level));
+      assertEquals(results[1].getGreen(level), results[0].getGreen(level));
+      assertEquals(results[1].getBlue(level), results[0].getBlue(level));
+      assertEquals(results[1].getIntensity(level), results[0].getIntensity(level));
+    }
+    assertEquals(results[1].getMaxIntensity(), results[0].getMaxIntensity());
+  }
+
+  @Test
+  public void derivedMatchesCounted() {
+    PackedImage image = image(50, 40);
+    PackedImage dark = new PackedImage(2, 2, new int[]{0x101010, 0x203040, 0x000000, 0x7f7f7f});
+    assertDerived(dark, "brighten 100");
+    assertDerived(dark, "brighten -100");
+    assertDerived(image, "brighten 30");
+    for (GrayScale type : GrayScale.values()) {
+      assertDerived(image, type.name());
+    }
+    assertDerived(image, "sepia");
+  }
+
+  @Test
+  public void pointOperationsReuseHistogram() {
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(2, 1, new int[]{0x102030, 0x405060}));
+    Histogram original = model.getHistogram("image");
+    model.toGrayScale(GrayScale.Red, "image");
+    model.brighten(5, "image");
+    Histogram derived = model.getHistogram("image");
+
+    assertEquals(original.getRed(0x10), derived.getBlue(0x15));
+    assertEquals(original.getRed(0x40), derived.getIntensity(0x45));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void notLoaded() {
+    new ImageProcessorModel().getHistogram("image");
+  }
+}
@@ -1,11 +1,19 @@
 import org.junit.Test;
 
 import controller.ImageProcessorController;
+import model.BorderMode;
 import model.GrayScale;
+import model.Histogram;
+import model.ImageChangeListener;
 import model.ImageProcessorModel;
+import model.Kernel;
+import model.PPMFormat;
+import model.PackedImage;
 import model.Pixel;
 import model.ProcessorModelState;
+import model.StreamPipeline;
 
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
@@ -37,6 +45,53 @@ public class ImageProcessorControllerTest {
     assertEquals(a.toString(), "small 255 255 255 0 0 255 255 0 0 255 0 0 0 255 0 0 0 255 ");
   }
 
+  @org.junit.Test
+  public void startProgramLoadRegionAndSubsample() throws Exception {
+    setUp();
+    this.read = new StringReader("load res/3x2.ppm small --subsample 2 "
+            + "load res/3x2.ppm big --region 0,1,2,2");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+    assertEquals(a.toString(), "small 255 255 255 0 255 0 "
+            + "big 255 0 0 255 0 0 0 255 0 0 0 255 ");
+  }
+
+  @org.junit.Test(expected = IllegalArgumentException.class)
+  public void startProgramLoadInvalidRegion() throws Exception {
+    setUp();
+    this.read = new StringReader("load res/3x2.ppm small --region 1,2");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+  }
+
+  @org.junit.Test
+  public void startProgramStream() throws Exception {
+    setUp();
+    this.read = new StringReader("stream res/3x2.ppm out.png --band 16 brighten 10 sepia "
+            + "convolve 1,1,1,1,1,1,1,1,1 --border mirror horizontal-flip blur end "
+            + "load res/3x2.ppm small");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+    assertEquals("streamed res/3x2.ppm to out.png "
+            + "small 255 255 255 0 0 255 255 0 0 255 0 0 0 255 0 0 0 255 ", a.toString());
+  }
+
+  @org.junit.Test(expected = IllegalArgumentException.class)
+  public void startProgramStreamVerticalFlip() throws Exception {
+    setUp();
+    this.read = new StringReader("stream res/3x2.ppm out.png vertical-flip end");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+  }
+
+  @org.junit.Test(expected = IllegalArgumentException.class)
+  public void startProgramStreamWithoutEnd() throws Exception {
+    setUp();
+    this.read = new StringReader("stream res/3x2.ppm out.png sepia");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+  }
+
   @org.junit.Test
   public void startProgramFlip() throws Exception {
     setUp();
@@ -140,6 +195,40 @@ public class ImageProcessorControllerTest {
             "vertical successful vertical flip vertical path/path2/path3.ppm saved ");
   }
 
+  @org.junit.Test
+  public void startProgramThenConvolve() throws Exception {
+    setUp();
+    this.read = new StringReader("load res/3x2.ppm small convolve 0,0,0,0,1,0,0,0,0 small same "
+            + "convolve 1,1,1,1,1,1,1,1,1 small box --border mirror ");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+    assertEquals(a.toString(), "small 255 255 255 0 0 255 255 0 0 255 0 0 0 255 0 0 0 255 " +
+            "small copied same same convolved 3 Zero small copied box box convolved 3 Mirror ");
+  }
+
+  @Test
+  public void startProgramThenPPMFormat() throws Exception {
+    setUp();
+    this.read = new StringReader("ppm-format raw ppm-format plain ");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+    assertEquals(a.toString(), "ppm format Raw ppm format Plain ");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidPPMFormat() {
+    this.read = new StringReader("ppm-format binary");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void convolveEvenKernel() {
+    this.read = new StringReader("convolve 1,1,1,1 small big");
+    ImageProcessorController controller = new ImageProcessorController(fakeModel, read);
+    controller.startProgram();
+  }
+
   @Test(expected = IllegalArgumentException.class)
   public void startModel() {
     this.read = new StringReader("bruh 1 1");
@@ -173,6 +262,11 @@ public class ImageProcessorControllerTest {
       }
     }
 
+    @Override
+    public void load(String name, PackedImage image) {
+      this.load(name, image.toPixels());
+    }
+
     @Override
     public void flip(String name, boolean vertical) {
       try {
@@ -208,6 +302,17 @@ public class ImageProcessorControllerTest {
       return new Pixel[0][0];
     }
 
+    @Override
+    public void copy(String name, String destination) {
+      try {
+        a.append(name + " ");
+        a.append("copied ");
+        a.append(destination + " ");
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Invalid arguments in fakeModel");
+      }
+    }
+
     @Override
     public void toGrayScale(GrayScale type, String name) {
       try {
@@ -249,6 +354,16 @@ public class ImageProcessorControllerTest {
       }
     }
 
+    @Override
+    public void convolve(Kernel kernel, BorderMode border, String name) {
+      try {
+        a.append(name + " ");
+        a.append("convolved " + kernel.getSize() + " " + border.toString() + " ");
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Invalid arguments in fakeModel");
+      }
+    }
+
     @Override
     public void transformationGrayscale(String name) {
       try {
@@ -269,6 +384,44 @@ public class ImageProcessorControllerTest {
       }
     }
 
+    @Override
+    public void setPPMFormat(PPMFormat format) {
+      try {
+        a.append("ppm format " + format + " ");
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Invalid arguments in fakeModel");
+      }
+    }
+
+    @Override
+    public void stream(String inputPath, String outputPath, StreamPipeline pipeline) {
+      try {
+        a.append("streamed " + inputPath + " to " + outputPath + " ");
+      } catch (IOException e) {
+        throw new IllegalArgumentException("Invalid arguments in fakeModel");
+      }
+    }
+
+    @Override
+    public long getVersion(String name) {
+      return 0;
+    }
+
+    @Override
+    public Histogram getHistogram(String imageName) {
+      return null;
+    }
+
+    @Override
+    public BufferedImage getDisplayImage(String name) {
+      return null;
+    }
+
+    @Override
+    public void addImageChangeListener(ImageChangeListener listener) {
+      // the controller never listens
+    }
+
     @Override
     public Map<Integer, Integer> getRedCount(String imageName) {
       return null;
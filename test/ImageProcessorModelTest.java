@@ -1,5 +1,11 @@
 import org.junit.Test;
 
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import model.ProcessorModelState;
 import model.ImageProcessorModel;
 import model.Pixel;
@@ -8,6 +14,7 @@ import model.ImageUtil;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * The test class for the ImageProcessorModel.
@@ -126,6 +133,33 @@ public class ImageProcessorModelTest {
     }
   }
 
+  @Test
+  public void copy() {
+    Pixel[][] image2 = new Pixel[2][2];
+    image2[0][0] = new Pixel(1, 1, 1);
+    image2[1][0] = new Pixel(2, 2, 2);
+    image2[0][1] = new Pixel(3, 3, 3);
+    image2[1][1] = new Pixel(4, 4, 4);
+
+    model.load("image1", image2);
+    model.copy("image1", "image2");
+
+    //transforming the copy leaves the original alone
+    model.brighten(10, "image2");
+    assertEquals(model.getCopy("image1")[0][0].getGreen(), 1);
+    assertEquals(model.getCopy("image2")[0][0].getGreen(), 11);
+
+    //and transforming the original leaves the copy alone
+    model.flip("image1", true);
+    assertEquals(model.getCopy("image1")[0][0].getGreen(), 2);
+    assertEquals(model.getCopy("image2")[0][0].getGreen(), 11);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void copyNotLoaded() {
+    model.copy("missing", "image2");
+  }
+
   @Test
   public void toGrayScale() {
     Pixel[][] image2 = new Pixel[2][2];
@@ -184,6 +218,107 @@ public class ImageProcessorModelTest {
     assertEquals(model.getCopy("image1")[0][0].getRed(), 3);
   }
 
+  @Test
+  public void toGrayScaleMatchesPixel() {
+    Pixel[][] image2 = new Pixel[16][16];
+    for (int i = 0; i < 256; i++) {
+      image2[i / 16][i % 16] = new Pixel(i, (i * 37) % 256, (i * 101) % 256);
+    }
+    // white, whose luma rounds down to 254
+    image2[15][15] = new Pixel(255, 255, 255);
+
+    for (GrayScale type : GrayScale.values()) {
+      model.load("image1", image2);
+      model.toGrayScale(type, "image1");
+      Pixel[][] gray = model.getCopy("image1");
+      for (int i = 0; i < 256; i++) {
+        Pixel expected = new Pixel(image2[i / 16][i % 16]);
+        expected.toGrayScale(type);
+        assertEquals(expected.getRed(), gray[i / 16][i % 16].getRed());
+        assertEquals(expected.getRed(), gray[i / 16][i % 16].getBlue());
+      }
+    }
+  }
+
+  @Test
+  public void chainedPointOperationsMatchSteps() {
+    Pixel[][] image2 = new Pixel[16][16];
+    for (int i = 0; i < 256; i++) {
+      image2[i / 16][i % 16] = new Pixel(i, (i * 37) % 256, (i * 101) % 256);
+    }
+
+    // every step looked at, so every step is applied on its own
+    ProcessorModelState steps = new ImageProcessorModel();
+    steps.load("image1", image2);
+    steps.brighten(40, "image1");
+    steps.getCopy("image1");
+    steps.sepia("image1");
+    steps.getCopy("image1");
+    steps.brighten(-70, "image1");
+    steps.getCopy("image1");
+    steps.toGrayScale(GrayScale.Luma, "image1");
+    steps.getCopy("image1");
+    steps.brighten(25, "image1");
+    Pixel[][] expected = steps.getCopy("image1");
+
+    // nothing looked at until the end, so the steps run as one chain
+    model.load("image1", image2);
+    model.brighten(40, "image1");
+    model.sepia("image1");
+    model.brighten(-70, "image1");
+    model.toGrayScale(GrayScale.Luma, "image1");
+    model.brighten(25, "image1");
+    Pixel[][] chained = model.getCopy("image1");
+
+    for (int i = 0; i < 256; i++) {
+      assertEquals(expected[i / 16][i % 16].getRed(), chained[i / 16][i % 16].getRed());
+      assertEquals(expected[i / 16][i % 16].getGreen(), chained[i / 16][i % 16].getGreen());
+      assertEquals(expected[i / 16][i % 16].getBlue(), chained[i / 16][i % 16].getBlue());
+    }
+  }
+
+  @Test
+  public void copyOfPendingImage() {
+    model.load("image1", image);
+    model.brighten(10, "image1");
+    model.copy("image1", "image2");
+    model.brighten(10, "image2");
+    model.load("image1", image);
+
+    assertEquals(model.getCopy("image1")[0][0].getRed(), image[0][0].getRed());
+    assertEquals(model.getCopy("image2")[0][0].getRed(),
+            Math.min(255, image[0][0].getRed() + 20));
+  }
+
+  @Test
+  public void colorTransformationsMatchPixel() {
+    Pixel[][] image2 = new Pixel[16][16];
+    for (int i = 0; i < 256; i++) {
+      image2[i / 16][i % 16] = new Pixel(i, (i * 37) % 256, (i * 101) % 256);
+    }
+    // white, whose grayscale rounds down to 254
+    image2[15][15] = new Pixel(255, 255, 255);
+
+    double[][] matrices = new double[][]{
+      new double[]{.2126, .7152, .0722, .2126, .7152, .0722, .2126, .7152, .0722},
+      new double[]{.393, .769, .189, .349, .686, .168, .272, .534, .131}};
+    for (int t = 0; t < matrices.length; t++) {
+      model.load("image1", image2);
+      if (t == 0) {
+        model.transformationGrayscale("image1");
+      } else {
+        model.sepia("image1");
+      }
+      Pixel[][] transformed = model.getCopy("image1");
+      for (int i = 0; i < 256; i++) {
+        Pixel expected = image2[i / 16][i % 16].applyTransformation(matrices[t]);
+        assertEquals(expected.getRed(), transformed[i / 16][i % 16].getRed());
+        assertEquals(expected.getGreen(), transformed[i / 16][i % 16].getGreen());
+        assertEquals(expected.getBlue(), transformed[i / 16][i % 16].getBlue());
+      }
+    }
+  }
+
   @Test
   public void toGrayScaleTransformation() {
     Pixel[][] image2 = new Pixel[2][2];
@@ -286,4 +421,92 @@ public class ImageProcessorModelTest {
       }
     }
   }
+
+  @Test
+  public void displayImageSharesPixels() {
+    Pixel[][] image2 = new Pixel[][]{new Pixel[]{new Pixel(1, 2, 3), new Pixel(200, 100, 50)}};
+    model.load("image1", image2);
+    BufferedImage display = model.getDisplayImage("image1");
+    assertEquals(0x010203, display.getRGB(0, 0) & 0xffffff);
+    assertEquals(0xc86432, display.getRGB(1, 0) & 0xffffff);
+    assertTrue(((DataBufferInt) display.getRaster().getDataBuffer()).getData()
+            == ((DataBufferInt) model.getDisplayImage("image1").getRaster().getDataBuffer())
+            .getData());
+
+    // drawing it gives the same colors as the model holds
+    BufferedImage drawn = new BufferedImage(2, 1, BufferedImage.TYPE_INT_RGB);
+    drawn.getGraphics().drawImage(display, 0, 0, null);
+    assertEquals(0xc86432, drawn.getRGB(1, 0) & 0xffffff);
+
+    // a change stores a new image, the one on display is left as it was
+    model.brighten(10, "image1");
+    assertEquals(0x010203, display.getRGB(0, 0) & 0xffffff);
+    assertEquals(0x0b0c0d, model.getDisplayImage("image1").getRGB(0, 0) & 0xffffff);
+  }
+
+  @Test
+  public void listenersToldOfChanges() {
+    List<String> changed = new ArrayList<>();
+    model.addImageChangeListener(changed::add);
+    model.load("image1", image);
+    model.brighten(10, "image1");
+    model.copy("image1", "image2");
+    model.flip("image2", true);
+    model.blur("image1");
+    model.getCopy("image1");
+    assertEquals(Arrays.asList("image1", "image1", "image2", "image2", "image1"), changed);
+  }
+
+  @Test
+  public void listenersCalledWithoutTheLock() {
+    List<Boolean> locked = new ArrayList<>();
+    model.addImageChangeListener(name -> locked.add(Thread.holdsLock(model)));
+    model.load("image1", image);
+    model.brighten(10, "image1");
+    model.copy("image1", "image2");
+    assertEquals(Arrays.asList(false, false, false), locked);
+  }
+
+  @Test
+  public void concurrentOperationsOnDifferentNames() throws InterruptedException {
+    model.load("image1", image);
+    model.brighten(10, "image1");
+    ImageProcessorModel expected = new ImageProcessorModel();
+    expected.load("image1", image);
+    expected.brighten(10, "image1");
+
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < 8; i++) {
+      String name = "copy" + i;
+      int amount = i;
+      for (ImageProcessorModel target : new ImageProcessorModel[]{model, expected}) {
+        Runnable work = () -> {
+          target.copy("image1", name);
+          target.toGrayScale(GrayScale.values()[amount % GrayScale.values().length], name);
+          target.blur(name);
+          target.flip(name, amount % 2 == 0);
+          target.getHistogram(name);
+        };
+        if (target == model) {
+          threads.add(new Thread(work));
+        } else {
+          work.run();
+        }
+      }
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int i = 0; i < 8; i++) {
+      assertEquals(expected.getIntensityCount("copy" + i), model.getIntensityCount("copy" + i));
+      assertTrue(Arrays.equals(
+              ((DataBufferInt) expected.getDisplayImage("copy" + i).getRaster().getDataBuffer())
+                      .getData(),
+              ((DataBufferInt) model.getDisplayImage("copy" + i).getRaster().getDataBuffer())
+                      .getData()));
+    }
+  }
 }
@@ -0,0 +1,388 @@
+import org.junit.Test;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import model.ImageProcessorModel;
+import model.ImageUtil;
+import model.PPMFormat;
+import model.PackedImage;
+import model.Pixel;
+import model.ReadOptions;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for reading images through the ImageUtil.
+ */
+public class ImageUtilTest {
+
+  private static PackedImage read(String contents) throws IOException {
+    File file = File.createTempFile("image", ".ppm");
+    try {
+      Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+      return ImageUtil.readImage(file.getPath());
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void readPPMMatchesFile() {
+    Pixel[][] image = ImageUtil.readFile("res/3x2.ppm");
+    assertEquals(3, image.length);
+    assertEquals(2, image[0].length);
+    assertEquals(255, image[0][0].getRed());
+    assertEquals(255, image[0][0].getGreen());
+    assertEquals(255, image[0][0].getBlue());
+    assertEquals(0, image[0][1].getGreen());
+  }
+
+  @Test
+  public void readPPMWithCommentsAnywhere() throws IOException {
+    PackedImage image = read("P3# magic\n# a comment line\n2 #width\n 1\n255\n"
+            + "1 2 3# first pixel\n  4\t5\r\n6");
+    assertEquals(2, image.getWidth());
+    assertEquals(1, image.getHeight());
+    assertEquals(PackedImage.pack(1, 2, 3), image.getRGB(0, 0));
+    assertEquals(PackedImage.pack(4, 5, 6), image.getRGB(0, 1));
+  }
+
+  @Test
+  public void readLargePPM() throws IOException {
+    int width = 300;
+    int height = 250;
+    StringBuilder contents = new StringBuilder("P3\n" + width + " " + height + "\n255\n");
+    for (int i = 0; i < width * height; i++) {
+      contents.append(i % 256).append(' ').append(i / 7 % 256).append(' ').append(i % 3)
+              .append('\n');
+    }
+    PackedImage image = read(contents.toString());
+    for (int i = 0; i < width * height; i++) {
+      assertEquals(PackedImage.pack(i % 256, i / 7 % 256, i % 3),
+              image.getRGB(i / width, i % width));
+    }
+  }
+
+  private static PackedImage read(byte[] contents, String suffix) throws IOException {
+    File file = File.createTempFile("image", suffix);
+    try {
+      Files.write(file.toPath(), contents);
+      return ImageUtil.readImage(file.getPath());
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static byte[] bytes(String header, int... data) {
+    byte[] head = header.getBytes(StandardCharsets.US_ASCII);
+    byte[] bytes = new byte[head.length + data.length];
+    System.arraycopy(head, 0, bytes, 0, head.length);
+    for (int i = 0; i < data.length; i++) {
+      bytes[head.length + i] = (byte) data[i];
+    }
+    return bytes;
+  }
+
+  @Test
+  public void readRawPPM() throws IOException {
+    PackedImage image = read(bytes("P6 # raw\n2 1\n255\n", 1, 2, 3, 200, 0, 255), ".ppm");
+    assertEquals(PackedImage.pack(1, 2, 3), image.getRGB(0, 0));
+    assertEquals(PackedImage.pack(200, 0, 255), image.getRGB(0, 1));
+  }
+
+  @Test
+  public void readRawPGMAndSixteenBits() throws IOException {
+    PackedImage gray = read(bytes("P5\n3 1\n255\n", 0, 128, 255), ".pgm");
+    assertEquals(PackedImage.pack(128, 128, 128), gray.getRGB(0, 1));
+    assertEquals(PackedImage.pack(255, 255, 255), gray.getRGB(0, 2));
+
+    PackedImage wide = read(bytes("P6\n1 1\n65535\n", 0xff, 0xff, 0x80, 0x00, 0, 0), ".ppm");
+    assertEquals(PackedImage.pack(255, 128, 0), wide.getRGB(0, 0));
+  }
+
+  @Test
+  public void readPlainPGMScaled() throws IOException {
+    PackedImage image = read("P2\n2 1\n15\n15 5\n");
+    assertEquals(PackedImage.pack(255, 255, 255), image.getRGB(0, 0));
+    assertEquals(PackedImage.pack(85, 85, 85), image.getRGB(0, 1));
+  }
+
+  @Test
+  public void saveRawRoundTrip() throws IOException {
+    int[] pixels = new int[70 * 50];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i % 256, i * 3 % 256, i * 5 % 256);
+    }
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(70, 50, pixels));
+    model.setPPMFormat(PPMFormat.Raw);
+    File ppm = File.createTempFile("image", ".ppm");
+    File pgm = File.createTempFile("image", ".pgm");
+    try {
+      model.save(ppm.getPath(), "image");
+      model.save(pgm.getPath(), "image");
+      // "P6\n70 50\n255\n" then three bytes a pixel
+      assertEquals(13 + 70 * 50 * 3, ppm.length());
+      PackedImage color = ImageUtil.readImage(ppm.getPath());
+      PackedImage gray = ImageUtil.readImage(pgm.getPath());
+      for (int i = 0; i < pixels.length; i++) {
+        assertEquals(pixels[i], color.getRGB(i / 70, i % 70));
+        int intensity = (PackedImage.red(pixels[i]) + PackedImage.green(pixels[i])
+                + PackedImage.blue(pixels[i])) / 3;
+        assertEquals(PackedImage.pack(intensity, intensity, intensity),
+                gray.getRGB(i / 70, i % 70));
+      }
+    } finally {
+      ppm.delete();
+      pgm.delete();
+    }
+  }
+
+  @Test
+  public void savePlainAcrossBuffers() throws IOException {
+    // large enough to fill several of the writer's buffers
+    int width = 400;
+    int height = 300;
+    int[] pixels = new int[width * height];
+    StringBuilder expected = new StringBuilder("P3\n" + width + " " + height + "\n255\n");
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i % 256, i / 3 % 256, i * 7 % 256);
+      expected.append(i % 256).append('\n').append(i / 3 % 256).append('\n')
+              .append(i * 7 % 256).append('\n');
+    }
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(width, height, pixels));
+    File ppm = File.createTempFile("image", ".ppm");
+    try {
+      model.save(ppm.getPath(), "image");
+      assertEquals(expected.toString(),
+              new String(Files.readAllBytes(ppm.toPath()), StandardCharsets.US_ASCII));
+    } finally {
+      ppm.delete();
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void saveToMissingDirectory() {
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(2, 2));
+    model.save("no-such-directory/image.ppm", "image");
+  }
+
+  private static int scanPixel(int i) {
+    return PackedImage.pack(i % 251, i / 700 % 256, i * 11 % 256);
+  }
+
+  @Test
+  public void mapLargeRawPPM() throws IOException {
+    // large enough to be mapped instead of read
+    int width = 700;
+    int height = 600;
+    int[] data = new int[width * height * 3];
+    for (int i = 0; i < width * height; i++) {
+      data[3 * i] = PackedImage.red(scanPixel(i));
+      data[3 * i + 1] = PackedImage.green(scanPixel(i));
+      data[3 * i + 2] = PackedImage.blue(scanPixel(i));
+    }
+    File scan = File.createTempFile("scan", ".ppm");
+    File out = File.createTempFile("out", ".ppm");
+    try {
+      Files.write(scan.toPath(), bytes("P6\n# scan\n700 600\n255\n", data));
+      PackedImage image = ImageUtil.readImage(scan.getPath());
+      for (int i = 0; i < width * height; i++) {
+        assertEquals(scanPixel(i), image.getRGB(i / width, i % width));
+      }
+
+      ImageProcessorModel model = new ImageProcessorModel();
+      model.load("scan", image);
+      model.copy("scan", "copy");
+      model.setPPMFormat(PPMFormat.Raw);
+      model.save(out.getPath(), "copy");
+      assertEquals(java.util.Arrays.toString(bytes("P6\n700 600\n255\n", data)),
+              java.util.Arrays.toString(Files.readAllBytes(out.toPath())));
+
+      // overwriting the mapped file leaves the images loaded from it as they were
+      model.brighten(10, "scan");
+      model.save(scan.getPath(), "scan");
+      Pixel[][] copy = model.getCopy("copy");
+      PackedImage brightened = ImageUtil.readImage(scan.getPath());
+      for (int i = 0; i < width * height; i++) {
+        int rgb = scanPixel(i);
+        Pixel pixel = copy[i / width][i % width];
+        assertEquals(rgb, PackedImage.pack(pixel.getRed(), pixel.getGreen(), pixel.getBlue()));
+        assertEquals(PackedImage.pack(PackedImage.red(rgb) + 10, PackedImage.green(rgb) + 10,
+                PackedImage.blue(rgb) + 10), brightened.getRGB(i / width, i % width));
+      }
+    } finally {
+      scan.delete();
+      out.delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void mapTruncatedRawPPM() throws IOException {
+    read(bytes("P6\n1000 1000\n255\n", new int[1000]), ".ppm");
+  }
+
+  @Test
+  public void convertToBufferedImage() {
+    int[] pixels = new int[6 * 4];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = scanPixel(i * 977);
+    }
+    PackedImage image = new PackedImage(6, 4, pixels);
+    BufferedImage packed = ImageUtil.convertToBufferedFromImage(image);
+    BufferedImage unpacked = ImageUtil.convertToBufferedFromImage(image.toPixels());
+    for (int i = 0; i < pixels.length; i++) {
+      assertEquals(pixels[i], packed.getRGB(i % 6, i / 6) & 0xffffff);
+      assertEquals(pixels[i], unpacked.getRGB(i % 6, i / 6) & 0xffffff);
+    }
+  }
+
+  @Test
+  public void saveAndReadLosslessFormats() throws IOException {
+    int[] pixels = new int[37 * 23];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = scanPixel(i * 31);
+    }
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(37, 23, pixels));
+    for (String suffix : new String[]{".png", ".bmp"}) {
+      File file = File.createTempFile("image", suffix);
+      try {
+        model.save(file.getPath(), "image");
+        PackedImage read = ImageUtil.readImage(file.getPath());
+        for (int i = 0; i < pixels.length; i++) {
+          assertEquals(pixels[i], read.getRGB(i / 37, i % 37));
+        }
+      } finally {
+        file.delete();
+      }
+    }
+  }
+
+  @Test
+  public void readGrayAndAlphaPNG() throws IOException {
+    BufferedImage gray = new BufferedImage(256, 1, BufferedImage.TYPE_BYTE_GRAY);
+    BufferedImage alpha = new BufferedImage(256, 1, BufferedImage.TYPE_INT_ARGB);
+    for (int level = 0; level < 256; level++) {
+      gray.getRaster().setSample(level, 0, 0, level);
+      alpha.setRGB(level, 0, ((255 - level) << 24) | scanPixel(level * 101));
+    }
+    File file = File.createTempFile("image", ".png");
+    try {
+      ImageIO.write(gray, "png", file);
+      PackedImage grayRead = ImageUtil.readImage(file.getPath());
+      ImageIO.write(alpha, "png", file);
+      PackedImage alphaRead = ImageUtil.readImage(file.getPath());
+      for (int level = 0; level < 256; level++) {
+        // the stored level, not the level after color conversion
+        assertEquals(PackedImage.pack(level, level, level), grayRead.getRGB(0, level));
+        assertEquals(scanPixel(level * 101), alphaRead.getRGB(0, level));
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  private static void assertRegion(PackedImage full, PackedImage read, Rectangle region,
+                                   int step) {
+    int width = (Math.min(region.width, full.getWidth() - region.x) + step - 1) / step;
+    int height = (Math.min(region.height, full.getHeight() - region.y) + step - 1) / step;
+    assertEquals(width, read.getWidth());
+    assertEquals(height, read.getHeight());
+    for (int row = 0; row < height; row++) {
+      for (int col = 0; col < width; col++) {
+        assertEquals(full.getRGB(region.y + row * step, region.x + col * step),
+                read.getRGB(row, col));
+      }
+    }
+  }
+
+  @Test
+  public void readRegionAndSubsample() throws IOException {
+    int[] pixels = new int[37 * 23];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = scanPixel(i * 13);
+    }
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.load("image", new PackedImage(37, 23, pixels));
+    // runs past the bottom of the image, which is left out
+    Rectangle region = new Rectangle(3, 2, 20, 30);
+    for (String suffix : new String[]{".ppm", ".raw.ppm", ".pgm", ".png", ".bmp"}) {
+      File file = File.createTempFile("image", suffix);
+      try {
+        model.setPPMFormat(suffix.equals(".raw.ppm") ? PPMFormat.Raw : PPMFormat.Plain);
+        model.save(file.getPath(), "image");
+        PackedImage full = ImageUtil.readImage(file.getPath());
+        for (int step : new int[]{1, 2, 4}) {
+          assertRegion(full, ImageUtil.readImage(file.getPath(), new ReadOptions(region, step)),
+                  region, step);
+          assertRegion(full, ImageUtil.readImage(file.getPath(), new ReadOptions(null, step)),
+                  new Rectangle(0, 0, 37, 23), step);
+        }
+      } finally {
+        file.delete();
+      }
+    }
+  }
+
+  @Test
+  public void readRegionSkipsPlainRowsWithComments() throws IOException {
+    File file = File.createTempFile("image", ".ppm");
+    try {
+      Files.write(file.toPath(), ("P3\n2 3\n255\n1 2 3#row 0\n4 5 6\n"
+              + "# a comment line\n7 8 9 10#x\n11 12\n13 14 15 16 17 18\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      PackedImage region = ImageUtil.readImage(file.getPath(),
+              new ReadOptions(new Rectangle(1, 2, 1, 1), 1));
+      assertEquals(1, region.getWidth());
+      assertEquals(1, region.getHeight());
+      assertEquals(PackedImage.pack(16, 17, 18), region.getRGB(0, 0));
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void readRegionOfMappedPPM() throws IOException {
+    int[] data = new int[700 * 600 * 3];
+    for (int i = 0; i < 700 * 600; i++) {
+      data[3 * i] = PackedImage.red(scanPixel(i));
+      data[3 * i + 1] = PackedImage.green(scanPixel(i));
+      data[3 * i + 2] = PackedImage.blue(scanPixel(i));
+    }
+    File scan = File.createTempFile("scan", ".ppm");
+    try {
+      Files.write(scan.toPath(), bytes("P6\n700 600\n255\n", data));
+      PackedImage full = ImageUtil.readImage(scan.getPath());
+      Rectangle region = new Rectangle(650, 10, 100, 500);
+      assertRegion(full, ImageUtil.readImage(scan.getPath(), new ReadOptions(region, 8)),
+              region, 8);
+    } finally {
+      scan.delete();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readRegionOutsideImage() {
+    ImageUtil.readImage("res/3x2.ppm", new ReadOptions(new Rectangle(5, 5, 2, 2), 1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readTruncatedPPM() throws IOException {
+    read("P3\n2 2\n255\n1 2 3 4 5 6 7 8 9\n");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void readPPMWithGarbage() throws IOException {
+    read("P3\n1 1\n255\n1 2x 3\n");
+  }
+}
@@ -0,0 +1,272 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import commands.ImageProcessorCommands;
+import controller.CommandParser;
+import controller.JobServer;
+import model.ImageProcessorModel;
+import model.ParallelExecutor;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for running scripts sent to the job server.
+ */
+public class JobServerTest {
+  private static final String SCRIPT = "load in/a.ppm img\n"
+          + "red-component img r\n"
+          + "blur r r\n"
+          + "save out/red.ppm r\n"
+          + "sepia img s\n"
+          + "save s.png s\n";
+
+  private static final String IMAGE = "P3\n2 2\n255\n10 20 30\n40 50 60\n70 80 90\n"
+          + "100 110 120\n";
+
+  private final Path dir;
+  private final JobServer server;
+
+  /**
+   * Constructs the test around a fresh directory and a started server.
+   */
+  public JobServerTest() throws IOException {
+    this.dir = Files.createTempDirectory("jobs");
+    this.server = new JobServer(0, 2, 1 << 20, new ParallelExecutor(1, 1));
+    this.server.start();
+  }
+
+  @After
+  public void stopServer() throws IOException {
+    this.server.stop(0);
+    try (Stream<Path> files = Files.walk(this.dir)) {
+      files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+    }
+  }
+
+  private static byte[] zip(Map<String, String> files) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+      for (Map.Entry<String, String> file : files.entrySet()) {
+        zip.putNextEntry(new ZipEntry(file.getKey()));
+        zip.write(file.getValue().getBytes(StandardCharsets.US_ASCII));
+        zip.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private static Map<String, byte[]> unzip(InputStream in) throws IOException {
+    Map<String, byte[]> files = new TreeMap<>();
+    try (ZipInputStream zip = new ZipInputStream(in)) {
+      for (ZipEntry entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+        files.put(entry.getName(), zip.readAllBytes());
+      }
+    }
+    return files;
+  }
+
+  private HttpURLConnection post(byte[] body, String method) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + this.server.getPort() + "/jobs");
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod(method);
+    if (body != null) {
+      connection.setDoOutput(true);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(body);
+      }
+    }
+    return connection;
+  }
+
+  private static String error(HttpURLConnection connection) throws IOException {
+    try (InputStream in = connection.getErrorStream()) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void jobReturnsSavedFiles() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, SCRIPT);
+    job.put("in/a.ppm", IMAGE);
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(200, connection.getResponseCode());
+    Map<String, byte[]> saved;
+    try (InputStream in = connection.getInputStream()) {
+      saved = unzip(in);
+    }
+
+    // the same script run here saves the same files
+    Files.createDirectories(this.dir.resolve("in"));
+    Files.createDirectories(this.dir.resolve("out"));
+    Files.write(this.dir.resolve("in/a.ppm"), IMAGE.getBytes(StandardCharsets.US_ASCII));
+    ImageProcessorModel model = new ImageProcessorModel(new ParallelExecutor(1, 1));
+    for (ImageProcessorCommands cmd
+            : new CommandParser(new StringReader(SCRIPT), this.dir).parseAll()) {
+      cmd.commandGo(model);
+    }
+    assertEquals("[out/red.ppm, s.png]", saved.keySet().toString());
+    for (Map.Entry<String, byte[]> file : saved.entrySet()) {
+      assertArrayEquals(Files.readAllBytes(this.dir.resolve(file.getKey())), file.getValue());
+    }
+  }
+
+  @Test
+  public void jobsRunAtTheSameTime() throws Exception {
+    Thread[] threads = new Thread[4];
+    int[] statuses = new int[threads.length];
+    for (int t = 0; t < threads.length; t++) {
+      int job = t;
+      threads[t] = new Thread(() -> {
+        try {
+          Map<String, String> files = new TreeMap<>();
+          files.put(JobServer.SCRIPT, "load a.ppm img\nbrighten " + job + " img b\n"
+                  + "save b.ppm b\n");
+          files.put("a.ppm", IMAGE);
+          HttpURLConnection connection = this.post(zip(files), "POST");
+          statuses[job] = connection.getResponseCode();
+          try (InputStream in = connection.getInputStream()) {
+            byte[] saved = unzip(in).get("b.ppm");
+            String first = new String(saved, StandardCharsets.US_ASCII).split("\n")[3];
+            statuses[job] = first.equals(String.valueOf(10 + job)) ? statuses[job] : -1;
+          }
+        } catch (IOException e) {
+          statuses[job] = -2;
+        }
+      });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    for (int status : statuses) {
+      assertEquals(200, status);
+    }
+  }
+
+  @Test
+  public void pathOutsideTheJobRejected() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load ../a.ppm img\nsave b.ppm img\n");
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertTrue(error(connection).startsWith("Path outside the directory"));
+  }
+
+  @Test
+  public void kernelOutsideTheJobNotRead() throws IOException {
+    // USEME.txt is in the working directory of the server but not in the job
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\nconvolve USEME.txt img c\nsave c.ppm c\n");
+    job.put("a.ppm", IMAGE);
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertEquals("Invalid kernel weight: USEME.txt", error(connection));
+  }
+
+  @Test
+  public void kernelInTheJobOrInline() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\nconvolve k.txt img c\nconvolve 1 c c\n"
+            + "save c.ppm c\n");
+    job.put("a.ppm", IMAGE);
+    job.put("k.txt", "0 0 0\n0 1 0 # identity\n0 0 0\n");
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(200, connection.getResponseCode());
+    try (InputStream in = connection.getInputStream()) {
+      assertEquals("[c.ppm]", unzip(in).keySet().toString());
+    }
+  }
+
+  @Test
+  public void truncatedScriptRejected() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\nbrighten 10 img");
+    job.put("a.ppm", IMAGE);
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertEquals("Invalid script.txt: it ends inside a command", error(connection));
+
+    job.put(JobServer.SCRIPT, "load a.ppm img\nbrighten ten img b\n");
+    connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertEquals("Invalid script.txt: expected a number", error(connection));
+  }
+
+  @Test
+  public void entryOutsideTheJobRejected() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\n");
+    job.put("../a.ppm", IMAGE);
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertEquals("Entry outside the job: ../a.ppm", error(connection));
+  }
+
+  @Test
+  public void jobTooLargeRejected() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\n");
+    job.put("a.ppm", "P3\n".repeat(1 << 19));
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+  }
+
+  @Test
+  public void missingScriptRejected() throws IOException {
+    HttpURLConnection connection = this.post(zip(new TreeMap<>()), "POST");
+    assertEquals(400, connection.getResponseCode());
+    assertEquals("No script.txt in the job", error(connection));
+  }
+
+  @Test
+  public void unreadableImageRejected() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\nsave b.ppm img\n");
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(400, connection.getResponseCode());
+  }
+
+  @Test
+  public void failedWriteIsServerError() throws IOException {
+    Map<String, String> job = new TreeMap<>();
+    job.put(JobServer.SCRIPT, "load a.ppm img\nsave a.ppm/b.ppm img\n");
+    job.put("a.ppm", IMAGE);
+    HttpURLConnection connection = this.post(zip(job), "POST");
+    assertEquals(500, connection.getResponseCode());
+  }
+
+  @Test
+  public void notZipRejected() throws IOException {
+    HttpURLConnection connection = this.post("load a.ppm img".getBytes(StandardCharsets.US_ASCII),
+            "POST");
+    assertEquals(400, connection.getResponseCode());
+  }
+
+  @Test
+  public void getNotAllowed() throws IOException {
+    HttpURLConnection connection = this.post(null, "GET");
+    assertEquals(405, connection.getResponseCode());
+  }
+}
@@ -0,0 +1,60 @@
+import org.junit.Test;
+
+import model.PackedImage;
+import model.Pixel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the PackedImage class.
+ */
+public class PackedImageTest {
+
+  @Test
+  public void packAndUnpack() {
+    int rgb = PackedImage.pack(12, 200, 255);
+    assertEquals(12, PackedImage.red(rgb));
+    assertEquals(200, PackedImage.green(rgb));
+    assertEquals(255, PackedImage.blue(rgb));
+
+    //components out of range are clamped
+    rgb = PackedImage.pack(-4, 300, 7);
+    assertEquals(0, PackedImage.red(rgb));
+    assertEquals(255, PackedImage.green(rgb));
+    assertEquals(7, PackedImage.blue(rgb));
+  }
+
+  @Test
+  public void fromPixelsRoundTrip() {
+    Pixel[][] image = new Pixel[2][3];
+    for (int row = 0; row < 2; row++) {
+      for (int col = 0; col < 3; col++) {
+        image[row][col] = new Pixel(row, col, row + col);
+      }
+    }
+
+    PackedImage packed = PackedImage.fromPixels(image);
+    assertEquals(3, packed.getWidth());
+    assertEquals(2, packed.getHeight());
+    assertEquals(PackedImage.pack(1, 2, 3), packed.getRGB(1, 2));
+
+    Pixel[][] copy = packed.toPixels();
+    for (int row = 0; row < 2; row++) {
+      for (int col = 0; col < 3; col++) {
+        assertEquals(image[row][col].getRed(), copy[row][col].getRed());
+        assertEquals(image[row][col].getGreen(), copy[row][col].getGreen());
+        assertEquals(image[row][col].getBlue(), copy[row][col].getBlue());
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void wrongSize() {
+    new PackedImage(2, 2, new int[3]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void nullPixels() {
+    PackedImage.fromPixels(new Pixel[][]{new Pixel[]{null}});
+  }
+}
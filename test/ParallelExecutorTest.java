@@ -0,0 +1,92 @@
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import model.ImageProcessorModel;
+import model.PackedImage;
+import model.ParallelExecutor;
+import model.Pixel;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the ParallelExecutor and the model running on it.
+ */
+public class ParallelExecutorTest {
+
+  @Test
+  public void everyRowRunsOnce() {
+    AtomicIntegerArray counts = new AtomicIntegerArray(97);
+    try (ParallelExecutor executor = new ParallelExecutor(4, 10)) {
+      executor.forRows(3, 97, (startRow, endRow) -> {
+        for (int row = startRow; row < endRow; row++) {
+          counts.incrementAndGet(row);
+        }
+      });
+    }
+
+    for (int row = 0; row < 97; row++) {
+      assertEquals(1, counts.get(row));
+    }
+  }
+
+  @Test
+  public void parallelMatchesSequential() {
+    int[] pixels = new int[37 * 23];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = PackedImage.pack(i * 7 % 256, i * 13 % 256, i * 29 % 256);
+    }
+
+    ImageProcessorModel sequential = new ImageProcessorModel(new ParallelExecutor(1, 1));
+    ImageProcessorModel parallel = new ImageProcessorModel(new ParallelExecutor(4, 1));
+    sequential.load("image", new PackedImage(37, 23, pixels));
+    parallel.load("image", new PackedImage(37, 23, pixels));
+
+    for (ImageProcessorModel model : new ImageProcessorModel[]{sequential, parallel}) {
+      model.brighten(20, "image");
+      model.blur("image");
+      model.sepia("image");
+      model.flip("image", false);
+      model.flip("image", true);
+    }
+
+    Pixel[][] expected = sequential.getCopy("image");
+    Pixel[][] actual = parallel.getCopy("image");
+    for (int row = 0; row < 23; row++) {
+      for (int col = 0; col < 37; col++) {
+        assertEquals(expected[row][col].getRed(), actual[row][col].getRed());
+        assertEquals(expected[row][col].getGreen(), actual[row][col].getGreen());
+        assertEquals(expected[row][col].getBlue(), actual[row][col].getBlue());
+      }
+    }
+  }
+
+  @Test(expected = RejectedExecutionException.class)
+  public void closedExecutorRejectsWork() {
+    ParallelExecutor executor = new ParallelExecutor(2, 1);
+    executor.close();
+    executor.forRows(1, 4, (startRow, endRow) -> {
+    });
+  }
+
+  @Test
+  public void closingDefaultExecutorKeepsSharedPool() {
+    new ParallelExecutor().close();
+    AtomicIntegerArray counts = new AtomicIntegerArray(300);
+    new ParallelExecutor().forRows(ParallelExecutor.DEFAULT_THRESHOLD, 300,
+        (startRow, endRow) -> {
+          for (int row = startRow; row < endRow; row++) {
+            counts.incrementAndGet(row);
+          }
+        });
+    for (int row = 0; row < 300; row++) {
+      assertEquals(1, counts.get(row));
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void invalidParallelism() {
+    new ParallelExecutor(0, 10);
+  }
+}
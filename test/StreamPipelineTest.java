@@ -0,0 +1,176 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.BorderMode;
+import model.GrayScale;
+import model.ImageProcessorModel;
+import model.ImageUtil;
+import model.Kernel;
+import model.PPMFormat;
+import model.PackedImage;
+import model.StreamPipeline;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for running operations over image files a band of rows at a time.
+ */
+public class StreamPipelineTest {
+  private static final int WIDTH = 37;
+  private static final int HEIGHT = 53;
+
+  private final List<File> files = new ArrayList<>();
+
+  @After
+  public void deleteFiles() {
+    for (File file : this.files) {
+      file.delete();
+    }
+  }
+
+  private File file(String suffix) throws IOException {
+    File file = File.createTempFile("stream", suffix);
+    this.files.add(file);
+    return file;
+  }
+
+  /**
+   * Saves a random image in the format of the suffix and loads it as "in" into the model.
+   */
+  private File input(ImageProcessorModel model, String suffix) throws IOException {
+    Random random = new Random(21);
+    int[] pixels = new int[WIDTH * HEIGHT];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    File file = this.file(suffix);
+    model.load("in", new PackedImage(WIDTH, HEIGHT, pixels));
+    model.save(file.getPath(), "in");
+    model.load("in", ImageUtil.readImage(file.getPath()));
+    return file;
+  }
+
+  private static void assertSameImage(PackedImage expected, PackedImage actual) {
+    assertEquals(expected.getWidth(), actual.getWidth());
+    assertEquals(expected.getHeight(), actual.getHeight());
+    for (int row = 0; row < expected.getHeight(); row++) {
+      for (int col = 0; col < expected.getWidth(); col++) {
+        assertEquals("pixel " + row + ", " + col, expected.getRGB(row, col),
+                actual.getRGB(row, col));
+      }
+    }
+  }
+
+  private static Kernel kernel(int size) {
+    Random random = new Random(size);
+    double[][] weights = new double[size][size];
+    for (double[] row : weights) {
+      for (int col = 0; col < size; col++) {
+        row[col] = (random.nextInt(9) - 3) / 16.0;
+      }
+    }
+    return new Kernel(weights);
+  }
+
+  @Test
+  public void streamPointOperationsAndFlip() throws IOException {
+    ImageProcessorModel model = new ImageProcessorModel();
+    model.setPPMFormat(PPMFormat.Raw);
+    File in = this.input(model, ".ppm");
+    File out = this.file(".ppm");
+    File expected = this.file(".ppm");
+
+    model.stream(in.getPath(), out.getPath(), new StreamPipeline().setBandRows(5).brighten(30)
+            .sepia().horizontalFlip().toGrayScale(GrayScale.Luma).brighten(-7));
+    model.brighten(30, "in");
+    model.sepia("in");
+    model.flip("in", false);
+    model.toGrayScale(GrayScale.Luma, "in");
+    model.brighten(-7, "in");
+    model.save(expected.getPath(), "in");
+
+    assertArrayEquals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(out.toPath()));
+  }
+
+  @Test
+  public void streamConvolutionAcrossBands() throws IOException {
+    for (BorderMode border : new BorderMode[]{BorderMode.Zero, BorderMode.Clamp,
+        BorderMode.Mirror}) {
+      for (int size : new int[]{3, 5, 13}) {
+        for (int band : new int[]{1, 4, 64}) {
+          ImageProcessorModel model = new ImageProcessorModel();
+          File in = this.input(model, ".ppm");
+          File out = this.file(".ppm");
+          model.stream(in.getPath(), out.getPath(), new StreamPipeline().setBandRows(band)
+                  .convolve(kernel(size), border).blur());
+          model.convolve(kernel(size), border, "in");
+          model.blur("in");
+          assertSameImage(ImageUtil.readImage(this.saved(model)),
+                  ImageUtil.readImage(out.getPath()));
+        }
+      }
+    }
+  }
+
+  private String saved(ImageProcessorModel model) throws IOException {
+    File file = this.file(".ppm");
+    model.save(file.getPath(), "in");
+    return file.getPath();
+  }
+
+  @Test
+  public void streamBetweenFormats() throws IOException {
+    for (String from : new String[]{".ppm", ".png", ".bmp"}) {
+      for (String to : new String[]{".ppm", ".pgm", ".png", ".bmp"}) {
+        ImageProcessorModel model = new ImageProcessorModel();
+        File in = this.input(model, from);
+        File out = this.file(to);
+        model.stream(in.getPath(), out.getPath(), new StreamPipeline().setBandRows(7).sharpen()
+                .toGrayScale(GrayScale.Value));
+        model.sharpen("in");
+        model.toGrayScale(GrayScale.Value, "in");
+        File expected = this.file(to);
+        model.save(expected.getPath(), "in");
+        assertSameImage(ImageUtil.readImage(expected.getPath()),
+                ImageUtil.readImage(out.getPath()));
+      }
+    }
+  }
+
+  @Test
+  public void streamOverLongerFile() throws IOException {
+    ImageProcessorModel model = new ImageProcessorModel();
+    File in = this.input(model, ".png");
+    File out = this.file(".png");
+    Files.write(out.toPath(), new byte[1 << 20]);
+    model.stream(in.getPath(), out.getPath(), new StreamPipeline());
+    assertSameImage(ImageUtil.readImage(in.getPath()), ImageUtil.readImage(out.getPath()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void streamWrapBorder() {
+    new StreamPipeline().convolve(kernel(3), BorderMode.Wrap);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void streamToJPEG() throws IOException {
+    ImageProcessorModel model = new ImageProcessorModel();
+    File in = this.input(model, ".ppm");
+    model.stream(in.getPath(), this.file(".jpg").getPath(), new StreamPipeline());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void streamOntoInput() throws IOException {
+    ImageProcessorModel model = new ImageProcessorModel();
+    File in = this.input(model, ".ppm");
+    model.stream(in.getPath(), in.getPath(), new StreamPipeline().brighten(1));
+  }
+}
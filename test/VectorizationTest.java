@@ -0,0 +1,117 @@
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import model.BorderMode;
+import model.GrayScale;
+import model.ImageProcessorModel;
+import model.Kernel;
+import model.PackedImage;
+import model.Pixel;
+import model.Vectorization;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the lane-wise kernels give the same images as the scalar ones.
+ */
+public class VectorizationTest {
+  private final boolean original = Vectorization.isEnabled();
+
+  @After
+  public void restore() {
+    Vectorization.setEnabled(this.original);
+  }
+
+  private static PackedImage randomImage(int width, int height) {
+    Random random = new Random(7);
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = random.nextInt(1 << 24);
+    }
+    return new PackedImage(width, height, pixels);
+  }
+
+  /**
+   * Runs the same commands with the switch off and on, comparing the results.
+   */
+  private static void assertSame(PackedImage image, String... commands) {
+    Pixel[][][] results = new Pixel[2][][];
+    for (int pass = 0; pass < 2; pass++) {
+      Vectorization.setEnabled(pass == 1);
+      ImageProcessorModel model = new ImageProcessorModel();
+      model.load("image", image);
+      for (String command : commands) {
+        String[] parts = command.split(" ");
+        switch (parts[0]) {
+          case "brighten":
+            model.brighten(Integer.parseInt(parts[1]), "image");
+            break;
+          case "sepia":
+            model.sepia("image");
+            break;
+          case "luma":
+            model.toGrayScale(GrayScale.Luma, "image");
+            break;
+          case "gray":
+            model.transformationGrayscale("image");
+            break;
+          case "blur":
+            model.blur("image");
+            break;
+          case "sharpen":
+            model.sharpen("image");
+            break;
+          default:
+            model.convolve(new Kernel(new double[][]{
+                new double[]{.0625, .125, .0625},
+                new double[]{.125, .25, .125},
+                new double[]{.0625, .125, .0625}}), BorderMode.valueOf(parts[1]), "image");
+        }
+      }
+      results[pass] = model.getCopy("image");
+    }
+    for (int i = 0; i < results[0].length; i++) {
+      for (int j = 0; j < results[0][i].length; j++) {
+        assertEquals(results[0][i][j].getRed(), results[1][i][j].getRed());
+        assertEquals(results[0][i][j].getGreen(), results[1][i][j].getGreen());
+        assertEquals(results[0][i][j].getBlue(), results[1][i][j].getBlue());
+      }
+    }
+  }
+
+  @Test
+  public void brighten() {
+    PackedImage image = randomImage(40, 30);
+    assertSame(image, "brighten 37");
+    assertSame(image, "brighten -300");
+    assertSame(image, "brighten 1000");
+  }
+
+  @Test
+  public void colorTransformations() {
+    PackedImage image = randomImage(40, 30);
+    assertSame(image, "sepia");
+    assertSame(image, "gray");
+    assertSame(image, "brighten -60", "sepia", "luma", "brighten 20");
+  }
+
+  @Test
+  public void separableConvolution() {
+    PackedImage image = randomImage(67, 45);
+    for (BorderMode border : BorderMode.values()) {
+      assertSame(image, "convolve " + border);
+    }
+    assertSame(randomImage(2, 3), "convolve Mirror");
+  }
+
+  @Test
+  public void filters() {
+    PackedImage image = randomImage(67, 45);
+    assertSame(image, "blur");
+    assertSame(image, "sharpen");
+    assertSame(image, "sharpen", "blur", "sharpen");
+    assertSame(randomImage(3, 2), "sharpen");
+  }
+}
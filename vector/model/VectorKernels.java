@@ -0,0 +1,169 @@
+package model;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The lane-wise pixel kernels written with the incubating Vector API, so each loop runs on the
+ * widest vectors the processor has instead of relying on the JIT to vectorize it. Each method
+ * handles the whole vectors of its range and finishes the last few elements one at a time, and
+ * gives exactly the results of the scalar lane-wise loops.
+ *
+ * <p>This is the only class that needs the jdk.incubator.vector module, so it is kept out of the
+ * src folder and compiled on its own, with Java 17 or later:
+ * javac --add-modules jdk.incubator.vector -cp classes -d classes vector/model/VectorKernels.java
+ * Vectorization loads it by name, and only when the program runs with the module.
+ */
+final class VectorKernels implements LaneKernels {
+  private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+  private static final int LANES = SPECIES.length();
+
+  private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+  // the ints with as many lanes as the doubles
+  private static final VectorSpecies<Integer> HALF = VectorSpecies.of(int.class,
+          VectorShape.forBitSize(DOUBLES.vectorBitSize() / 2));
+
+  VectorKernels() {
+  }
+
+  @Override
+  public int lanes() {
+    return LANES;
+  }
+
+  @Override
+  public void brighten(int[] src, int[] dst, int from, int to, int value) {
+    int i = from;
+    for (int upper = from + SPECIES.loopBound(to - from); i < upper; i += LANES) {
+      IntVector rgb = IntVector.fromArray(SPECIES, src, i);
+      IntVector red = saturate(rgb.lanewise(VectorOperators.LSHR, 16).and(0xff).add(value));
+      IntVector green = saturate(rgb.lanewise(VectorOperators.LSHR, 8).and(0xff).add(value));
+      IntVector blue = saturate(rgb.and(0xff).add(value));
+      pack(red, green, blue).intoArray(dst, i);
+    }
+    for (; i < to; i++) {
+      int rgb = src[i];
+      dst[i] = (Vectorization.saturate(((rgb >> 16) & 0xff) + value) << 16)
+              | (Vectorization.saturate(((rgb >> 8) & 0xff) + value) << 8)
+              | Vectorization.saturate((rgb & 0xff) + value);
+    }
+  }
+
+  @Override
+  public void colorMatrix(int[] src, int[] dst, int from, int to, double[] matrix) {
+    int i = from;
+    for (int upper = from + HALF.loopBound(to - from); i < upper; i += HALF.length()) {
+      IntVector rgb = IntVector.fromArray(HALF, src, i);
+      DoubleVector red = toDoubles(rgb.lanewise(VectorOperators.LSHR, 16).and(0xff));
+      DoubleVector green = toDoubles(rgb.lanewise(VectorOperators.LSHR, 8).and(0xff));
+      DoubleVector blue = toDoubles(rgb.and(0xff));
+      pack(weighted(red, green, blue, matrix, 0), weighted(red, green, blue, matrix, 3),
+              weighted(red, green, blue, matrix, 6)).intoArray(dst, i);
+    }
+    for (; i < to; i++) {
+      int rgb = src[i];
+      int red = (rgb >> 16) & 0xff;
+      int green = (rgb >> 8) & 0xff;
+      int blue = rgb & 0xff;
+      dst[i] = (Vectorization.saturate((int) (matrix[0] * red + matrix[1] * green
+              + matrix[2] * blue)) << 16)
+              | (Vectorization.saturate((int) (matrix[3] * red + matrix[4] * green
+              + matrix[5] * blue)) << 8)
+              | Vectorization.saturate((int) (matrix[6] * red + matrix[7] * green
+              + matrix[8] * blue));
+    }
+  }
+
+  private static DoubleVector toDoubles(IntVector values) {
+    return (DoubleVector) values.convertShape(VectorOperators.I2D, DOUBLES, 0);
+  }
+
+  /**
+   * Truncates and saturates one row of the matrix times the channels, as the casts of
+   * ColorMatrix do one at a time.
+   */
+  private static IntVector weighted(DoubleVector red, DoubleVector green, DoubleVector blue,
+                                    double[] matrix, int row) {
+    DoubleVector sum = red.mul(matrix[row]).add(green.mul(matrix[row + 1]))
+            .add(blue.mul(matrix[row + 2]));
+    return saturate((IntVector) sum.convertShape(VectorOperators.D2I, HALF, 0));
+  }
+
+  @Override
+  public void multiplyAdd(int[] dst, int dstFrom, int[] src, int srcFrom, int weight,
+                          int length) {
+    int i = 0;
+    for (int upper = SPECIES.loopBound(length); i < upper; i += LANES) {
+      IntVector.fromArray(SPECIES, src, srcFrom + i).mul(weight)
+              .add(IntVector.fromArray(SPECIES, dst, dstFrom + i))
+              .intoArray(dst, dstFrom + i);
+    }
+    for (; i < length; i++) {
+      dst[dstFrom + i] += src[srcFrom + i] * weight;
+    }
+  }
+
+  @Override
+  public void multiplyAddTruncating(int[] dst, int dstFrom, int[] src, int srcFrom, int weight,
+                                    int shift, int length) {
+    int mask = (1 << shift) - 1;
+    int i = 0;
+    for (int upper = SPECIES.loopBound(length); i < upper; i += LANES) {
+      IntVector scaled = IntVector.fromArray(SPECIES, dst, dstFrom + i)
+              .lanewise(VectorOperators.LSHL, shift)
+              .add(IntVector.fromArray(SPECIES, src, srcFrom + i).mul(weight));
+      // negative sums are rounded up by adding the mask before shifting
+      scaled.add(scaled.lanewise(VectorOperators.ASHR, 31).and(mask))
+              .lanewise(VectorOperators.ASHR, shift).intoArray(dst, dstFrom + i);
+    }
+    for (; i < length; i++) {
+      int scaled = (dst[dstFrom + i] << shift) + src[srcFrom + i] * weight;
+      dst[dstFrom + i] = (scaled + ((scaled >> 31) & mask)) >> shift;
+    }
+  }
+
+  @Override
+  public void shiftAdd(int[] dst, int dstFrom, int[] src, int srcFrom, int shift, int length) {
+    int i = 0;
+    for (int upper = SPECIES.loopBound(length); i < upper; i += LANES) {
+      IntVector.fromArray(SPECIES, src, srcFrom + i).lanewise(VectorOperators.ASHR, shift)
+              .add(IntVector.fromArray(SPECIES, dst, dstFrom + i))
+              .intoArray(dst, dstFrom + i);
+    }
+    for (; i < length; i++) {
+      dst[dstFrom + i] += src[srcFrom + i] >> shift;
+    }
+  }
+
+  @Override
+  public void packShifted(int[] red, int[] green, int[] blue, int shift, int[] dst, int dstFrom,
+                          int length) {
+    int i = 0;
+    for (int upper = SPECIES.loopBound(length); i < upper; i += LANES) {
+      pack(saturate(IntVector.fromArray(SPECIES, red, i).lanewise(VectorOperators.ASHR, shift)),
+              saturate(IntVector.fromArray(SPECIES, green, i)
+                      .lanewise(VectorOperators.ASHR, shift)),
+              saturate(IntVector.fromArray(SPECIES, blue, i)
+                      .lanewise(VectorOperators.ASHR, shift)))
+              .intoArray(dst, dstFrom + i);
+    }
+    for (; i < length; i++) {
+      dst[dstFrom + i] = (Vectorization.saturate(red[i] >> shift) << 16)
+              | (Vectorization.saturate(green[i] >> shift) << 8)
+              | Vectorization.saturate(blue[i] >> shift);
+    }
+  }
+
+  private static IntVector saturate(IntVector values) {
+    return values.max(0).min(255);
+  }
+
+  private static IntVector pack(IntVector red, IntVector green, IntVector blue) {
+    return red.lanewise(VectorOperators.LSHL, 16).or(green.lanewise(VectorOperators.LSHL, 8))
+            .or(blue);
+  }
+}